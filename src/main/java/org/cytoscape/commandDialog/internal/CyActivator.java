@@ -26,7 +26,9 @@ import org.cytoscape.commandDialog.internal.tasks.PauseCommandTaskFactory;
 import org.cytoscape.commandDialog.internal.tasks.RunCommandsTaskFactory;
 import org.cytoscape.commandDialog.internal.tasks.RunCommandsTask;
 import org.cytoscape.commandDialog.internal.tasks.QuitTaskFactory;
+import org.cytoscape.commandDialog.internal.tasks.ResetStatsCommandTaskFactory;
 import org.cytoscape.commandDialog.internal.tasks.SleepCommandTaskFactory;
+import org.cytoscape.commandDialog.internal.tasks.StatsCommandTaskFactory;
 import org.cytoscape.commandDialog.internal.ui.CommandToolDialog;
 
 import org.cytoscape.app.event.AppsFinishedStartingEvent;
@@ -45,6 +47,10 @@ import org.cytoscape.command.CommandExecutorTaskFactory;
 import org.cytoscape.property.CyProperty;
 import org.cytoscape.service.util.AbstractCyActivator;
 import org.cytoscape.service.util.CyServiceRegistrar;
+import org.cytoscape.task.NetworkTaskFactory;
+import org.cytoscape.task.NetworkViewCollectionTaskFactory;
+import org.cytoscape.task.NetworkViewTaskFactory;
+import org.cytoscape.task.TableTaskFactory;
 import org.cytoscape.work.SynchronousTaskManager;
 import org.cytoscape.work.TaskFactory;
 import org.osgi.framework.BundleContext;
@@ -85,6 +91,7 @@ public class CyActivator extends AbstractCyActivator {
 		CommandExecutorTaskFactory commandExecutor = getService(bc, CommandExecutorTaskFactory.class);
 		SynchronousTaskManager taskManager = getService(bc, SynchronousTaskManager.class);
 		CommandHandler commandHandler = new CommandHandler(availableCommands, commandExecutor, taskManager);
+		registerCommandListener(bc, commandHandler.getCommandResolver());
 		CyApplicationConfiguration appConfig = getService(bc, CyApplicationConfiguration.class);
 		CyServiceRegistrar serviceRegistrar = getService(bc, CyServiceRegistrar.class);
 		final CommandToolDialog dialog;
@@ -115,7 +122,8 @@ public class CyActivator extends AbstractCyActivator {
 		if (haveGUI) {
 			CySwingApplication swingApp = (CySwingApplication) getService(bc, CySwingApplication.class);
 			// Create our dialog -- we only want one of these instantiated
-			dialog = new CommandToolDialog(commandHandler, appConfig);
+			CyProperty<Properties> cytoscapeProps = getService(bc, CyProperty.class, "(cyPropertyName=cytoscape3.props)");
+			dialog = new CommandToolDialog(commandHandler, appConfig, cytoscapeProps.getProperties());
 			registerService(bc, dialog, CyShutdownListener.class, new Properties());
 			registerService(bc, dialog, CytoPanelComponent.class, new Properties());
 			CytoPanel cytoPanel = swingApp.getCytoPanel(CytoPanelName.BOTTOM);
@@ -157,7 +165,7 @@ public class CyActivator extends AbstractCyActivator {
 			dialog = null;
 		}
 
-		TaskFactory runCommand = new RunCommandsTaskFactory(dialog, commandHandler);
+		TaskFactory runCommand = new RunCommandsTaskFactory(dialog, commandHandler, appConfig);
 		Properties runCommandProps = new Properties();
 		runCommandProps.setProperty(PREFERRED_MENU, "Tools");
 		runCommandProps.setProperty(TITLE, "Execute Command File...");
@@ -202,7 +210,7 @@ public class CyActivator extends AbstractCyActivator {
 		registerService(bc, sleepCommand, TaskFactory.class, sleepProperties);
 
 		if (scriptFile != null) {
-			registerService(bc, new StartScript(scriptFile, commandHandler, dialog), 
+			registerService(bc, new StartScript(scriptFile, commandHandler, dialog, appConfig), 
 			                AppsFinishedStartingListener.class, new Properties());
 		}
 
@@ -219,6 +227,49 @@ public class CyActivator extends AbstractCyActivator {
 		echoCommandProperties.setProperty(COMMAND_SUPPORTS_JSON, "true");
 		echoCommandProperties.setProperty(COMMAND_EXAMPLE_JSON, "[{\"var1\":\"1234\"},{\"var2\":\"value2\"}]");
 		registerService(bc, echoCommand, TaskFactory.class, echoCommandProperties);
+
+		TaskFactory statsCommand = new StatsCommandTaskFactory(commandHandler.getMetrics());
+		Properties statsProperties = new Properties();
+		statsProperties.setProperty(COMMAND_NAMESPACE, "command");
+		statsProperties.setProperty(COMMAND_DESCRIPTION, "Report the call counts and timings of commands");
+		statsProperties.setProperty(COMMAND, "stats");
+		statsProperties.setProperty(COMMAND_LONG_DESCRIPTION,
+		                            "The **stats** command reports, for each command run since Cytoscape started "+
+		                            "or the statistics were last reset, the number of calls and errors, the "+
+		                            "bytes of results produced, and the times taken to resolve, queue and "+
+		                            "execute the command, in milliseconds");
+		statsProperties.setProperty(COMMAND_SUPPORTS_JSON, "true");
+		String exampleTimes = "{\"count\":1,\"totalMs\":0.210,\"meanMs\":0.210,\"p50Ms\":0.210,"+
+		                      "\"p95Ms\":0.210,\"p99Ms\":0.210,\"maxMs\":0.210}";
+		statsProperties.setProperty(COMMAND_EXAMPLE_JSON,
+		                            "[{\"namespace\":\"network\",\"command\":\"load file\",\"calls\":1,\"errors\":0,"+
+		                            "\"resultBytes\":52,\"resolution\":"+exampleTimes+",\"queueing\":"+exampleTimes+
+		                            ",\"execution\":"+exampleTimes+"}]");
+		registerService(bc, statsCommand, TaskFactory.class, statsProperties);
+
+		TaskFactory resetStatsCommand = new ResetStatsCommandTaskFactory(commandHandler.getMetrics());
+		Properties resetStatsProperties = new Properties();
+		resetStatsProperties.setProperty(COMMAND_NAMESPACE, "command");
+		resetStatsProperties.setProperty(COMMAND_DESCRIPTION, "Clear the statistics reported by command stats");
+		resetStatsProperties.setProperty(COMMAND, "reset stats");
+		resetStatsProperties.setProperty(COMMAND_LONG_DESCRIPTION,
+		                                 "The **reset stats** command clears the call counts and timings "+
+		                                 "reported by the **stats** command");
+		resetStatsProperties.setProperty(COMMAND_SUPPORTS_JSON, "true");
+		resetStatsProperties.setProperty(COMMAND_EXAMPLE_JSON, "{}");
+		registerService(bc, resetStatsCommand, TaskFactory.class, resetStatsProperties);
+	}
+
+	/**
+	 * Listen for the task factory types that can provide commands, so cached
+	 * command information can be discarded when commands are added or removed
+	 */
+	private void registerCommandListener(BundleContext bc, Object listener) {
+		registerServiceListener(bc, listener, "addCommand", "removeCommand", TaskFactory.class);
+		registerServiceListener(bc, listener, "addCommand", "removeCommand", NetworkTaskFactory.class);
+		registerServiceListener(bc, listener, "addCommand", "removeCommand", NetworkViewTaskFactory.class);
+		registerServiceListener(bc, listener, "addCommand", "removeCommand", NetworkViewCollectionTaskFactory.class);
+		registerServiceListener(bc, listener, "addCommand", "removeCommand", TableTaskFactory.class);
 	}
 
 	class StartScript implements AppsFinishedStartingListener {
@@ -227,11 +278,12 @@ public class CyActivator extends AbstractCyActivator {
 		RunCommandsTask runTask;
 		CommandHandler commandHandler;
 
-		protected StartScript(String scriptFile, CommandHandler commandHandler, CommandToolDialog dialog)  {
+		protected StartScript(String scriptFile, CommandHandler commandHandler, CommandToolDialog dialog,
+		                      CyApplicationConfiguration appConfig)  {
 			this.scriptFile = scriptFile;
 			this.dialog = dialog;
 			this.commandHandler = commandHandler;
-			runTask = new RunCommandsTask(dialog, commandHandler);
+			runTask = new RunCommandsTask(dialog, commandHandler, appConfig);
 		}
 
 		public void handleEvent(AppsFinishedStartingEvent event) {
@@ -0,0 +1,63 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import org.cytoscape.command.AvailableCommands;
+import org.cytoscape.work.util.AbstractBounded;
+
+/**
+ * An immutable snapshot of what {@link AvailableCommands} knows about one
+ * argument of a command.  Getting this information means introspecting the
+ * command's tunables, so we only want to do it once.  Only what doesn't change
+ * is kept: the argument's current value, and the possible values of a list
+ * selection, have to be read from AvailableCommands when they are needed.
+ */
+public class ArgumentDescriptor {
+	private final String name;
+	private final boolean required;
+	private final Class<?> type;
+	private final String description;
+	private final String longDescription;
+
+	// Bounds, for bounded types
+	private final boolean bounded;
+	private final Object lowerBound;
+	private final Object upperBound;
+	private final boolean lowerBoundStrict;
+	private final boolean upperBoundStrict;
+
+	ArgumentDescriptor(AvailableCommands availableCommands, String namespace, String command, String name) {
+		this.name = name;
+		this.required = availableCommands.getArgRequired(namespace, command, name);
+		this.type = availableCommands.getArgType(namespace, command, name);
+		this.description = availableCommands.getArgDescription(namespace, command, name);
+		this.longDescription = availableCommands.getArgLongDescription(namespace, command, name);
+
+		Object value = availableCommands.getArgValue(namespace, command, name);
+		if (value instanceof AbstractBounded) {
+			AbstractBounded<?> ab = (AbstractBounded<?>)value;
+			bounded = true;
+			lowerBound = ab.getLowerBound();
+			upperBound = ab.getUpperBound();
+			lowerBoundStrict = ab.isLowerBoundStrict();
+			upperBoundStrict = ab.isUpperBoundStrict();
+		} else {
+			bounded = false;
+			lowerBound = upperBound = null;
+			lowerBoundStrict = upperBoundStrict = false;
+		}
+	}
+
+	public String getName() { return name; }
+	public boolean isRequired() { return required; }
+	public Class<?> getType() { return type; }
+	public String getDescription() { return description; }
+	public String getLongDescription() { return longDescription; }
+
+	/**
+	 * @return true if the argument has a bounded type (BoundedDouble, etc.)
+	 */
+	public boolean isBounded() { return bounded; }
+	public Object getLowerBound() { return lowerBound; }
+	public Object getUpperBound() { return upperBound; }
+	public boolean isLowerBoundStrict() { return lowerBoundStrict; }
+	public boolean isUpperBoundStrict() { return upperBoundStrict; }
+}
@@ -0,0 +1,42 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message handler that keeps the messages so that they can be shown later,
+ * which lets commands that run at the same time report their output in order.
+ */
+public class BufferedMessageHandler implements MessageHandler {
+	private enum Type { COMMAND, ERROR, WARNING, RESULT, MESSAGE }
+
+	private final List<Type> types = new ArrayList<>();
+	private final List<String> messages = new ArrayList<>();
+
+	public synchronized void appendCommand(String s) { add(Type.COMMAND, s); }
+	public synchronized void appendError(String s) { add(Type.ERROR, s); }
+	public synchronized void appendWarning(String s) { add(Type.WARNING, s); }
+	public synchronized void appendResult(String s) { add(Type.RESULT, s); }
+	public synchronized void appendMessage(String s) { add(Type.MESSAGE, s); }
+
+	private void add(Type type, String s) {
+		types.add(type);
+		messages.add(s);
+	}
+
+	/**
+	 * Send the buffered messages to another handler
+	 */
+	public synchronized void replay(MessageHandler handler) {
+		for (int i = 0; i < types.size(); i++) {
+			String s = messages.get(i);
+			switch (types.get(i)) {
+				case COMMAND: handler.appendCommand(s); break;
+				case ERROR: handler.appendError(s); break;
+				case WARNING: handler.appendWarning(s); break;
+				case RESULT: handler.appendResult(s); break;
+				case MESSAGE: handler.appendMessage(s); break;
+			}
+		}
+	}
+}
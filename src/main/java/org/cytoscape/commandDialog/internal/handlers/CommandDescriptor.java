@@ -0,0 +1,62 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.command.AvailableCommands;
+
+/**
+ * An immutable snapshot of the metadata for a single (namespace, command):
+ * its descriptions and the {@link ArgumentDescriptor} for each argument.
+ * Instances are cached by {@link CommandResolver}.
+ */
+public class CommandDescriptor {
+	private final String namespace;
+	private final String command;
+	private final String description;
+	private final String longDescription;
+	private final Map<String, ArgumentDescriptor> arguments;
+	private final List<String> argumentNames;
+	private final List<String> requiredArguments;
+
+	CommandDescriptor(AvailableCommands availableCommands, String namespace, String command) {
+		this.namespace = namespace;
+		this.command = command;
+		this.description = availableCommands.getDescription(namespace, command);
+		this.longDescription = availableCommands.getLongDescription(namespace, command);
+
+		Map<String, ArgumentDescriptor> arguments = new LinkedHashMap<>();
+		List<String> required = new ArrayList<>();
+		for (String arg: availableCommands.getArguments(namespace, command)) {
+			ArgumentDescriptor descriptor = new ArgumentDescriptor(availableCommands, namespace, command, arg);
+			arguments.put(arg, descriptor);
+			if (descriptor.isRequired())
+				required.add(arg);
+		}
+		this.arguments = Collections.unmodifiableMap(arguments);
+		this.argumentNames = Collections.unmodifiableList(new ArrayList<>(arguments.keySet()));
+		this.requiredArguments = Collections.unmodifiableList(required);
+	}
+
+	public String getNamespace() { return namespace; }
+	public String getCommand() { return command; }
+	public String getDescription() { return description; }
+	public String getLongDescription() { return longDescription; }
+
+	/**
+	 * @return the argument names, in the order AvailableCommands returns them
+	 */
+	public List<String> getArgumentNames() { return argumentNames; }
+
+	/**
+	 * @return the arguments in the same order as {@link #getArgumentNames()}
+	 */
+	public Iterable<ArgumentDescriptor> getArguments() { return arguments.values(); }
+
+	public ArgumentDescriptor getArgument(String name) { return arguments.get(name); }
+
+	public List<String> getRequiredArguments() { return requiredArguments; }
+}
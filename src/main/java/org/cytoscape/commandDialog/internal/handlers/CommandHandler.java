@@ -32,13 +32,21 @@
  */
 package org.cytoscape.commandDialog.internal.handlers;
 
-import java.io.StreamTokenizer;
-import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -55,13 +63,18 @@ import org.cytoscape.commandDialog.internal.interpreter.AssignmentCommand;
 import org.cytoscape.commandDialog.internal.interpreter.Command;
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreter;
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreterException;
+import org.cytoscape.commandDialog.internal.interpreter.ExpressionCommand;
 import org.cytoscape.commandDialog.internal.interpreter.LoopCommand;
+import org.cytoscape.commandDialog.internal.interpreter.VariableScope;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyTable;
 import org.cytoscape.work.FinishStatus;
 import org.cytoscape.work.ObservableTask;
 import org.cytoscape.work.SynchronousTaskManager;
+import org.cytoscape.work.Task;
+import org.cytoscape.work.TaskIterator;
 import org.cytoscape.work.TaskManager;
+import org.cytoscape.work.TaskMonitor;
 import org.cytoscape.work.TaskObserver;
 import org.cytoscape.work.util.AbstractBounded;
 import org.cytoscape.work.util.BoundedDouble;
@@ -69,6 +82,7 @@ import org.cytoscape.work.util.BoundedFloat;
 import org.cytoscape.work.util.BoundedInteger;
 import org.cytoscape.work.util.BoundedLong;
 import org.cytoscape.work.util.ListMultipleSelection;
+import org.cytoscape.work.util.ListSelection;
 import org.cytoscape.work.util.ListSingleSelection;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLevel;
@@ -76,14 +90,31 @@ import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class CommandHandler extends Handler implements PaxAppender, TaskObserver {
+public class CommandHandler extends Handler implements PaxAppender {
 
-	boolean processingCommand;
 	AvailableCommands availableCommands;
+	CommandResolver commandResolver;
 	CommandExecutorTaskFactory commandExecutor;
-	MessageHandler resultsText;
 	TaskManager taskManager; // Task Manager
-	private String lastCommandResult;
+
+	// Where log messages go while a command is running on this thread.  Commands are
+	// run synchronously, so this lets several sessions run commands at the same time.
+	private final ThreadLocal<MessageHandler> currentOutput = new ThreadLocal<>();
+
+	// Runs commands passed to submit()
+	private volatile Executor executor = null;
+	private static ExecutorService defaultExecutor = null;
+
+	// When the command being handled on this thread was submitted, so the time it
+	// waited for the executor counts as queueing
+	private final ThreadLocal<Long> queuedSince = new ThreadLocal<>();
+
+	private final CommandMetrics metrics = new CommandMetrics();
+
+	// Commands that are running, so they can be cancelled, and what else to tell when
+	// they are cancelled, with the session each listener was added from (or null)
+	private final Set<CommandObserver> running = ConcurrentHashMap.newKeySet();
+	private final Map<Runnable, CommandInterpreter> cancelListeners = Collections.synchronizedMap(new HashMap<>());
 
 	private final static Logger logger = LoggerFactory.getLogger(CommandHandler.class);
 
@@ -91,69 +122,183 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 	                      CommandExecutorTaskFactory commandExecutor,
 	                      TaskManager taskManager) {
 		this.availableCommands = availableCommands;
+		this.commandResolver = new CommandResolver(availableCommands);
 		this.commandExecutor = commandExecutor;
 		this.taskManager = taskManager;
 	}
 
-	public String handleCommand(MessageHandler resultsText, String input) {
-		if (input.length() == 0 || input.startsWith("#")) return null;
+	/**
+	 * The resolver used to match (abbreviated) namespaces, commands and arguments.  This
+	 * needs to be registered as a service listener so it knows when commands change.
+	 */
+	public CommandResolver getCommandResolver() {
+		return commandResolver;
+	}
+
+	/**
+	 * Handle one line typed by the user (or sent to the dialog).
+	 *
+	 * @param session the interpreter session the line belongs to
+	 * @return the result of the command, if any
+	 */
+	public String handleCommand(CommandInterpreter session, MessageHandler resultsText, String input) {
+		return handle(session, resultsText, input).getResult();
+	}
+
+	/**
+	 * Use executor to run commands passed to {@link #submit(String)}
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Handle a line asynchronously, in a new session that uses the global variables.
+	 *
+	 * @return a future for the result of the command, including its messages
+	 */
+	public CompletableFuture<CommandResult> submit(String input) {
+		return submit(new CommandInterpreter(VariableScope.global()), input);
+	}
+
+	/**
+	 * Handle a line asynchronously.  Lines submitted in the same session are handled one
+	 * at a time, but not necessarily in the order they were submitted; to run them in
+	 * order, submit each line when the future of the previous one completes.
+	 *
+	 * @return a future for the result of the command, including its messages
+	 */
+	public CompletableFuture<CommandResult> submit(CommandInterpreter session, String input) {
+		Executor executor = this.executor;
+		if (executor == null)
+			executor = getDefaultExecutor();
+		BufferedMessageHandler output = new BufferedMessageHandler();
+		return submit(session, output, input, executor).thenApply(result -> {
+			result.setOutput(output);
+			return result;
+		});
+	}
+
+	/**
+	 * Handle a line asynchronously on the given executor, showing its messages as
+	 * they are produced rather than buffering them
+	 *
+	 * @param resultsText where to show the messages, from the executor's thread
+	 * @return a future for the result of the command
+	 */
+	public CompletableFuture<CommandResult> submit(CommandInterpreter session, MessageHandler resultsText,
+	                                               String input, Executor executor) {
+		final long submitted = System.nanoTime();
+		return CompletableFuture.supplyAsync(() -> {
+			queuedSince.set(submitted);
+			try {
+				synchronized (session) {
+					return handle(session, resultsText, input);
+				}
+			} finally {
+				queuedSince.remove();
+			}
+		}, executor);
+	}
+
+	private static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			defaultExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+				Thread thread = new Thread(r, "Command handler-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return defaultExecutor;
+	}
+
+	private CommandResult handle(CommandInterpreter session, MessageHandler resultsText, String input) {
+		CommandResult result = new CommandResult(input);
+		if (input.length() == 0 || input.startsWith("#")) return result;
 		input = input.trim();
 
 		// handle defined command types
-		this.resultsText = resultsText;
 		Command processedCommand = null;
+		String lastCommandResult = null;
+		CommandInterpreter previousSession = session.activate();
 
 		try {
-			processedCommand = CommandInterpreter.get().getProcessedCommand(input);
-			if(processedCommand == null) return "";
+			processedCommand = session.getProcessedCommand(input);
+			if(processedCommand == null) {
+				result.setResult("");
+				return result;
+			}
 
 			if(processedCommand instanceof LoopCommand) {
-				handleLoopCommand((LoopCommand)processedCommand, resultsText);
+				handleLoopCommand(session, (LoopCommand)processedCommand, resultsText);
+			} else if(processedCommand instanceof ExpressionCommand) {
+				resultsText.appendResult(String.valueOf(((ExpressionCommand) processedCommand).getValue()));
 			} else {
 				String command = processedCommand.getProcessedCommand();
 
 				// Handle our built-ins
-				if (command.startsWith("help")) {
-					getHelpReturn(command);
+				if (isHelp(command)) {
+					getHelpReturn(resultsText, command);
 				} else {
-					// processingCommand = true;
-					// taskManager.execute(commandExecutor.createTaskIterator(Collections.singletonList(input)));
-					// processingCommand = false;
-
-					String[] nsCommand = null;
-		
-					if ((nsCommand = isNamespace(command)) != null) {
-						handleCommand(nsCommand[1], nsCommand[0]);
-					} else {
-						throw new RuntimeException("Failed to find command namespace: '" + command + "'");
-					}
+					CommandObserver observer = execute(resultsText, resolveCommand(command));
+					lastCommandResult = observer.result;
+					result.setStatus(observer.status);
+					result.setValue(observer.value);
 
 					if(processedCommand instanceof AssignmentCommand) {
-						CommandInterpreter.get().addVariable(((AssignmentCommand) processedCommand).getTargetVariable(), lastCommandResult);
+						session.addVariable(((AssignmentCommand) processedCommand).getTargetVariable(), observer.value);
 					}
 				}
 			}
 		} catch (RuntimeException e) {
 			logger.error("Error handling command \"" + input + "\"", e);
 			resultsText.appendError("  " + e.getMessage());
+			result.setError(e.getMessage());
 		} catch (CommandInterpreterException ex) {
 			logger.error("Error handling command \"" + input + "\"", ex);
 			resultsText.appendError("  " + ex.getMessage());
+			result.setError(ex.getMessage());
+		} finally {
+			CommandInterpreter.restore(previousSession);
 		}
 
 		resultsText.appendMessage("");
-		return lastCommandResult;
+		result.setResult(lastCommandResult);
+		return result;
 	}
 
-	private void handleLoopCommand(LoopCommand command, MessageHandler resultsText) {
-		int size = command.getLoopCommands().size();
-		List<String> commands = command.getLoopCommands();
-
-		for(int i=0; i<command.getLoopCommands().size(); i++) {
-			handleCommand(resultsText, command.getLoopCommands().get(i));
+	private void handleLoopCommand(CommandInterpreter session, LoopCommand command, MessageHandler resultsText) {
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Runnable cancel = () -> cancelled.set(true);
+		addCancelListener(cancel);
+		try {
+			for(int i=0; i<command.getLoopCommands().size(); i++) {
+				if (cancelled.get()) {
+					resultsText.appendError("Loop cancelled");
+					return;
+				}
+				handleCommand(session, resultsText, command.getLoopCommands().get(i));
+			}
+		} finally {
+			removeCancelListener(cancel);
 		}
 	}
 
+	/**
+	 * Returns true if the command is one of our built-in help requests
+	 */
+	public boolean isHelp(String command) {
+		return command.startsWith("help");
+	}
+
+	/**
+	 * Display help for the given "help ..." command
+	 */
+	public void handleHelp(MessageHandler resultsText, String command) {
+		getHelpReturn(resultsText, command);
+	}
+
 	// Handle unique matches
 	private String[] isNamespace(String input) {
 		String namespace = null;
@@ -161,7 +306,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		String [] splits = input.split(" ");
 		try {
 			String[] nsCommand = new String[2];
-			nsCommand[0] = uniqueMatch(splits[0], availableCommands.getNamespaces());
+			nsCommand[0] = commandResolver.matchNamespace(splits[0]);
 			if (nsCommand[0] == null) return null;
 			nsCommand[1] = input.substring(splits[0].length()).trim();
 			return nsCommand;
@@ -170,33 +315,255 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		}
 	}
 
-	private void handleCommand(String inputLine, String ns) {
+	/**
+	 * Returns true if the first word of input matches a namespace.  Ambiguous
+	 * abbreviations count as matching, since they are meant to be commands.
+	 */
+	public boolean startsWithNamespace(String input) {
+		try {
+			return isNamespace(input) != null;
+		} catch (RuntimeException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Match a (variable substituted) command line against the available namespaces,
+	 * commands and arguments.  The result may be cached and executed repeatedly.
+	 *
+	 * @throws RuntimeException if the command can't be resolved
+	 */
+	public ResolvedCommand resolveCommand(String input) {
+		return resolveCommand(input, true);
+	}
+
+	/**
+	 * Resolve a command, as {@link #resolveCommand(String)} does
+	 *
+	 * @param recordMetrics false to leave the resolution out of the command's metrics,
+	 *        when the command is only being checked rather than run
+	 */
+	public ResolvedCommand resolveCommand(String input, boolean recordMetrics) {
+		long start = System.nanoTime();
+		int generation = commandResolver.getGeneration();
+		String[] nsCommand = isNamespace(input);
+		if (nsCommand == null)
+			throw new RuntimeException("Failed to find command namespace: '" + input + "'");
+		String ns = nsCommand[0];
+
 		// Parse the input, breaking up the tokens into appropriate
 		// commands, subcommands, and maps
 		Map<String,Object> userArguments = new HashMap<String, Object>(); 
-		String command = parseInput(inputLine, userArguments);
+		int namespaceEnd = input.indexOf(' ');
+		String command = CommandLexer.lex(input, namespaceEnd < 0 ? input.length() : namespaceEnd, userArguments);
 		command = validateCommand(command, ns);
-		List<String> validArgumentNames = availableCommands.getArguments(ns, command);
-		userArguments = validateCommandArguments(command, ns, validArgumentNames, userArguments);
+		userArguments = validateCommandArguments(command, ns, userArguments);
 		
 		// Now we have all of the possible arguments and the arguments that the user
 		// has provided.  Check to make sure all required arguments are available
-		for (String arg: validArgumentNames) {
-			if (availableCommands.getArgRequired(ns, command, arg) &&
-			    !userArguments.containsKey(arg))
+		CommandDescriptor descriptor = commandResolver.getCommandDescriptor(ns, command);
+		for (String arg: descriptor.getRequiredArguments()) {
+			if (!userArguments.containsKey(arg))
 				throw new RuntimeException("Error: argument '"+arg+"' is required for command: '"+ns+" "+command+"'");
 		}
 
-		processingCommand = true;
-		lastCommandResult = null;
+		ResolvedCommand resolved = new ResolvedCommand(ns, command, userArguments, generation);
+		if (recordMetrics)
+			metrics.recordResolution(resolved, System.nanoTime() - start);
+		return resolved;
+	}
+
+	/**
+	 * @return true if command was resolved against the commands that are available now,
+	 * so a cached resolution can still be used
+	 */
+	public boolean isCurrent(ResolvedCommand command) {
+		return command.getGeneration() == commandResolver.getGeneration();
+	}
+
+	/**
+	 * Execute a resolved command, reporting to resultsText, and return the
+	 * string result of the command (if any)
+	 */
+	public String executeCommand(MessageHandler resultsText, ResolvedCommand command) {
+		return execute(resultsText, command).result;
+	}
+
+	/**
+	 * Execute a command for its value, to assign to a variable
+	 *
+	 * @return the typed result of the command (such as a number, list or map) if its
+	 *         tasks provide one, otherwise its string result
+	 */
+	public Object evaluateCommand(MessageHandler resultsText, ResolvedCommand command) {
+		return evaluateCommand(resultsText, command, 0);
+	}
+
+	/**
+	 * Execute a command for its value, cancelling it if it runs for longer than
+	 * timeoutMillis (if that is more than 0)
+	 */
+	public Object evaluateCommand(MessageHandler resultsText, ResolvedCommand command, long timeoutMillis) {
+		return execute(resultsText, command, timeoutMillis).value;
+	}
 
-		taskManager.execute(commandExecutor.createTaskIterator(ns, command, userArguments, this), this);
+	private CommandObserver execute(MessageHandler resultsText, ResolvedCommand command) {
+		return execute(resultsText, command, 0);
 	}
 
-	private Map<String, Object> validateCommandArguments(String command, String ns, List<String> validArgumentNames, Map<String, Object> userArguments) {
+	private CommandObserver execute(MessageHandler resultsText, ResolvedCommand command, long timeoutMillis) {
+		CommandObserver observer = new CommandObserver(resultsText, command, queuedTime(), timeoutMillis);
+		MessageHandler previousOutput = currentOutput.get();
+		currentOutput.set(resultsText);
+		try {
+			TaskIterator iterator = new TaskIterator(new StartCommandTask(observer, null, 0));
+			appendTasks(iterator, observer);
+			taskManager.execute(iterator, observer);
+		} finally {
+			observer.finish();
+			if (previousOutput == null)
+				currentOutput.remove();
+			else
+				currentOutput.set(previousOutput);
+		}
+		return observer;
+	}
+
+	/**
+	 * Append the tasks of a command to iterator.  The tasks are kept, so that the
+	 * command can be cancelled.
+	 */
+	private void appendTasks(TaskIterator iterator, CommandObserver observer) {
+		ResolvedCommand command = observer.command;
+		Map<String, Object> args = new HashMap<>(command.getArguments());
+		TaskIterator tasks = commandExecutor.createTaskIterator(command.getNamespace(), command.getCommand(), args, observer);
+		while (tasks.hasNext()) {
+			Task task = tasks.next();
+			observer.tasks.add(task);
+			iterator.append(task);
+		}
+	}
+
+	/**
+	 * Cancel the commands that are running in a session, and tell the cancel listeners
+	 * added from the session (such as scripts it started) to stop
+	 */
+	public void cancel(CommandInterpreter session) {
+		for (Runnable listener: getCancelListeners(session))
+			listener.run();
+		for (CommandObserver observer: running) {
+			if (observer.session == session)
+				observer.cancel(false);
+		}
+	}
+
+	/**
+	 * Cancel every running command, in every session, and tell all the cancel listeners
+	 * to stop
+	 */
+	public void cancelAll() {
+		for (Runnable listener: getCancelListeners(null))
+			listener.run();
+		for (CommandObserver observer: running)
+			observer.cancel(false);
+	}
+
+	/**
+	 * Call listener when the session that is active on this thread is cancelled with
+	 * {@link #cancel(CommandInterpreter)}, or when {@link #cancelAll()} is called, until
+	 * it is removed
+	 */
+	public void addCancelListener(Runnable listener) {
+		cancelListeners.put(listener, CommandInterpreter.current());
+	}
+
+	public void removeCancelListener(Runnable listener) {
+		cancelListeners.remove(listener);
+	}
+
+	/**
+	 * @return the listeners added from session, or all of them if session is null
+	 */
+	private List<Runnable> getCancelListeners(CommandInterpreter session) {
+		List<Runnable> listeners = new ArrayList<>();
+		synchronized (cancelListeners) {
+			for (Map.Entry<Runnable, CommandInterpreter> entry: cancelListeners.entrySet()) {
+				if (session == null || entry.getValue() == session)
+					listeners.add(entry.getKey());
+			}
+		}
+		return listeners;
+	}
+
+	/**
+	 * Execute several commands with a single call to the task manager, by appending their
+	 * tasks to one TaskIterator.  Each command's results and log messages go to its own
+	 * message handler, as if it had been run with {@link #executeCommand}.  If a command
+	 * fails, the commands after it are run one at a time; if it is cancelled, they
+	 * aren't run at all.
+	 *
+	 * @param outputs the message handler for each command
+	 * @param timeoutMillis if more than 0, the longest each command can run before it is cancelled
+	 * @return the value of each command, as returned by {@link #evaluateCommand}, in order
+	 */
+	public List<Object> executeCommands(List<? extends MessageHandler> outputs, List<ResolvedCommand> commands,
+	                                    long timeoutMillis) {
+		CommandObserver[] observers = new CommandObserver[commands.size()];
+		BatchObserver batch = new BatchObserver(observers);
+		TaskIterator iterator = new TaskIterator();
+		long queued = queuedTime();
+		for (int i = 0; i < commands.size(); i++) {
+			ResolvedCommand command = commands.get(i);
+			observers[i] = new CommandObserver(outputs.get(i), command, queued, timeoutMillis);
+			iterator.append(new StartCommandTask(observers[i], batch, i));
+			appendTasks(iterator, observers[i]);
+		}
+
+		MessageHandler previousOutput = currentOutput.get();
+		try {
+			taskManager.execute(iterator, batch);
+		} finally {
+			for (CommandObserver observer: observers)
+				observer.finish();
+			if (previousOutput == null)
+				currentOutput.remove();
+			else
+				currentOutput.set(previousOutput);
+		}
+
+		List<Object> results = new ArrayList<>(commands.size());
+		boolean cancelled = batch.status == FinishStatus.Type.CANCELLED;
+		for (int i = 0; i < commands.size(); i++) {
+			if (i > batch.current && !cancelled)
+				observers[i] = execute(outputs.get(i), commands.get(i), timeoutMillis);
+			results.add(observers[i].value);
+		}
+		return results;
+	}
+
+	/**
+	 * @return when the command about to be executed was queued: when it was submitted,
+	 *         for the first command of a submitted line, otherwise now
+	 */
+	private long queuedTime() {
+		Long since = queuedSince.get();
+		if (since == null)
+			return System.nanoTime();
+		queuedSince.remove();
+		return since;
+	}
+
+	/**
+	 * The latency and throughput metrics of the commands run by this handler
+	 */
+	public CommandMetrics getMetrics() {
+		return metrics;
+	}
+
+	private Map<String, Object> validateCommandArguments(String command, String ns, Map<String, Object> userArguments) {
 		Map<String, Object> updatedArgs = new HashMap<>();
 		for(String userArg : userArguments.keySet()) {
-			String argKey = uniqueMatch(userArg, validArgumentNames);
+			String argKey = commandResolver.matchArgument(ns, command, userArg);
 			if (argKey == null)
 				throw new RuntimeException("Error: argument '" + userArg + " isn't applicable to command: '" + ns + " " + command +"'");
 			updatedArgs.put(argKey, userArguments.get(userArg));
@@ -209,7 +576,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 			throw new RuntimeException("Command can not be empty.");
 		}
 		
-		String sub = uniqueMatch(command, availableCommands.getCommands(namespace));
+		String sub = commandResolver.matchCommand(namespace, command);
 
 		if (sub == null && (command != null && command.length() > 0))
 			throw new RuntimeException("Failed to find command: '" + command + "' (from namespace: " + namespace + ")");
@@ -217,63 +584,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		return sub;
 	}
 
-	private String parseInput(String input, Map<String,Object> settings) {
-
-		// Tokenize
-		StringReader reader = new StringReader(input.replace("\\", "\\\\"));
-		StreamTokenizer st = new StreamTokenizer(reader);
-
-		// We don't really want to parse numbers as numbers...
-		st.ordinaryChar('/');
-		st.ordinaryChar('_');
-		st.ordinaryChar('-');
-		st.ordinaryChar('.');
-		st.ordinaryChar(':');
-		st.ordinaryChars('0', '9');
-
-		st.wordChars('/', '/');
-		st.wordChars('_', '_');
-		st.wordChars('-', '-');
-		st.wordChars('.', '.');
-		st.wordChars(':', ':');
-		st.wordChars('0', '9');
-
-		List<String> tokenList = new ArrayList<String>();
-		int tokenIndex = 0;
-		int i;
-		try {
-			while ((i = st.nextToken()) != StreamTokenizer.TT_EOF) {
-				switch(i) {
-					case '=':
-						// Get the next token
-						i = st.nextToken();
-						if (i == StreamTokenizer.TT_WORD || i == '"') {
-							tokenIndex--;
-							String key = tokenList.get(tokenIndex);
-							settings.put(key, st.sval);
-							tokenList.remove(tokenIndex);
-						}
-						break;
-					case '"':
-					case StreamTokenizer.TT_WORD:
-						tokenList.add(st.sval);
-						tokenIndex++;
-						break;
-					default:
-						break;
-				}
-			} 
-		} catch (Exception e) { return ""; }
-
-		// Concatenate the commands together
-		String command = "";
-		for (String word: tokenList) command += word+" ";
-
-		// Now, the last token of the args goes with the first setting
-		return command.trim();
-	}
-
-	private void getHelpReturn(String input) {
+	private void getHelpReturn(MessageHandler resultsText, String input) {
 		String tokens[] = input.split(" ");
 		if (tokens.length == 1) {
 			// Return all of the namespaces
@@ -285,7 +596,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 			return;
 		} else if (tokens.length == 2) {
 			if (tokens[1].equals("all")) {
-				helpAll();
+				helpAll(resultsText);
 				return;
 			}
 
@@ -298,7 +609,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 			resultsText.appendMessage("Available commands:");
 			// TODO: Need to get the description for this command
 			for (String command: commands) {
-				String desc = availableCommands.getDescription(tokens[1], command);
+				String desc = commandResolver.getCommandDescriptor(tokens[1], command).getDescription();
 				if (desc != null && desc.length() > 0)
 					resultsText.appendMessage("&nbsp;&nbsp;<b>"+tokens[1]+" "+command+"</b>&nbsp;&nbsp;<i>"+desc+"</i>");
 				else
@@ -323,12 +634,13 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 				return;
 			}
 
-			generateArgumentHelp(tokens[1], command);
+			generateArgumentHelp(resultsText, tokens[1], command);
 		}
 	}
 
-	private void generateArgumentHelp(String namespace, String command) {
-		String longDescription = availableCommands.getLongDescription(namespace, command);
+	private void generateArgumentHelp(MessageHandler resultsText, String namespace, String command) {
+		CommandDescriptor descriptor = commandResolver.getCommandDescriptor(namespace, command);
+		String longDescription = descriptor.getLongDescription();
 		String message = "";
 		// System.out.println("generateArgumentHelp");
 		if (longDescription != null) {
@@ -349,23 +661,21 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 			}
 			message += longDescription;
 		}
-		List<String> argList = availableCommands.getArguments(namespace, command);
 		message += "<br/><br/><b>"+namespace+" "+command+"</b> arguments:";
 		// resultsText.appendMessage(commandArgs);
 		message += "<dl style='list-style-type:none;margin-top:0px;color:blue'>";
-		for (String arg: argList) {
+		for (ArgumentDescriptor arg: descriptor.getArguments()) {
 			message += "<dt>";
-			if (availableCommands.getArgRequired(namespace, command, arg)) {
-				message += "<b>"+arg+"</b>";
+			if (arg.isRequired()) {
+				message += "<b>"+arg.getName()+"</b>";
 			} else {
-				message += arg;
+				message += arg.getName();
 			}
 			message += "="+getTypeString(namespace, command, arg);
 			message += ": ";
 			message += "</dt>";
 			message += "<dd>";
-			message += normalizeArgDescription(availableCommands.getArgDescription(namespace, command, arg),
-			                                   availableCommands.getArgLongDescription(namespace, command, arg));
+			message += normalizeArgDescription(arg.getDescription(), arg.getLongDescription());
 			message += "</dd>";
 		}
 		resultsText.appendMessage(message+"</dl>");
@@ -384,9 +694,13 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		return desc;
 	}
 
-	private String getTypeString(String namespace, String command, String arg) {
-		Class<?> clazz = availableCommands.getArgType(namespace, command, arg);
-		Object object = availableCommands.getArgValue(namespace, command, arg);
+	/**
+	 * The possible values of list selections and the values of bounded arguments can
+	 * change while Cytoscape runs, so they are read when the help is generated rather
+	 * than from the argument's descriptor.
+	 */
+	private String getTypeString(String namespace, String command, ArgumentDescriptor arg) {
+		Class<?> clazz = arg.getType();
 		String keywords = keyword("all")+"|"+keyword("selected")+"|"+keyword("unselected");
 		// Special handling for various types
 		if (clazz.equals(NodeList.class)) {
@@ -408,10 +722,10 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		} else if (clazz.equals(boolean.class) || clazz.equals(Boolean.class)) {
 			return fixedSpan(keyword("true")+"|"+keyword("false"));
 		} else if (clazz.equals(ListSingleSelection.class)) {
-			if (object != null) {
-				ListSingleSelection lss = (ListSingleSelection)object;
+			Object object = availableCommands.getArgValue(namespace, command, arg.getName());
+			if (object instanceof ListSelection) {
 				String str = "&lt;"+classString(clazz.getSimpleName())+"&nbsp(";
-				List<Object> list = lss.getPossibleValues();
+				List<?> list = ((ListSelection<?>)object).getPossibleValues();
 				for (int index = 0; index < list.size()-1; index++) { 
 					str += keyword(list.get(index).toString())+"|"; 
 				}
@@ -422,10 +736,10 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 				return fixedSpan(str);
 			}
 		} else if (clazz.equals(ListMultipleSelection.class)) {
-			if (object != null) {
-				ListMultipleSelection lss = (ListMultipleSelection)object;
+			Object object = availableCommands.getArgValue(namespace, command, arg.getName());
+			if (object instanceof ListSelection) {
 				String str = "&lt;"+classString(clazz.getSimpleName())+"&nbsp[";
-				List<Object> list = lss.getPossibleValues();
+				List<?> list = ((ListSelection<?>)object).getPossibleValues();
 				for (int index = 0; index < list.size()-1; index++) { 
 					str += keyword(list.get(index).toString())+","; 
 				}
@@ -437,8 +751,7 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 			}
 		} else if (clazz.equals(BoundedDouble.class) || clazz.equals(BoundedFloat.class) ||
 	 	          clazz.equals(BoundedInteger.class) || clazz.equals(BoundedLong.class)) {
-			if (object != null)
-				return boundedTypeString(clazz, object);
+			return boundedTypeString(namespace, command, clazz, arg);
 		}
 		return fixedSpan("&lt;"+classString(clazz.getSimpleName())+"&gt;");
 	}
@@ -459,86 +772,45 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 		return "<span style='font-family:Courier;color:#FF00FF;font-style:italics'>"+s+"</span>";
 	}
 
-	private void helpAll() {
+	private void helpAll(MessageHandler resultsText) {
 		for (String namespace: availableCommands.getNamespaces()) {
 			resultsText.appendMessage(namespace);
 			for (String command: availableCommands.getCommands(namespace)) {
 				command = command.trim();
-				generateArgumentHelp(namespace, command);
+				generateArgumentHelp(resultsText, namespace, command);
 				resultsText.appendMessage("<br/>");
 			}
 		}
 	}
 
-	private String boundedTypeString(Class<?> type, Object object) {
-		if (object instanceof AbstractBounded) {
-			AbstractBounded ab = (AbstractBounded)object;
+	private String boundedTypeString(String namespace, String command, Class<?> type, ArgumentDescriptor arg) {
+		if (arg.isBounded()) {
+			Object object = availableCommands.getArgValue(namespace, command, arg.getName());
+			Object value = object instanceof AbstractBounded ? ((AbstractBounded<?>)object).getValue() : null;
 			String str = "&lt;"+classString(type.getSimpleName())+"&nbsp;(";
-			str += ab.getLowerBound().toString() + "&lt;";
-			if (!ab.isLowerBoundStrict())
+			str += arg.getLowerBound().toString() + "&lt;";
+			if (!arg.isLowerBoundStrict())
 				str += "=";
-			if (ab.getValue() != null) {
-				str += ab.getValue().toString();
+			if (value != null) {
+				str += value.toString();
 			} else {
-				str += classString(ab.getLowerBound().getClass().getSimpleName());
+				str += classString(arg.getLowerBound().getClass().getSimpleName());
 			}
 			str += "&lt;";
-			if (!ab.isUpperBoundStrict())
+			if (!arg.isUpperBoundStrict())
 				str += "=";
-			str += ab.getUpperBound().toString() + ")&gt;";
+			str += arg.getUpperBound().toString() + ")&gt;";
 			return fixedSpan(str);
 		} else {
 			return fixedSpan("&lt;"+classString(type.getSimpleName())+"&gt;");
 		}
 	}
 
-	private String uniqueMatch(String input, List<String> matches) {
-		String[] words = input.split(" ");
-		int wordCount = words.length;
-		String bestMatch = null;
-		for (String match: matches) {
-			String[] matchWords = match.split(" ");
-			if (wordCount != matchWords.length)
-				continue;
-			boolean foundMatch = true;
-			for (int word = 0; word < wordCount; word++) {
-				if (!matchWords[word].toLowerCase().startsWith(words[word].toLowerCase())) {
-					foundMatch = false;
-					break;
-				}
-			}
-			if (foundMatch)  {
-				if (bestMatch == null) {
-					bestMatch = match;
-				} else {
-					// OK, we've found multiple matches, but maybe one of them is an exact match
-					String[] foundWords = bestMatch.split(" ");
-					boolean foundExact = false;
-					for (int word = 0; word < wordCount; word++) {
-						// Are both a match?
-						if (foundWords[word].equalsIgnoreCase(words[word]) &&
-								matchWords[word].equalsIgnoreCase(words[word]))
-							continue; // Yes, just keep going
-						if (foundWords[word].equalsIgnoreCase(words[word])) {
-							foundExact = true;
-							break; // bestMatch is still the better match
-						} else if (matchWords[word].equalsIgnoreCase(words[word])) {
-							foundExact = true;
-							bestMatch = match;
-						}
-					}
-					if (!foundExact)
-						throw new RuntimeException("Not unique");
-				}
-			}
-		}
-		return bestMatch;
-	}
-
 	public void doAppend(PaxLoggingEvent event) {
 		// Get prefix
 		// Handle levels
-		if (!processingCommand) {
+		MessageHandler resultsText = currentOutput.get();
+		if (resultsText == null) {
 			return;
 		}
 		// System.out.println("doAppend: "+event.getMessage());
@@ -554,19 +826,165 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 	}
 
 	/**
-	 * Callback invoked by TFExecutor when the ObservableTask completes
+	 * Reports the results of a single command execution, and records its metrics
 	 */
-	public void taskFinished(ObservableTask t) {
-		Object res = t.getResults(String.class);
-		if (res != null) {
-			lastCommandResult = res.toString();
-			resultsText.appendResult(lastCommandResult);
+	private class CommandObserver implements TaskObserver {
+		final MessageHandler resultsText;
+		final ResolvedCommand command;
+		final long queued;
+		final long timeoutMillis;
+		final CommandInterpreter session = CommandInterpreter.current();
+		final List<Task> tasks = new ArrayList<>();
+		Thread thread = null;
+		ScheduledFuture<?> timer = null;
+		boolean cancelled = false;
+		boolean timedOut = false;
+		boolean finished = false;
+		long started = 0;
+		long resultBytes = 0;
+		String result = null;
+		Object value = null;
+		FinishStatus.Type status = null;
+
+		CommandObserver(MessageHandler resultsText, ResolvedCommand command, long queued, long timeoutMillis) {
+			this.resultsText = resultsText;
+			this.command = command;
+			this.queued = queued;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		synchronized void start() {
+			started = System.nanoTime();
+			thread = Thread.currentThread();
+			running.add(this);
+			if (timeoutMillis > 0)
+				timer = TimeoutScheduler.schedule(() -> cancel(true), timeoutMillis);
+		}
+
+		/**
+		 * Cancel the command's tasks, and interrupt the thread running them in case
+		 * they are waiting for something that won't happen
+		 */
+		synchronized void cancel(boolean timeout) {
+			if (finished || thread == null) return;
+			cancelled = true;
+			timedOut = timeout;
+			for (Task task: tasks)
+				task.cancel();
+			thread.interrupt();
+		}
+
+		/**
+		 * Stop the timeout, and clear the interrupt if the command was cancelled
+		 */
+		synchronized void finish() {
+			if (finished) return;
+			finished = true;
+			running.remove(this);
+			if (timer != null)
+				timer.cancel(false);
+			if (cancelled && thread == Thread.currentThread())
+				Thread.interrupted();
+		}
+
+		/**
+		 * Callback invoked by TFExecutor when the ObservableTask completes
+		 */
+		public void taskFinished(ObservableTask t) {
+			Object res = t.getResults(String.class);
+			if (res != null) {
+				result = res.toString();
+				resultsText.appendResult(result);
+				resultBytes += utf8Length(result);
+			}
+			Object typed = ResultValues.getValue(t);
+			if (typed != null)
+				value = typed;
+			else if (res != null)
+				value = result;
+		}
+
+		public void allFinished(FinishStatus status) {
+			finish();
+			this.status = status.getType();
+			if (timedOut)
+				resultsText.appendError("Timed out after " + timeoutMillis / 1000.0 + " seconds");
+			else if (cancelled)
+				resultsText.appendError("Cancelled");
+			resultsText.appendCommand(status.getType().toString());
+
+			long finished = System.nanoTime();
+			if (started == 0) started = finished;
+			metrics.recordExecution(command, started - queued, finished - started,
+			                        status.getType() != FinishStatus.Type.SUCCEEDED, resultBytes);
+		}
+	}
+
+	private static long utf8Length(String s) {
+		long length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) length++;
+			else if (c < 0x800) length += 2;
+			else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+			else length += 3;
+		}
+		return length;
+	}
+
+	/**
+	 * Observes the TaskIterator of a batch of commands, and finishes the observer
+	 * of each command when the next one starts
+	 */
+	private static class BatchObserver implements TaskObserver {
+		final CommandObserver[] observers;
+		int current = -1;
+		FinishStatus.Type status = null;
+
+		BatchObserver(CommandObserver[] observers) {
+			this.observers = observers;
+		}
+
+		void start(int command) {
+			if (current >= 0)
+				observers[current].allFinished(FinishStatus.getSucceeded());
+			current = command;
+		}
+
+		public void taskFinished(ObservableTask t) {
+			if (current >= 0)
+				observers[current].taskFinished(t);
+		}
+
+		public void allFinished(FinishStatus status) {
+			this.status = status.getType();
+			if (current >= 0)
+				observers[current].allFinished(status);
 		}
 	}
 
-	public void allFinished(FinishStatus status) {
-		processingCommand = false;
-		resultsText.appendCommand(status.getType().toString());
+	/**
+	 * Marks the start of a command's tasks, on its own or in a batch
+	 */
+	private class StartCommandTask implements Task {
+		private final CommandObserver observer;
+		private final BatchObserver batch;
+		private final int command;
+
+		StartCommandTask(CommandObserver observer, BatchObserver batch, int command) {
+			this.observer = observer;
+			this.batch = batch;
+			this.command = command;
+		}
+
+		public void run(TaskMonitor monitor) {
+			if (batch != null)
+				batch.start(command);
+			observer.start();
+			currentOutput.set(observer.resultsText);
+		}
+
+		public void cancel() {}
 	}
 
 	// Handler methods
@@ -574,7 +992,8 @@ public class CommandHandler extends Handler implements PaxAppender, TaskObserver
 	public void flush() {}
 
 	public void publish(final LogRecord record) {
-		if (record == null) {
+		MessageHandler resultsText = currentOutput.get();
+		if (record == null || resultsText == null) {
 			return;
 		}
 
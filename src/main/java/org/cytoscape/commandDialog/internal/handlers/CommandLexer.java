@@ -0,0 +1,102 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.Map;
+
+/**
+ * Splits the part of a command line after the namespace into the command words
+ * and the argument settings, in a single pass over the input.
+ * <p>
+ * Words are separated by whitespace.  A word followed by "=" (with optional
+ * whitespace around it) is an argument name, and the next token is its value.
+ * Values and words may be quoted with double or single quotes, which lets them
+ * contain whitespace and "="; there are no escapes inside quotes, so backslashes
+ * are always literal.  An unquoted value runs to the next whitespace.
+ */
+class CommandLexer {
+	private final CharSequence input;
+	private final int length;
+	private int position;
+
+	// The token most recently read by nextToken()
+	private int tokenStart;
+	private int tokenEnd;
+
+	private CommandLexer(CharSequence input, int start) {
+		this.input = input;
+		this.length = input.length();
+		this.position = start;
+	}
+
+	/**
+	 * Lex a command line.
+	 *
+	 * @param input the command line
+	 * @param start where to start lexing, which is just after the namespace
+	 * @param settings the map the argument settings are added to
+	 * @return the command words, separated by single spaces
+	 * @throws RuntimeException if the input has a syntax error
+	 */
+	static String lex(CharSequence input, int start, Map<String, Object> settings) {
+		return new CommandLexer(input, start).lex(settings);
+	}
+
+	private String lex(Map<String, Object> settings) {
+		StringBuilder command = new StringBuilder(length);
+		while (skipWhitespace()) {
+			if (input.charAt(position) == '=')
+				throw error(position, "missing argument name before '='");
+
+			int start = position;
+			String word = nextToken(false);
+			if (skipWhitespace() && input.charAt(position) == '=') {
+				position++;
+				if (!skipWhitespace())
+					throw error(start, "missing value for '" + word + "'");
+				settings.put(word, nextToken(true));
+			} else {
+				if (command.length() > 0) command.append(' ');
+				command.append(word);
+			}
+		}
+		return command.toString();
+	}
+
+	/**
+	 * Skip whitespace
+	 * @return true if there is more input
+	 */
+	private boolean skipWhitespace() {
+		while (position < length && Character.isWhitespace(input.charAt(position)))
+			position++;
+		return position < length;
+	}
+
+	private String nextToken(boolean value) {
+		char c = input.charAt(position);
+		if (c == '"' || c == '\'') {
+			int start = position;
+			tokenStart = position + 1;
+			tokenEnd = tokenStart;
+			while (tokenEnd < length && input.charAt(tokenEnd) != c)
+				tokenEnd++;
+			if (tokenEnd >= length)
+				throw error(start, "unterminated quoted string");
+			position = tokenEnd + 1;
+		} else {
+			tokenStart = position;
+			tokenEnd = position;
+			while (tokenEnd < length) {
+				c = input.charAt(tokenEnd);
+				if (Character.isWhitespace(c) || (!value && (c == '=' || c == '"' || c == '\'')))
+					break;
+				tokenEnd++;
+			}
+			position = tokenEnd;
+		}
+		return input.subSequence(tokenStart, tokenEnd).toString();
+	}
+
+	private RuntimeException error(int column, String message) {
+		return new RuntimeException("Syntax error at column " + (column + 1) + ": " + message + " in '" + input + "'");
+	}
+}
@@ -0,0 +1,116 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts and timings for each (namespace, command) run by a {@link CommandHandler}.
+ * Resolution is the time taken to match a command line against the available
+ * commands, queueing is the time between a command being handed to the handler
+ * and its first task starting, and execution is the time its tasks take.
+ */
+public class CommandMetrics {
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * The metrics for one command
+	 */
+	public static class Stats {
+		private final String namespace;
+		private final String command;
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong resultBytes = new AtomicLong();
+		private final LatencyHistogram resolution = new LatencyHistogram();
+		private final LatencyHistogram queueing = new LatencyHistogram();
+		private final LatencyHistogram execution = new LatencyHistogram();
+
+		Stats(String namespace, String command) {
+			this.namespace = namespace;
+			this.command = command;
+		}
+
+		public String getNamespace() { return namespace; }
+		public String getCommand() { return command; }
+		public long getCalls() { return calls.get(); }
+		public long getErrors() { return errors.get(); }
+		public long getResultBytes() { return resultBytes.get(); }
+		public LatencyHistogram getResolution() { return resolution; }
+		public LatencyHistogram getQueueing() { return queueing; }
+		public LatencyHistogram getExecution() { return execution; }
+	}
+
+	public Stats get(String namespace, String command) {
+		return stats.computeIfAbsent(namespace + " " + command, key -> new Stats(namespace, command));
+	}
+
+	void recordResolution(ResolvedCommand command, long nanos) {
+		get(command.getNamespace(), command.getCommand()).resolution.record(nanos);
+	}
+
+	void recordExecution(ResolvedCommand command, long queueNanos, long executionNanos, boolean failed, long resultBytes) {
+		Stats commandStats = get(command.getNamespace(), command.getCommand());
+		commandStats.calls.incrementAndGet();
+		if (failed)
+			commandStats.errors.incrementAndGet();
+		commandStats.resultBytes.addAndGet(resultBytes);
+		commandStats.queueing.record(queueNanos);
+		commandStats.execution.record(executionNanos);
+	}
+
+	/**
+	 * @return the metrics of each command, with the most total execution time first
+	 */
+	public List<Stats> getAll() {
+		List<Stats> all = new ArrayList<>(stats.values());
+		Collections.sort(all, (a, b) -> Double.compare(b.execution.getTotalMillis(), a.execution.getTotalMillis()));
+		return all;
+	}
+
+	public void reset() {
+		stats.clear();
+	}
+
+	public String toJSON() {
+		StringBuilder json = new StringBuilder("[");
+		for (Stats commandStats: getAll()) {
+			if (json.length() > 1) json.append(',');
+			json.append("{\"namespace\":").append(JsonWriter.quote(commandStats.namespace))
+			    .append(",\"command\":").append(JsonWriter.quote(commandStats.command))
+			    .append(",\"calls\":").append(commandStats.getCalls())
+			    .append(",\"errors\":").append(commandStats.getErrors())
+			    .append(",\"resultBytes\":").append(commandStats.getResultBytes())
+			    .append(",\"resolution\":").append(commandStats.resolution.toJSON())
+			    .append(",\"queueing\":").append(commandStats.queueing.toJSON())
+			    .append(",\"execution\":").append(commandStats.execution.toJSON())
+			    .append('}');
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 * @return a table of the metrics, with times in milliseconds
+	 */
+	public String toText() {
+		List<Stats> all = getAll();
+		if (all.isEmpty()) return "No commands have been run";
+
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("Times are in milliseconds; Resolve, Queue and Mean are averages%n"));
+		text.append(String.format("%-32s %8s %6s %10s %10s %10s %10s %10s %12s%n", "Command", "Calls", "Errors",
+		                          "Resolve", "Queue", "Mean", "p95", "Max", "Result bytes"));
+		for (Stats commandStats: all) {
+			text.append(String.format("%-32s %8d %6d %10.3f %10.3f %10.3f %10.3f %10.3f %12d%n",
+			                          commandStats.namespace + " " + commandStats.command,
+			                          commandStats.getCalls(), commandStats.getErrors(),
+			                          commandStats.resolution.getMeanMillis(), commandStats.queueing.getMeanMillis(),
+			                          commandStats.execution.getMeanMillis(), commandStats.execution.getPercentileMillis(0.95),
+			                          commandStats.execution.getMaxMillis(), commandStats.getResultBytes()));
+		}
+		return text.toString();
+	}
+}
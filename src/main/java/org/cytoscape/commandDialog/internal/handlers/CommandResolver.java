@@ -0,0 +1,131 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cytoscape.command.AvailableCommands;
+import org.cytoscape.task.NetworkTaskFactory;
+import org.cytoscape.task.NetworkViewCollectionTaskFactory;
+import org.cytoscape.task.NetworkViewTaskFactory;
+import org.cytoscape.task.TableTaskFactory;
+import org.cytoscape.work.ServiceProperties;
+import org.cytoscape.work.TaskFactory;
+
+/**
+ * Resolves (possibly abbreviated) namespaces, commands and argument names using
+ * {@link WordTrie}s built from {@link AvailableCommands}, and caches a
+ * {@link CommandDescriptor} for each command.  Everything is built lazily and
+ * thrown away whenever a command task factory is registered or unregistered,
+ * so it always reflects the installed apps.
+ */
+public class CommandResolver {
+	private final AvailableCommands availableCommands;
+	private volatile Cache cache = new Cache();
+	// Counts the invalidations, so commands resolved before one can be recognized
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private static class Cache {
+		volatile WordTrie namespaces = null;
+		final Map<String, WordTrie> commands = new ConcurrentHashMap<>();
+		final Map<String, WordTrie> arguments = new ConcurrentHashMap<>();
+		final Map<String, CommandDescriptor> descriptors = new ConcurrentHashMap<>();
+	}
+
+	public CommandResolver(AvailableCommands availableCommands) {
+		this.availableCommands = availableCommands;
+	}
+
+	/**
+	 * @return the namespace that matches input, or null if there is none
+	 * @throws RuntimeException if the abbreviation isn't unique
+	 */
+	public String matchNamespace(String input) {
+		Cache current = cache;
+		WordTrie namespaces = current.namespaces;
+		if (namespaces == null) {
+			namespaces = new WordTrie(availableCommands.getNamespaces());
+			current.namespaces = namespaces;
+		}
+		return namespaces.uniqueMatch(input);
+	}
+
+	/**
+	 * @return the command in namespace that matches input, or null if there is none
+	 * @throws RuntimeException if the abbreviation isn't unique
+	 */
+	public String matchCommand(String namespace, String input) {
+		Cache current = cache;
+		WordTrie commands = current.commands.get(namespace);
+		if (commands == null) {
+			commands = new WordTrie(availableCommands.getCommands(namespace));
+			current.commands.put(namespace, commands);
+		}
+		return commands.uniqueMatch(input);
+	}
+
+	/**
+	 * @return the argument of the command that matches input, or null if there is none
+	 * @throws RuntimeException if the abbreviation isn't unique
+	 */
+	public String matchArgument(String namespace, String command, String input) {
+		Cache current = cache;
+		String key = namespace + " " + command;
+		WordTrie arguments = current.arguments.get(key);
+		if (arguments == null) {
+			arguments = new WordTrie(getDescriptor(current, namespace, command).getArgumentNames());
+			current.arguments.put(key, arguments);
+		}
+		return arguments.uniqueMatch(input);
+	}
+
+	/**
+	 * @return the metadata for a command, which must be a full (not abbreviated) name
+	 */
+	public CommandDescriptor getCommandDescriptor(String namespace, String command) {
+		return getDescriptor(cache, namespace, command);
+	}
+
+	private CommandDescriptor getDescriptor(Cache current, String namespace, String command) {
+		String key = namespace + " " + command;
+		CommandDescriptor descriptor = current.descriptors.get(key);
+		if (descriptor == null) {
+			descriptor = new CommandDescriptor(availableCommands, namespace, command);
+			current.descriptors.put(key, descriptor);
+		}
+		return descriptor;
+	}
+
+	/**
+	 * Forget everything we know about the available commands
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+		cache = new Cache();
+	}
+
+	/**
+	 * @return a number that changes whenever the available commands change
+	 */
+	public int getGeneration() {
+		return generation.get();
+	}
+
+	private void commandsChanged(Map<?, ?> props) {
+		if (props != null && props.containsKey(ServiceProperties.COMMAND_NAMESPACE))
+			invalidate();
+	}
+
+	// Service listener methods.  These are registered for each of the task factory
+	// types that AvailableCommands tracks.
+	public void addCommand(TaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void removeCommand(TaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void addCommand(NetworkTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void removeCommand(NetworkTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void addCommand(NetworkViewTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void removeCommand(NetworkViewTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void addCommand(NetworkViewCollectionTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void removeCommand(NetworkViewCollectionTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void addCommand(TableTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+	public void removeCommand(TableTaskFactory factory, Map<?, ?> props) { commandsChanged(props); }
+}
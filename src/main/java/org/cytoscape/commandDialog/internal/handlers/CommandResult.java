@@ -0,0 +1,81 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import org.cytoscape.work.FinishStatus;
+
+/**
+ * The outcome of one command handled by {@link CommandHandler}: the string result,
+ * how the command's tasks finished, and (for commands run with
+ * {@link CommandHandler#submit(String)}) the messages it produced.
+ */
+public class CommandResult {
+	private final String command;
+	private String result = null;
+	private Object value = null;
+	private FinishStatus.Type status = FinishStatus.Type.SUCCEEDED;
+	private String error = null;
+	private BufferedMessageHandler output = null;
+
+	CommandResult(String command) {
+		this.command = command;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the string result of the command, "" for lines that don't run a
+	 *         command (such as assignments of expressions), or null if there is none
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return the value of the command, as assigned to a variable: a number, list, map
+	 *         or Cytoscape object if the command provides one, otherwise the string result
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	void setValue(Object value) {
+		this.value = value;
+	}
+
+	public FinishStatus.Type getStatus() {
+		return status;
+	}
+
+	void setStatus(FinishStatus.Type status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the error message if the command couldn't be run, otherwise null
+	 */
+	public String getError() {
+		return error;
+	}
+
+	void setError(String error) {
+		this.error = error;
+		this.status = FinishStatus.Type.FAILED;
+	}
+
+	/**
+	 * @return the messages the command produced, or null if they were sent
+	 *         straight to a message handler
+	 */
+	public BufferedMessageHandler getOutput() {
+		return output;
+	}
+
+	void setOutput(BufferedMessageHandler output) {
+		this.output = output;
+	}
+}
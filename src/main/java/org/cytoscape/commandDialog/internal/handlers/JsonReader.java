@@ -0,0 +1,167 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a JSON document into the value types used by script variables: objects become
+ * Maps, arrays become Lists, integral numbers become Longs and other numbers Doubles.
+ */
+public class JsonReader {
+	private final String text;
+	private int position = 0;
+
+	private JsonReader(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @throws RuntimeException if text isn't valid JSON
+	 */
+	public static Object read(String text) {
+		JsonReader reader = new JsonReader(text);
+		Object value = reader.readValue();
+		if (reader.skipWhitespace())
+			throw reader.error("unexpected '" + text.charAt(reader.position) + "'");
+		return value;
+	}
+
+	private Object readValue() {
+		if (!skipWhitespace())
+			throw error("unexpected end of input");
+		char c = text.charAt(position);
+		switch (c) {
+			case '{': return readObject();
+			case '[': return readArray();
+			case '"': return readString();
+			case 't': return readWord("true", Boolean.TRUE);
+			case 'f': return readWord("false", Boolean.FALSE);
+			case 'n': return readWord("null", null);
+			default:
+				if (c == '-' || (c >= '0' && c <= '9'))
+					return readNumber();
+				throw error("unexpected '" + c + "'");
+		}
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		position++;
+		if (skipWhitespace() && text.charAt(position) == '}') {
+			position++;
+			return object;
+		}
+		while (true) {
+			if (!skipWhitespace() || text.charAt(position) != '"')
+				throw error("expected a name");
+			String name = readString();
+			expect(':');
+			object.put(name, readValue());
+			if (!skipWhitespace())
+				throw error("unterminated object");
+			char c = text.charAt(position++);
+			if (c == '}') return object;
+			if (c != ',') throw error("expected ',' or '}'");
+		}
+	}
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<>();
+		position++;
+		if (skipWhitespace() && text.charAt(position) == ']') {
+			position++;
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			if (!skipWhitespace())
+				throw error("unterminated array");
+			char c = text.charAt(position++);
+			if (c == ']') return array;
+			if (c != ',') throw error("expected ',' or ']'");
+		}
+	}
+
+	private String readString() {
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+			if (c == '"') return value.toString();
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (position >= text.length()) break;
+			c = text.charAt(position++);
+			switch (c) {
+				case 'b': value.append('\b'); break;
+				case 'f': value.append('\f'); break;
+				case 'n': value.append('\n'); break;
+				case 'r': value.append('\r'); break;
+				case 't': value.append('\t'); break;
+				case 'u':
+					if (position + 4 > text.length()) throw error("invalid escape");
+					value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+					position += 4;
+					break;
+				default: value.append(c);
+			}
+		}
+		throw error("unterminated string");
+	}
+
+	private Object readWord(String word, Object value) {
+		if (!text.startsWith(word, position))
+			throw error("unexpected '" + text.charAt(position) + "'");
+		position += word.length();
+		return value;
+	}
+
+	private Object readNumber() {
+		int start = position;
+		boolean integral = true;
+		while (position < text.length()) {
+			char c = text.charAt(position);
+			if (c == '.' || c == 'e' || c == 'E')
+				integral = false;
+			else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+				break;
+			position++;
+		}
+		String number = text.substring(start, position);
+		try {
+			if (integral) {
+				try {
+					return Long.parseLong(number);
+				} catch (NumberFormatException e) {
+					// Too big for a long
+				}
+			}
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw error("invalid number '" + number + "'");
+		}
+	}
+
+	private void expect(char c) {
+		if (!skipWhitespace() || text.charAt(position) != c)
+			throw error("expected '" + c + "'");
+		position++;
+	}
+
+	/**
+	 * @return true if there is more input
+	 */
+	private boolean skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+			position++;
+		return position < text.length();
+	}
+
+	private RuntimeException error(String message) {
+		return new RuntimeException("Invalid JSON at position " + (position + 1) + ": " + message);
+	}
+}
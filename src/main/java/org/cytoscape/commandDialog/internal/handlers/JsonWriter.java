@@ -0,0 +1,88 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.cytoscape.model.CyIdentifiable;
+
+/**
+ * Writes the value types used by script variables as JSON, the reverse of
+ * {@link JsonReader}: Maps become objects and Collections arrays.  Cytoscape
+ * objects are written as their SUIDs, and numbers that JSON can't represent
+ * (NaN and the infinities) as null.
+ */
+public class JsonWriter {
+	private JsonWriter() {}
+
+	public static String write(Object value) {
+		StringBuilder json = new StringBuilder();
+		write(json, value);
+		return json.toString();
+	}
+
+	/**
+	 * @return text as a JSON string, with quotes
+	 */
+	public static String quote(String text) {
+		StringBuilder json = new StringBuilder(text.length() + 2);
+		quote(json, text);
+		return json.toString();
+	}
+
+	private static void write(StringBuilder json, Object value) {
+		if (value == null) {
+			json.append("null");
+		} else if (value instanceof Map) {
+			json.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+				if (!first) json.append(',');
+				first = false;
+				quote(json, String.valueOf(entry.getKey()));
+				json.append(':');
+				write(json, entry.getValue());
+			}
+			json.append('}');
+		} else if (value instanceof Collection) {
+			json.append('[');
+			boolean first = true;
+			for (Object element: (Collection<?>) value) {
+				if (!first) json.append(',');
+				first = false;
+				write(json, element);
+			}
+			json.append(']');
+		} else if (value instanceof Double || value instanceof Float) {
+			double number = ((Number) value).doubleValue();
+			json.append(Double.isNaN(number) || Double.isInfinite(number) ? "null" : String.valueOf(value));
+		} else if (value instanceof Number || value instanceof Boolean) {
+			json.append(value);
+		} else if (value instanceof CyIdentifiable) {
+			json.append(((CyIdentifiable) value).getSUID());
+		} else {
+			quote(json, value.toString());
+		}
+	}
+
+	private static void quote(StringBuilder json, String text) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"': json.append("\\\""); break;
+				case '\\': json.append("\\\\"); break;
+				case '\b': json.append("\\b"); break;
+				case '\f': json.append("\\f"); break;
+				case '\n': json.append("\\n"); break;
+				case '\r': json.append("\\r"); break;
+				case '\t': json.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						json.append(String.format("\\u%04x", (int) c));
+					else
+						json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,80 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of durations, with a bucket for each power of two
+ * microseconds.  Percentiles are reported as the upper bound of their bucket,
+ * so they are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+	private final static int BUCKETS = 48;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		total.addAndGet(micros);
+		max.accumulateAndGet(micros, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getTotalMillis() {
+		return total.get() / 1000.0;
+	}
+
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / 1000.0 / n;
+	}
+
+	public double getMaxMillis() {
+		return max.get() / 1000.0;
+	}
+
+	/**
+	 * @param fraction the percentile as a fraction, such as 0.95
+	 */
+	public double getPercentileMillis(double fraction) {
+		long n = count.get();
+		if (n == 0) return 0;
+		long target = (long) Math.ceil(fraction * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) {
+				long upper = i == 0 ? 0 : 1L << i;
+				return Math.min(upper, max.get()) / 1000.0;
+			}
+		}
+		return getMaxMillis();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * @return the histogram summary as a JSON object, in milliseconds
+	 */
+	public String toJSON() {
+		return String.format(Locale.ROOT, "{\"count\":%d,\"totalMs\":%.3f,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p95Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+		                     getCount(), getTotalMillis(), getMeanMillis(), getPercentileMillis(0.5),
+		                     getPercentileMillis(0.95), getPercentileMillis(0.99), getMaxMillis());
+	}
+}
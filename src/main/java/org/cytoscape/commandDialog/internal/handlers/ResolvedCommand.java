@@ -0,0 +1,48 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A command whose namespace, command and argument names have been matched
+ * against {@link org.cytoscape.command.AvailableCommands}.  Once resolved,
+ * a command can be executed any number of times without being parsed again.
+ */
+public class ResolvedCommand {
+	private final String namespace;
+	private final String command;
+	private final Map<String, Object> arguments;
+	private final int generation;
+
+	/**
+	 * @param generation the {@link CommandResolver#getGeneration() generation} of the
+	 *        available commands the command was resolved against
+	 */
+	public ResolvedCommand(String namespace, String command, Map<String, Object> arguments, int generation) {
+		this.namespace = namespace;
+		this.command = command;
+		this.arguments = Collections.unmodifiableMap(arguments);
+		this.generation = generation;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public Map<String, Object> getArguments() {
+		return arguments;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public String toString() {
+		return namespace + " " + command;
+	}
+}
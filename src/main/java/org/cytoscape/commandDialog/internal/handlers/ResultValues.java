@@ -0,0 +1,73 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyIdentifiable;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.json.JSONResult;
+
+/**
+ * Gets the result of a task as a value for a script variable, rather than as a
+ * string.  Lists, maps, numbers, booleans and Cytoscape objects (which are
+ * substituted into commands by SUID) are asked for directly; otherwise a
+ * {@link JSONResult} is read into lists, maps and numbers.
+ */
+class ResultValues {
+	private ResultValues() {}
+
+	/**
+	 * @return the typed result of task, or null if it doesn't have one
+	 */
+	static Object getValue(ObservableTask task) {
+		List<Class<?>> types;
+		try {
+			types = task.getResultClasses();
+		} catch (RuntimeException e) {
+			return null;
+		}
+		if (types == null || types.isEmpty()) return null;
+
+		for (Class<?> type: types) {
+			if (List.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)
+			    || CyIdentifiable.class.isAssignableFrom(type)
+			    || Number.class.isAssignableFrom(type) || Boolean.class.equals(type)) {
+				Object value = getResults(task, type);
+				if (value != null) return normalize(value);
+			}
+		}
+
+		if (types.contains(JSONResult.class)) {
+			JSONResult json = (JSONResult) getResults(task, JSONResult.class);
+			if (json != null && json.getJSON() != null) {
+				try {
+					return JsonReader.read(json.getJSON());
+				} catch (RuntimeException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Object getResults(ObservableTask task, Class<?> type) {
+		try {
+			return task.getResults(type);
+		} catch (RuntimeException e) {
+			// Some tasks throw for result types they don't support
+			return null;
+		}
+	}
+
+	/**
+	 * Integral numbers become Longs and other numbers Doubles, the same as in expressions.
+	 * Lists and maps are kept as they are, since they may be large.
+	 */
+	private static Object normalize(Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+		if (value instanceof Float)
+			return ((Number) value).doubleValue();
+		return value;
+	}
+}
@@ -0,0 +1,34 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the actions that cancel commands and scripts when their timeouts expire,
+ * on a single daemon thread shared by every command handler and script
+ */
+public class TimeoutScheduler {
+	private static ScheduledExecutorService scheduler = null;
+
+	private TimeoutScheduler() {}
+
+	/**
+	 * Run action after millis milliseconds, unless the returned future is cancelled first
+	 */
+	public static ScheduledFuture<?> schedule(Runnable action, long millis) {
+		return getScheduler().schedule(action, millis, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "Command timeouts");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler;
+	}
+}
@@ -0,0 +1,94 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A case-folded trie over multi-word names such as namespaces, commands ("add node")
+ * and argument names.  Each level of the trie is one word, and the edges at a level
+ * are sorted so that all of the words starting with an abbreviation can be found
+ * without looking at the others.
+ * <p>
+ * Matching follows the rules users know from the command line: every word of the
+ * input must be a prefix of the corresponding word of the name, and the number of
+ * words must be the same.  If several names match, the one with an exact match at
+ * the earliest word where the candidates differ wins; otherwise the input is ambiguous.
+ */
+class WordTrie {
+	private final Node root = new Node();
+
+	private static class Node {
+		final TreeMap<String, Node> children = new TreeMap<>();
+		final List<String> values = new ArrayList<>(1);
+	}
+
+	WordTrie(List<String> names) {
+		for (String name: names)
+			add(name);
+	}
+
+	private void add(String name) {
+		Node node = root;
+		for (String word: name.toLowerCase().split(" ")) {
+			Node child = node.children.get(word);
+			if (child == null) {
+				child = new Node();
+				node.children.put(word, child);
+			}
+			node = child;
+		}
+		node.values.add(name);
+	}
+
+	/**
+	 * Find the unique name that matches an (abbreviated) input.
+	 *
+	 * @return the matching name, or null if nothing matches
+	 * @throws RuntimeException if more than one name matches equally well
+	 */
+	String uniqueMatch(String input) {
+		String[] words = input.toLowerCase().split(" ");
+		if (words.length > 63)
+			return null;
+		Match match = new Match();
+		collect(root, words, 0, 0L, match);
+		if (match.count > 1)
+			throw new RuntimeException("Not unique");
+		return match.value;
+	}
+
+	private void collect(Node node, String[] words, int level, long exactWords, Match match) {
+		if (level == words.length) {
+			for (String value: node.values)
+				match.offer(value, exactWords);
+			return;
+		}
+
+		String word = words[level];
+		// Earlier words are more significant when comparing exact matches
+		long exactBit = 1L << (62 - level);
+		for (Map.Entry<String, Node> entry: node.children.tailMap(word, true).entrySet()) {
+			String key = entry.getKey();
+			if (!key.startsWith(word)) break;
+			collect(entry.getValue(), words, level + 1, key.length() == word.length() ? exactWords | exactBit : exactWords, match);
+		}
+	}
+
+	private static class Match {
+		String value = null;
+		long exactWords = -1L;
+		int count = 0;
+
+		void offer(String candidate, long candidateExactWords) {
+			if (candidateExactWords > exactWords) {
+				value = candidate;
+				exactWords = candidateExactWords;
+				count = 1;
+			} else if (candidateExactWords == exactWords) {
+				count++;
+			}
+		}
+	}
+}
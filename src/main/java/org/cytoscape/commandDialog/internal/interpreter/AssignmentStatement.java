@@ -0,0 +1,42 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * Assignment of an expression, or of the result of a Cytoscape command, to a variable.
+ * The right hand side is parsed when the script is compiled.  If it isn't an expression
+ * that the built-in parser understands, it's either a "js" script or a command, and which
+ * of the two gets decided the first time the statement runs.
+ */
+public class AssignmentStatement extends CommandStatement {
+	private final String variable;
+	private final Expression expression;
+	private Boolean script = null;
+
+	public AssignmentStatement(int line, String source, String variable, CommandTemplate template, Expression expression) {
+		super(line, source, template);
+		this.variable = variable;
+		this.expression = expression;
+	}
+
+	public String getVariable() {
+		return variable;
+	}
+
+	/**
+	 * @return the parsed right hand side, or null if it isn't a built-in expression
+	 */
+	public Expression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return true if the right hand side is a "js" script, false if it is a
+	 *         command, or null if the statement hasn't been run yet
+	 */
+	public Boolean isScript() {
+		return script;
+	}
+
+	public void setScript(boolean script) {
+		this.script = script;
+	}
+}
@@ -0,0 +1,24 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of statements: the body of a script, a loop, or a branch of an if
+ */
+public class Block {
+	private final List<Statement> statements = new ArrayList<>();
+
+	public List<Statement> getStatements() {
+		return Collections.unmodifiableList(statements);
+	}
+
+	void addStatement(Statement statement) {
+		statements.add(statement);
+	}
+
+	public boolean isEmpty() {
+		return statements.isEmpty();
+	}
+}
@@ -5,30 +5,44 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 import javax.swing.SwingUtilities;
 
 /**
- * Class to parse a single command and also maintain the variable states
+ * Class to parse a single command and also maintain the variable states.  Each
+ * instance is an independent session (the command dialog, or one run of a script)
+ * with its own control flow state and {@link VariableScope}, so sessions can run
+ * at the same time on different threads.
  * 
  * @author ashish
  *
  */
 public class CommandInterpreter {
 	private ScriptEngine engine;
-	private Bindings bindings;
-	private static CommandInterpreter _instance = null;
-	private String forCondition = "";
+	private ScriptContext scriptContext;
+	private boolean engineInitialized = false;
+	private final VariableScope scope;
+	private final static ThreadLocal<CommandInterpreter> currentSession = new ThreadLocal<>();
+	private Expression forCondition = null;
 	private boolean loopCompletedOnce = false;
 	private LoopCommand loopCommand = null;
 	private CommandInterpreterState currentState = CommandInterpreterState.SEQUENTIAL_PROCESSING;
 	private boolean insideIfBlock = false;
 	private boolean insideForBlock = false;
 	
+	// Compiled conditions and assignment expressions, keyed by their text
+	private final static int EXPRESSION_CACHE_SIZE = 256;
+	private final static Expression NOT_AN_EXPRESSION = new Expression.Literal(null);
+	private final ExpressionCache<Expression> conditionCache = new ExpressionCache<>(EXPRESSION_CACHE_SIZE);
+	private final ExpressionCache<Expression> expressionCache = new ExpressionCache<>(EXPRESSION_CACHE_SIZE);
+	private final ExpressionCache<CommandTemplate> templateCache = new ExpressionCache<>(EXPRESSION_CACHE_SIZE);
+	
 	final static Pattern IF_STATEMENT_PATTERN = Pattern.compile("if(.+?)then", Pattern.CASE_INSENSITIVE);
 	final static Pattern WHILE_STATEMENT_PATTERN = Pattern.compile("while(.+?)loop", Pattern.CASE_INSENSITIVE);
 	
@@ -39,7 +53,32 @@ public class CommandInterpreter {
 	}
 	
 	
-	private CommandInterpreter() throws CommandInterpreterException {
+	/**
+	 * Create a session
+	 *
+	 * @param scope the scope that variables are assigned in
+	 */
+	public CommandInterpreter(VariableScope scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Create a session for running a script.  It has its own variables, but can read
+	 * the variables of the global scope.
+	 */
+	public static CommandInterpreter newSession() {
+		return new CommandInterpreter(new VariableScope(VariableScope.global()));
+	}
+
+	/**
+	 * Get the "js" script engine, which is only used for expressions that the built-in
+	 * {@link ExpressionParser} doesn't understand.  The engine isn't available on newer
+	 * JDKs, in which case this returns null.
+	 */
+	private synchronized ScriptEngine getScriptEngine() throws CommandInterpreterException {
+		if (engineInitialized) return engine;
+		engineInitialized = true;
+
 		// For some reason, this needs to be done on the EDT
 		if (SwingUtilities.isEventDispatchThread()) {
 			initializeEngine();
@@ -54,24 +93,78 @@ public class CommandInterpreter {
 				throw new CommandInterpreterException("Unable to initialize script engine: "+e.getMessage());
 			}
 		}
+		return engine;
+	}
+
+	/**
+	 * @return true if the "js" script engine is available for expressions that the
+	 *         built-in parser doesn't understand
+	 */
+	public boolean hasScriptEngine() {
+		try {
+			return getScriptEngine() != null;
+		} catch (CommandInterpreterException e) {
+			return false;
+		}
 	}
 
 	private void initializeEngine() {
 		ScriptEngineManager manager = new ScriptEngineManager();
 		engine = manager.getEngineByName("js");
-		bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+		if (engine != null) {
+			// Variables from the parent scope are visible to scripts as globals
+			scriptContext = new SimpleScriptContext();
+			scriptContext.setBindings(scope.getBindings(), ScriptContext.ENGINE_SCOPE);
+			if (scope.getParent() != null)
+				scriptContext.setBindings(scope.getParent().getBindings(), ScriptContext.GLOBAL_SCOPE);
+			engine.setContext(scriptContext);
+		}
 	}
 	
-	public static CommandInterpreter get() throws CommandInterpreterException {
-		if(_instance == null) {
-			_instance = new CommandInterpreter();
+	/**
+	 * Make this the session that commands run on the current thread belong to
+	 * 
+	 * @return the previous session, to pass to {@link #restore(CommandInterpreter)}
+	 */
+	public CommandInterpreter activate() {
+		CommandInterpreter previous = currentSession.get();
+		currentSession.set(this);
+		return previous;
+	}
+	
+	/**
+	 * Restore the session that was active before {@link #activate()}
+	 */
+	public static void restore(CommandInterpreter previous) {
+		if(previous == null) {
+			currentSession.remove();
+		} else {
+			currentSession.set(previous);
 		}
-		
-		return _instance;
-	} 
+	}
+	
+	/**
+	 * @return the session active on the current thread, or null if there isn't one
+	 */
+	public static CommandInterpreter current() {
+		return currentSession.get();
+	}
+	
+	/**
+	 * @return the variables of the session active on the current thread, or the global
+	 * scope if there isn't one
+	 */
+	public static VariableScope currentScope() {
+		CommandInterpreter session = current();
+		return session != null ? session.scope : VariableScope.global();
+	}
+	
+	public VariableScope getScope() {
+		return scope;
+	}
 	
 	public Set<Entry<String, Object>> getAllVariables() {
-		return bindings.entrySet();
+		return scope.getAll().entrySet();
 	}
 	
 	public Object getVariableValue(String variable) throws CommandInterpreterException {
@@ -81,19 +174,16 @@ public class CommandInterpreter {
 			throw new CommandInterpreterException("Undefined variable '" + variable + "'");
 		}
 		
-		return bindings.get(variable);
+		return scope.get(variable);
 	}
 	
 	public void addVariable(String variableName, Object variableValue) throws CommandInterpreterException {
 		checkVariable(variableName);		
-		bindings.put(variableName, variableValue);
+		scope.put(variableName, variableValue);
 	}
 	
 	public boolean doesVariableExist(String variableName) {
-		if(bindings.containsKey(variableName)) {
-			return true;
-		}
-		return false;
+		return scope.contains(variableName);
 	}
 	
 	private void checkVariable(String variable) throws CommandInterpreterException {
@@ -128,6 +218,14 @@ public class CommandInterpreter {
 			case END_FOR_STATEMENT:
 				return handleEndForStatement(input);
 				
+			case ARITHMETIC_STATEMENT:
+			case LOGICAL_STATEMENT:
+				return handleExpressionStatement(input);
+				
+			case PARALLEL_STATEMENT:
+			case END_PARALLEL_STATEMENT:
+				throw new CommandInterpreterException("Parallel blocks are only allowed in scripts run with 'command run'.");
+				
 			default:
 				throw new CommandInterpreterException("Invalid command.");
 		}
@@ -140,7 +238,7 @@ public class CommandInterpreter {
 			loopCommand.addLoopCommand(input);
 		}
 		
-		return new Command(CommandInterpreterUtils.preprocessSingleCommand(input));
+		return new Command(CommandInterpreterUtils.preprocessSingleCommand(this, input));
 	}
 	
 	private Command handleAssignmentStatement(String input) throws CommandInterpreterException {
@@ -151,20 +249,165 @@ public class CommandInterpreter {
 		}
 		
 		String[] pair = CommandInterpreterUtils.parseAssignmentCommand(input);
-		String c = CommandInterpreterUtils.preprocessSingleCommand(pair[1]);
+		String varName = CommandInterpreterUtils.getAssignmentVariable(pair[0]);
+		Expression expression = compileExpression(pair[1]);
+		if(expression != null) {
+			addVariable(varName, expression.evaluate(this));
+			return null;
+		}
+		
+		String c = CommandInterpreterUtils.preprocessSingleCommand(this, pair[1]);
+		if(!evaluateScriptAssignment(varName, c)) {
+			// its not a valid script, means its a cytoscape command
+			return new AssignmentCommand(c, varName);
+		}
+		return null;
+	}
+	
+	private Command handleExpressionStatement(String input) throws CommandInterpreterException {
+		if(currentState.equals(CommandInterpreterState.SKIPPING)) {
+			return null;
+		} else if(currentState.equals(CommandInterpreterState.LOOPING) && !loopCompletedOnce) {
+			loopCommand.addLoopCommand(input);
+		}
+		
+		Expression expression = compileExpression(input);
+		if(expression == null) {
+			throw new CommandInterpreterException("Invalid expression: " + input);
+		}
+		return new ExpressionCommand(input, expression.evaluate(this));
+	}
+	
+	/**
+	 * Get the (cached) template for a command, for variable substitution
+	 */
+	public CommandTemplate getTemplate(String command) {
+		CommandTemplate template = templateCache.get(command);
+		if(template == null) {
+			template = CommandTemplate.parse(command);
+			templateCache.put(command, template);
+		}
+		return template;
+	}
+	
+	/**
+	 * Parse the right hand side of an assignment.
+	 * 
+	 * @return the expression, or null if the text isn't an expression, which means
+	 *         that it is a cytoscape command whose result should be assigned instead
+	 */
+	public Expression compileExpression(String text) {
+		Expression expression = expressionCache.get(text);
+		if(expression == null) {
+			try {
+				expression = ExpressionParser.parse(text, false);
+			} catch (CommandInterpreterException ex) {
+				expression = NOT_AN_EXPRESSION;
+			}
+			expressionCache.put(text, expression);
+		}
+		return expression == NOT_AN_EXPRESSION ? null : expression;
+	}
+	
+	/**
+	 * Parse the condition of an if or while statement.  Variables may be given with
+	 * or without the variable prefix.  Conditions that the built-in parser doesn't
+	 * understand are handed to the "js" script engine, if there is one.
+	 */
+	public Expression compileCondition(String condition) throws CommandInterpreterException {
+		Expression expression = conditionCache.get(condition);
+		if(expression != null) return expression;
 		
 		try {
-			String varName = (pair[0].replaceAll("\\$", ""));
-			if(varName.equals("var")) {
-				throw new CommandInterpreterException("'var' is a reserved word and can not be used as a variable name");
+			expression = ExpressionParser.parse(condition, true);
+		} catch (CommandInterpreterException ex) {
+			ScriptEngine engine = getScriptEngine();
+			if(engine == null) throw ex;
+			expression = compileScript(engine, CommandInterpreterUtils.getConditionExpression(condition));
+		}
+		conditionCache.put(condition, expression);
+		return expression;
+	}
+	
+	private Expression compileScript(ScriptEngine engine, String script) throws CommandInterpreterException {
+		if(engine instanceof Compilable) {
+			try {
+				return new CompiledScriptExpression(((Compilable) engine).compile(script));
+			} catch (ScriptException ex) {
+				throw new CommandInterpreterException("Unable to compile '" + script + "': " + ex.getMessage());
 			}
-			String assignmentCommand = varName + "=" + c;
-			engine.eval(assignmentCommand);
+		}
+		return new ScriptEngineExpression(script);
+	}
+	
+	/**
+	 * Evaluate the condition of an if or while statement
+	 */
+	public boolean evaluateCondition(String condition) throws CommandInterpreterException {
+		return compileCondition(condition).test(this);
+	}
+	
+	/**
+	 * Assign a (variable substituted) expression that the built-in parser doesn't understand
+	 * using the "js" script engine.
+	 * 
+	 * @return false if there is no script engine or the expression isn't a valid script,
+	 *         which means that it is a cytoscape command whose result should be assigned instead
+	 */
+	public boolean evaluateScriptAssignment(String variable, String expression) throws CommandInterpreterException {
+		checkVariable(variable);
+		ScriptEngine engine = getScriptEngine();
+		if(engine == null) return false;
+		try {
+			engine.eval(variable + "=" + expression);
 		} catch (ScriptException ex) {
-			// its not a valid script, means its a cytoscape command
-			return new AssignmentCommand(c, pair[0]);
+			return false;
+		}
+		return true;
+	}
+	
+	private Object evaluateScript(String script) throws CommandInterpreterException {
+		try {
+			return getScriptEngine().eval(script);
+		} catch (ScriptException ex) {
+			throw new CommandInterpreterException("Unable to evaluate '" + script + "': " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * An expression compiled by the "js" script engine
+	 */
+	private static class CompiledScriptExpression extends Expression {
+		private final CompiledScript script;
+		
+		CompiledScriptExpression(CompiledScript script) {
+			this.script = script;
+		}
+		
+		@Override
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			try {
+				return script.eval(interpreter.scriptContext);
+			} catch (ScriptException ex) {
+				throw new CommandInterpreterException("Unable to evaluate script: " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * An expression evaluated by a "js" script engine that can't compile scripts
+	 */
+	private static class ScriptEngineExpression extends Expression {
+		private final String script;
+		
+		ScriptEngineExpression(String script) {
+			this.script = script;
+		}
+		
+		@Override
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			return interpreter.evaluateScript(script);
 		}
-		return null;
 	}
 	
 	private Command handleIfStatement(String input) throws CommandInterpreterException {
@@ -176,20 +419,19 @@ public class CommandInterpreter {
 		String condition = "";
 		try {
 			matcher.find();
-			condition = matcher.group(1);
+			condition = matcher.group(1).trim();
 		} catch (Exception ex) {
 			throw new CommandInterpreterException("Unable to parse if statement: " + input);
 		}
 		
-		condition = condition.replaceAll("\\$", "");
 		try {
-			Boolean result = (Boolean) engine.eval(condition);
+			boolean result = evaluateCondition(condition);
 			if(!result) {
 				currentState = CommandInterpreterState.SKIPPING;
 			}
 			
 			insideIfBlock = true;				
-		} catch (ScriptException ex) {
+		} catch (CommandInterpreterException ex) {
 			throw new CommandInterpreterException("Unable to evalue if condition: " + input);
 		}
 		
@@ -219,21 +461,21 @@ public class CommandInterpreter {
 		String condition = "";
 		try {
 			matcher.find();
-			condition = matcher.group(1);
+			condition = matcher.group(1).trim();
 		} catch (Exception ex) {
 			throw new CommandInterpreterException("Unable to parse for statement: " + input);
 		}
 		
-		condition = condition.replaceAll("\\$", "");
 		try {
-			Boolean result = (Boolean) engine.eval(condition);
+			Expression expression = compileCondition(condition);
+			boolean result = expression.test(this);
 			if(!result) {
 				currentState = CommandInterpreterState.SKIPPING;
 			} else {
 				currentState = CommandInterpreterState.LOOPING;
-				this.forCondition = condition;
+				this.forCondition = expression;
 			}					
-		} catch (ScriptException ex) {
+		} catch (CommandInterpreterException ex) {
 			throw new CommandInterpreterException("Unable to evalue for condition: " + input);
 		}
 		
@@ -248,7 +490,7 @@ public class CommandInterpreter {
 			return handleForEndWhenExistingLoop();
 		} else if(currentState.equals(CommandInterpreterState.LOOPING)) {
 			try {
-				Boolean result = (Boolean) engine.eval(this.forCondition);
+				boolean result = this.forCondition.test(this);
 				if(!result) {
 					return handleForEndWhenExistingLoop();
 				} else {
@@ -258,7 +500,7 @@ public class CommandInterpreter {
 					}
 					return loopCommand;
 				}			
-			} catch (ScriptException ex) {
+			} catch (CommandInterpreterException ex) {
 				throw new CommandInterpreterException("Unable to evalue for condition: " + input);
 			}
 		}
@@ -1,9 +1,11 @@
 package org.cytoscape.commandDialog.internal.interpreter;
 
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+
+import org.cytoscape.commandDialog.internal.handlers.JsonWriter;
+import org.cytoscape.model.CyIdentifiable;
 /**
  * Command script preprocessor with utility methods to perform static analysis of command script and
  * handle basic variable substitution   
@@ -22,6 +24,8 @@ public class CommandInterpreterUtils {
 	static final String ENDIF_STATEMENT_PREFIX = "END IF";
 	static final String WHILE_STATEMENT_PREFIX = "WHILE";
 	static final String ENDWHILE_STATEMENT_PREFIX = "END WHILE";
+	static final String PARALLEL_STATEMENT = "PARALLEL";
+	static final String ENDPARALLEL_STATEMENT = "END PARALLEL";
 	static final Pattern VARIABLE_EXTRACTION_PATTERN = Pattern.compile("\\$(\\w+)");
 	
 	public static CommandType getCommandType(String command) {
@@ -29,6 +33,15 @@ public class CommandInterpreterUtils {
 			return CommandType.ASSIGNMENT;
 		}
 		
+		if(command.startsWith(VARIABLE_PREFIX)) {
+			// An arithmetic or logical statement, such as "$i++" 
+			try {
+				return ExpressionParser.parse(command, false).getType();
+			} catch (CommandInterpreterException e) {
+				return CommandType.CYTOSCAPE_STATEMENT;
+			}
+		}
+		
 		command = command.toUpperCase();
 		if (command.startsWith(IF_STATEMENT_PREFIX)) {
 			return CommandType.IF_STATEMENT;
@@ -40,37 +53,101 @@ public class CommandInterpreterUtils {
 			return CommandType.FOR_STATEMENT;
 		} else if (command.startsWith(ENDWHILE_STATEMENT_PREFIX)) {
 			return CommandType.END_FOR_STATEMENT;
-		} else if (command.contains("+")) {
-			return CommandType.END_FOR_STATEMENT;
+		} else if (command.equals(PARALLEL_STATEMENT)) {
+			return CommandType.PARALLEL_STATEMENT;
+		} else if (command.equals(ENDPARALLEL_STATEMENT)) {
+			return CommandType.END_PARALLEL_STATEMENT;
 		} else {	
 			return CommandType.CYTOSCAPE_STATEMENT;
 		}
 	}
 	
-	public static String preprocessSingleCommand(String currentCommand) throws CommandInterpreterException {
-		Matcher matcher = VARIABLE_EXTRACTION_PATTERN.matcher(currentCommand);
-		String result = currentCommand;
-		
-		while(matcher.find()) {
-			String variable = matcher.group(1);
-			if(CommandInterpreter.get().doesVariableExist(variable)) {
-				Object v = (CommandInterpreter.get().getVariableValue(variable));
-				String value = "";
-				if(v instanceof String) {
-					value = "\"" + String.valueOf(v) + "\""; 
-				} else {
-					value = String.valueOf(v); 
-				}
-				result = result.replaceFirst("\\$" + variable, value);				
-			} else {
-				throw new CommandInterpreterException("Value for '" + variable + "' was not provided.");
+	/**
+	 * Substitute the values of the interpreter's variables into a command.  The command
+	 * is split into a {@link CommandTemplate} the first time it is seen, so commands that
+	 * are repeated (in a loop, for instance) are only scanned once.
+	 */
+	public static String preprocessSingleCommand(CommandInterpreter interpreter, String currentCommand) throws CommandInterpreterException {
+		return interpreter.getTemplate(currentCommand).render(interpreter);
+	}
+	
+	/**
+	 * Format a variable value for substitution into a command.  Strings, lists and maps
+	 * are quoted so that values with spaces are passed as a single argument.  There are
+	 * no escapes inside quotes, so values written as JSON are put in single quotes, with
+	 * any single quotes in them escaped as JSON.
+	 */
+	public static String formatValue(Object v) {
+		if(isStructured(v)) {
+			return "'" + toText(v).replace("'", "\\u0027") + "'";
+		}
+		if(v instanceof String || v instanceof Collection) {
+			return "\"" + toText(v) + "\""; 
+		}
+		return toText(v); 
+	}
+	
+	/**
+	 * Convert a variable value to text.  Cytoscape objects, such as networks and nodes,
+	 * are written as "SUID:&lt;suid&gt;", and the elements of lists are separated by commas,
+	 * which is how commands expect networks and lists of nodes to be given.  Maps, and
+	 * lists that contain maps or lists (results read from JSON, for instance), are
+	 * written as JSON.
+	 */
+	public static String toText(Object v) {
+		if(v instanceof CyIdentifiable) {
+			return "SUID:" + ((CyIdentifiable) v).getSUID();
+		}
+		if(isStructured(v)) {
+			return JsonWriter.write(v);
+		}
+		if(v instanceof Collection) {
+			StringBuilder text = new StringBuilder();
+			for(Object element: (Collection<?>) v) {
+				if(text.length() > 0) text.append(ARGS_SEPARATOR);
+				text.append(toText(element));
 			}
+			return text.toString();
 		}
-		
-		return result;
+		return String.valueOf(v);
+	}
+	
+	/**
+	 * @return true if v is a map, or a list with a map or list in it, which can only
+	 * be written as JSON
+	 */
+	static boolean isStructured(Object v) {
+		if(v instanceof Map) {
+			return true;
+		}
+		if(v instanceof Collection) {
+			for(Object element: (Collection<?>) v) {
+				if(element instanceof Map || element instanceof Collection) return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Strip the variable prefix from an if/while condition, since the "js" script
+	 * engine references variables by name
+	 */
+	public static String getConditionExpression(String condition) {
+		return condition.replaceAll("\\$", "");
+	}
+	
+	/**
+	 * Get the name of the variable on the left hand side of an assignment
+	 */
+	public static String getAssignmentVariable(String lhs) throws CommandInterpreterException {
+		String varName = lhs.replaceAll("\\$", "");
+		if(varName.equals("var")) {
+			throw new CommandInterpreterException("'var' is a reserved word and can not be used as a variable name");
+		}
+		return varName;
 	}
 	
-	public static void parseAndInitializeCommandScriptArguments(String args) throws CommandInterpreterException {
+	public static void parseAndInitializeCommandScriptArguments(CommandInterpreter interpreter, String args) throws CommandInterpreterException {
 		if(args != null && !args.isEmpty()) {
 			args = args.trim();
 			String[] parts = args.split(ARGS_SEPARATOR);
@@ -81,7 +158,7 @@ public class CommandInterpreterUtils {
 				if(keyValue == null || keyValue.length != 2) {
 					throw new CommandInterpreterException("Invalid arguments supplied. Argument: " + s);
 				}
-				CommandInterpreter.get().addVariable(keyValue[0].trim(), keyValue[1].trim());
+				interpreter.addVariable(keyValue[0].trim(), keyValue[1].trim());
 			}
 		}
 	}
@@ -0,0 +1,33 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import org.cytoscape.commandDialog.internal.handlers.ResolvedCommand;
+
+/**
+ * A Cytoscape command.  If the command doesn't reference any variables it is
+ * resolved against the available commands the first time it runs, and the
+ * resolved form is reused for later executions until the available commands
+ * change.
+ */
+public class CommandStatement extends Statement {
+	private final CommandTemplate template;
+	private ResolvedCommand resolvedCommand = null;
+
+	public CommandStatement(int line, String source, CommandTemplate template) {
+		super(line, source);
+		this.template = template;
+	}
+
+	public CommandTemplate getTemplate() {
+		return template;
+	}
+
+	public ResolvedCommand getResolvedCommand() {
+		return resolvedCommand;
+	}
+
+	public void setResolvedCommand(ResolvedCommand resolvedCommand) {
+		if(!template.hasVariables()) {
+			this.resolvedCommand = resolvedCommand;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A command split into literal text and variable slots.  The split is done once,
+ * when the script is compiled, so rendering only has to look up the variables.
+ */
+public class CommandTemplate {
+	private final String text;
+	private final String[] literals;
+	private final String[] variables;
+
+	// Rendering builder, reused by each thread so rendering a command in a loop only
+	// allocates the resulting string
+	private final static int MAX_REUSED_CAPACITY = 8192;
+	private final static ThreadLocal<StringBuilder> builder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private CommandTemplate(String text, String[] literals, String[] variables) {
+		this.text = text;
+		this.literals = literals;
+		this.variables = variables;
+	}
+
+	/**
+	 * Split text into literals and "$variable" references.  A variable name is the
+	 * same as matched by {@link CommandInterpreterUtils#VARIABLE_EXTRACTION_PATTERN}.
+	 */
+	public static CommandTemplate parse(String text) {
+		List<String> literals = new ArrayList<>();
+		List<String> variables = new ArrayList<>();
+		int start = 0;
+		int length = text.length();
+		for(int i = 0; i < length; i++) {
+			if(text.charAt(i) != '$') continue;
+			int end = i + 1;
+			while(end < length && isVariableChar(text.charAt(end))) end++;
+			if(end == i + 1) continue;
+
+			literals.add(text.substring(start, i));
+			variables.add(text.substring(i + 1, end));
+			start = end;
+			i = end - 1;
+		}
+		literals.add(text.substring(start));
+		return new CommandTemplate(text, literals.toArray(new String[0]), variables.toArray(new String[0]));
+	}
+
+	static boolean isVariableChar(char c) {
+		return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public boolean hasVariables() {
+		return variables.length > 0;
+	}
+
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * Render the template with the same placeholder for every variable, so that a
+	 * command can be checked before the values of its variables are known.
+	 * 
+	 * @return the command, or null if a variable is used before the first "=", where
+	 *         it is part of the command name rather than an argument value
+	 */
+	public String renderPlaceholder(String placeholder) {
+		StringBuilder result = new StringBuilder(text.length());
+		boolean inValues = false;
+		for(int i = 0; i < variables.length; i++) {
+			result.append(literals[i]);
+			inValues = inValues || literals[i].indexOf('=') >= 0;
+			if(!inValues) {
+				return null;
+			}
+			result.append(placeholder);
+		}
+		result.append(literals[variables.length]);
+		return result.toString();
+	}
+
+	/**
+	 * Substitute the current values of the variables.  Values are appended as they are,
+	 * so dollar signs and backslashes in a value have no special meaning.
+	 */
+	public String render(CommandInterpreter interpreter) throws CommandInterpreterException {
+		if(variables.length == 0) {
+			return text;
+		}
+
+		StringBuilder result = builder.get();
+		if(result.capacity() > MAX_REUSED_CAPACITY) {
+			result = new StringBuilder(256);
+			builder.set(result);
+		}
+		result.setLength(0);
+		for(int i = 0; i < variables.length; i++) {
+			result.append(literals[i]);
+			if(!interpreter.doesVariableExist(variables[i])) {
+				throw new CommandInterpreterException("Value for '" + variables[i] + "' was not provided.");
+			}
+			result.append(CommandInterpreterUtils.formatValue(interpreter.getVariableValue(variables[i])));
+		}
+		result.append(literals[variables.length]);
+		return result.toString();
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
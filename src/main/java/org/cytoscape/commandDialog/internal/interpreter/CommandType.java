@@ -9,5 +9,7 @@ public enum CommandType {
 	FOR_STATEMENT,
 	END_FOR_STATEMENT,
 	ARITHMETIC_STATEMENT,
-	LOGICAL_STATEMENT
+	LOGICAL_STATEMENT,
+	PARALLEL_STATEMENT,
+	END_PARALLEL_STATEMENT
 }
@@ -0,0 +1,368 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.Collection;
+
+import org.cytoscape.commandDialog.internal.handlers.JsonWriter;
+
+/**
+ * A parsed arithmetic, comparison, logical or string expression.  Expressions
+ * are parsed once by {@link ExpressionParser} and can then be evaluated any number
+ * of times against the variables of a {@link CommandInterpreter}.
+ * <p>
+ * Values follow the (loose) rules of the JavaScript engine that used to evaluate
+ * expressions, so existing scripts keep working: "+" concatenates if either side is
+ * a string, "==" compares numbers and numeric strings by value, and any value can
+ * be used as a condition.  Integral results are Longs, other numbers are Doubles.
+ */
+public abstract class Expression {
+	private static final double MAX_EXACT_DOUBLE = 9007199254740992d; // 2^53
+
+	public abstract Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException;
+
+	/**
+	 * @return {@link CommandType#LOGICAL_STATEMENT} if this expression produces a
+	 *         truth value, {@link CommandType#ARITHMETIC_STATEMENT} otherwise
+	 */
+	public CommandType getType() {
+		return CommandType.ARITHMETIC_STATEMENT;
+	}
+
+	/**
+	 * Add the names of the variables this expression reads to variables.  Expressions
+	 * evaluated by a script engine can't be analyzed and add nothing.
+	 */
+	public void collectVariables(Collection<String> variables) {
+	}
+
+	/**
+	 * Evaluate this expression as a condition
+	 */
+	public boolean test(CommandInterpreter interpreter) throws CommandInterpreterException {
+		return isTrue(evaluate(interpreter));
+	}
+
+	static boolean isTrue(Object value) {
+		if (value == null) return false;
+		if (value instanceof Boolean) return (Boolean) value;
+		if (value instanceof Number) {
+			double d = ((Number) value).doubleValue();
+			return d != 0 && !Double.isNaN(d);
+		}
+		if (value instanceof String) return !((String) value).isEmpty();
+		return true;
+	}
+
+	static boolean isNumeric(Object value) {
+		return value instanceof Number || value instanceof Boolean || value == null;
+	}
+
+	static double toDouble(Object value) {
+		if (value == null) return 0;
+		if (value instanceof Number) return ((Number) value).doubleValue();
+		if (value instanceof Boolean) return ((Boolean) value) ? 1 : 0;
+		String s = value.toString().trim();
+		if (s.isEmpty()) return 0;
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	static boolean isIntegral(Object value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+
+	/**
+	 * Return an integral double as a Long, so that "2 * 1.5" prints as "3"
+	 */
+	static Object number(double d) {
+		if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT_DOUBLE && !(d == 0 && 1 / d < 0))
+			return (long) d;
+		return d;
+	}
+
+	/**
+	 * String conversion used for concatenation
+	 */
+	static String toString(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			Object n = number(((Number) value).doubleValue());
+			if (n instanceof Long) return n.toString();
+		}
+		if (CommandInterpreterUtils.isStructured(value))
+			return JsonWriter.write(value);
+		return String.valueOf(value);
+	}
+
+	static boolean looseEquals(Object left, Object right) {
+		if (left == null || right == null) return left == right;
+		if (left instanceof String && right instanceof String) return left.equals(right);
+		if (isNumeric(left) || isNumeric(right)) {
+			if (isIntegral(left) && isIntegral(right))
+				return ((Number) left).longValue() == ((Number) right).longValue();
+			return toDouble(left) == toDouble(right);
+		}
+		return left.equals(right);
+	}
+
+	static boolean strictEquals(Object left, Object right) {
+		if (left instanceof Number && right instanceof Number)
+			return looseEquals(left, right);
+		if (left == null || right == null) return left == right;
+		return left.getClass().equals(right.getClass()) && left.equals(right);
+	}
+
+	static int compare(Object left, Object right) {
+		if (left instanceof String && right instanceof String)
+			return ((String) left).compareTo((String) right);
+		if (isIntegral(left) && isIntegral(right))
+			return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+		double l = toDouble(left);
+		double r = toDouble(right);
+		if (Double.isNaN(l) || Double.isNaN(r)) return Integer.MIN_VALUE; // never true
+		return Double.compare(l, r);
+	}
+
+	static Object add(Object left, Object right) {
+		if (left instanceof String || right instanceof String)
+			return toString(left) + toString(right);
+		if (isIntegral(left) && isIntegral(right)) {
+			long l = ((Number) left).longValue(), r = ((Number) right).longValue();
+			long sum = l + r;
+			if (((l ^ sum) & (r ^ sum)) >= 0) return sum;
+		}
+		return number(toDouble(left) + toDouble(right));
+	}
+
+	static Object arithmetic(char operator, Object left, Object right) {
+		if (isIntegral(left) && isIntegral(right)) {
+			long l = ((Number) left).longValue(), r = ((Number) right).longValue();
+			switch (operator) {
+				case '-':
+					long difference = l - r;
+					if (((l ^ r) & (l ^ difference)) >= 0) return difference;
+					break;
+				case '*':
+					try {
+						return Math.multiplyExact(l, r);
+					} catch (ArithmeticException overflow) {
+						break;
+					}
+				case '/':
+					if (r != 0 && l % r == 0 && !(l == Long.MIN_VALUE && r == -1)) return l / r;
+					break;
+				case '%':
+					if (r != 0) return l % r;
+					break;
+			}
+		}
+		double l = toDouble(left), r = toDouble(right);
+		switch (operator) {
+			case '-': return number(l - r);
+			case '*': return number(l * r);
+			case '/': return number(l / r);
+			default: return number(l % r);
+		}
+	}
+
+	static class Literal extends Expression {
+		final Object value;
+
+		Literal(Object value) {
+			this.value = value;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) {
+			return value;
+		}
+
+		@Override
+		public CommandType getType() {
+			return value instanceof Boolean ? CommandType.LOGICAL_STATEMENT : CommandType.ARITHMETIC_STATEMENT;
+		}
+	}
+
+	static class Variable extends Expression {
+		final String name;
+
+		Variable(String name) {
+			this.name = name;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			return interpreter.getVariableValue(name);
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			variables.add(name);
+		}
+	}
+
+	static class Negate extends Expression {
+		final Expression operand;
+
+		Negate(Expression operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			Object value = operand.evaluate(interpreter);
+			if (isIntegral(value) && ((Number) value).longValue() != Long.MIN_VALUE)
+				return -((Number) value).longValue();
+			return number(-toDouble(value));
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			operand.collectVariables(variables);
+		}
+	}
+
+	static class Plus extends Expression {
+		final Expression operand;
+
+		Plus(Expression operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			Object value = operand.evaluate(interpreter);
+			return isIntegral(value) ? value : number(toDouble(value));
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			operand.collectVariables(variables);
+		}
+	}
+
+	static class Not extends Expression {
+		final Expression operand;
+
+		Not(Expression operand) {
+			this.operand = operand;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			return !operand.test(interpreter);
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			operand.collectVariables(variables);
+		}
+
+		@Override
+		public CommandType getType() {
+			return CommandType.LOGICAL_STATEMENT;
+		}
+	}
+
+	/**
+	 * ++ and -- on a variable, either prefix or postfix
+	 */
+	static class Increment extends Expression {
+		final String name;
+		final long delta;
+		final boolean prefix;
+
+		Increment(String name, long delta, boolean prefix) {
+			this.name = name;
+			this.delta = delta;
+			this.prefix = prefix;
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			Object old = interpreter.getVariableValue(name);
+			if (!isIntegral(old)) old = number(toDouble(old));
+			Object updated = add(old, delta);
+			interpreter.addVariable(name, updated);
+			return prefix ? updated : old;
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			variables.add(name);
+		}
+	}
+
+	static class Binary extends Expression {
+		enum Operator {
+			AND("&&"), OR("||"), ADD("+"), SUBTRACT("-"), MULTIPLY("*"), DIVIDE("/"), MODULO("%"),
+			EQUAL("=="), NOT_EQUAL("!="), STRICT_EQUAL("==="), STRICT_NOT_EQUAL("!=="),
+			LESS("<"), LESS_EQUAL("<="), GREATER(">"), GREATER_EQUAL(">=");
+
+			final String symbol;
+
+			Operator(String symbol) {
+				this.symbol = symbol;
+			}
+
+			static Operator forSymbol(String symbol) {
+				for (Operator operator: values()) {
+					if (operator.symbol.equals(symbol)) return operator;
+				}
+				return null;
+			}
+		}
+
+		final Operator operator;
+		final Expression left;
+		final Expression right;
+
+		Binary(Operator operator, Expression left, Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public void collectVariables(Collection<String> variables) {
+			left.collectVariables(variables);
+			right.collectVariables(variables);
+		}
+
+		public Object evaluate(CommandInterpreter interpreter) throws CommandInterpreterException {
+			Object l = left.evaluate(interpreter);
+			if (operator == Operator.AND)
+				return isTrue(l) ? right.evaluate(interpreter) : l;
+			if (operator == Operator.OR)
+				return isTrue(l) ? l : right.evaluate(interpreter);
+
+			Object r = right.evaluate(interpreter);
+			int c;
+			switch (operator) {
+				case ADD: return add(l, r);
+				case SUBTRACT: return arithmetic('-', l, r);
+				case MULTIPLY: return arithmetic('*', l, r);
+				case DIVIDE: return arithmetic('/', l, r);
+				case MODULO: return arithmetic('%', l, r);
+				case EQUAL: return looseEquals(l, r);
+				case NOT_EQUAL: return !looseEquals(l, r);
+				case STRICT_EQUAL: return strictEquals(l, r);
+				case STRICT_NOT_EQUAL: return !strictEquals(l, r);
+				case LESS: c = compare(l, r); return c != Integer.MIN_VALUE && c < 0;
+				case LESS_EQUAL: c = compare(l, r); return c != Integer.MIN_VALUE && c <= 0;
+				case GREATER: c = compare(l, r); return c != Integer.MIN_VALUE && c > 0;
+				case GREATER_EQUAL: c = compare(l, r); return c != Integer.MIN_VALUE && c >= 0;
+				default:
+					throw new CommandInterpreterException("Unknown operator '" + operator.symbol + "'");
+			}
+		}
+
+		@Override
+		public CommandType getType() {
+			switch (operator) {
+				case ADD: case SUBTRACT: case MULTIPLY: case DIVIDE: case MODULO:
+					return CommandType.ARITHMETIC_STATEMENT;
+				case AND: case OR:
+					return left.getType() == CommandType.LOGICAL_STATEMENT && right.getType() == CommandType.LOGICAL_STATEMENT
+						? CommandType.LOGICAL_STATEMENT : CommandType.ARITHMETIC_STATEMENT;
+				default:
+					return CommandType.LOGICAL_STATEMENT;
+			}
+		}
+	}
+}
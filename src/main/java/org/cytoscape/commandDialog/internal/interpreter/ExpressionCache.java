@@ -0,0 +1,33 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of compiled expressions keyed by their text
+ */
+class ExpressionCache<V> {
+	private final Map<String, V> cache;
+
+	@SuppressWarnings("serial")
+	ExpressionCache(final int maxSize) {
+		cache = new LinkedHashMap<String, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	synchronized V get(String text) {
+		return cache.get(text);
+	}
+
+	synchronized void put(String text, V value) {
+		cache.put(text, value);
+	}
+
+	synchronized void clear() {
+		cache.clear();
+	}
+}
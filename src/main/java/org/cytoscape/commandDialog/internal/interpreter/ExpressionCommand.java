@@ -0,0 +1,17 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * The result of evaluating an arithmetic or logical statement, such as "$i + 1"
+ */
+public class ExpressionCommand extends Command {
+	private final Object value;
+
+	public ExpressionCommand(String command, Object value) {
+		super(command);
+		this.value = value;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,302 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import org.cytoscape.commandDialog.internal.interpreter.Expression.Binary.Operator;
+
+/**
+ * Recursive descent parser for script expressions.  Supports numbers, quoted strings,
+ * true/false/null, variables, parentheses and the operators (from lowest to highest
+ * precedence):
+ * <pre>
+ *   ||
+ *   &amp;&amp;
+ *   ==  !=  ===  !==
+ *   &lt;  &lt;=  &gt;  &gt;=
+ *   +  -
+ *   *  /  %
+ *   !  -  +  ++  --   (prefix)
+ *   ++  --            (postfix)
+ * </pre>
+ */
+public class ExpressionParser {
+	private enum TokenType { NUMBER, STRING, VARIABLE, NAME, OPERATOR, END }
+
+	private static final String[] OPERATORS = {
+		"===", "!==", "==", "!=", "<=", ">=", "&&", "||", "++", "--",
+		"+", "-", "*", "/", "%", "<", ">", "!", "(", ")"
+	};
+
+	private final String text;
+	private final boolean allowBareVariables;
+	private int position = 0;
+
+	private TokenType tokenType;
+	private String token;
+	private Object tokenValue;
+	private int tokenStart;
+
+	private ExpressionParser(String text, boolean allowBareVariables) {
+		this.text = text;
+		this.allowBareVariables = allowBareVariables;
+	}
+
+	/**
+	 * Parse an expression.
+	 *
+	 * @param text the expression
+	 * @param allowBareVariables if true, names without a leading "$" are variables (as in
+	 *        if and while conditions); if false they aren't valid in an expression, which is
+	 *        how the right hand side of an assignment is told apart from a Cytoscape command
+	 * @throws CommandInterpreterException if the text isn't a valid expression
+	 */
+	public static Expression parse(String text, boolean allowBareVariables) throws CommandInterpreterException {
+		ExpressionParser parser = new ExpressionParser(text, allowBareVariables);
+		parser.next();
+		Expression expression = parser.parseOr();
+		if (parser.tokenType != TokenType.END)
+			throw parser.error("unexpected '" + parser.token + "'");
+		return expression;
+	}
+
+	private Expression parseOr() throws CommandInterpreterException {
+		Expression left = parseAnd();
+		while (isOperator("||")) {
+			next();
+			left = new Expression.Binary(Operator.OR, left, parseAnd());
+		}
+		return left;
+	}
+
+	private Expression parseAnd() throws CommandInterpreterException {
+		Expression left = parseEquality();
+		while (isOperator("&&")) {
+			next();
+			left = new Expression.Binary(Operator.AND, left, parseEquality());
+		}
+		return left;
+	}
+
+	private Expression parseEquality() throws CommandInterpreterException {
+		Expression left = parseRelational();
+		while (isOperator("==") || isOperator("!=") || isOperator("===") || isOperator("!==")) {
+			Operator operator = Operator.forSymbol(token);
+			next();
+			left = new Expression.Binary(operator, left, parseRelational());
+		}
+		return left;
+	}
+
+	private Expression parseRelational() throws CommandInterpreterException {
+		Expression left = parseAdditive();
+		while (isOperator("<") || isOperator("<=") || isOperator(">") || isOperator(">=")) {
+			Operator operator = Operator.forSymbol(token);
+			next();
+			left = new Expression.Binary(operator, left, parseAdditive());
+		}
+		return left;
+	}
+
+	private Expression parseAdditive() throws CommandInterpreterException {
+		Expression left = parseMultiplicative();
+		while (isOperator("+") || isOperator("-")) {
+			Operator operator = Operator.forSymbol(token);
+			next();
+			left = new Expression.Binary(operator, left, parseMultiplicative());
+		}
+		return left;
+	}
+
+	private Expression parseMultiplicative() throws CommandInterpreterException {
+		Expression left = parseUnary();
+		while (isOperator("*") || isOperator("/") || isOperator("%")) {
+			Operator operator = Operator.forSymbol(token);
+			next();
+			left = new Expression.Binary(operator, left, parseUnary());
+		}
+		return left;
+	}
+
+	private Expression parseUnary() throws CommandInterpreterException {
+		if (isOperator("!")) {
+			next();
+			return new Expression.Not(parseUnary());
+		} else if (isOperator("-")) {
+			next();
+			return new Expression.Negate(parseUnary());
+		} else if (isOperator("+")) {
+			next();
+			return new Expression.Plus(parseUnary());
+		} else if (isOperator("++") || isOperator("--")) {
+			long delta = isOperator("++") ? 1 : -1;
+			next();
+			Expression operand = parseUnary();
+			if (!(operand instanceof Expression.Variable))
+				throw error("invalid increment operand");
+			return new Expression.Increment(((Expression.Variable) operand).name, delta, true);
+		}
+		return parsePostfix();
+	}
+
+	private Expression parsePostfix() throws CommandInterpreterException {
+		Expression primary = parsePrimary();
+		if ((isOperator("++") || isOperator("--")) && primary instanceof Expression.Variable) {
+			long delta = isOperator("++") ? 1 : -1;
+			next();
+			return new Expression.Increment(((Expression.Variable) primary).name, delta, false);
+		}
+		return primary;
+	}
+
+	private Expression parsePrimary() throws CommandInterpreterException {
+		Expression result;
+		switch (tokenType) {
+			case NUMBER:
+			case STRING:
+				result = new Expression.Literal(tokenValue);
+				break;
+			case VARIABLE:
+				result = new Expression.Variable(token);
+				break;
+			case NAME:
+				switch (token) {
+					case "true": result = new Expression.Literal(Boolean.TRUE); break;
+					case "false": result = new Expression.Literal(Boolean.FALSE); break;
+					case "null": result = new Expression.Literal(null); break;
+					case "NaN": result = new Expression.Literal(Double.NaN); break;
+					case "Infinity": result = new Expression.Literal(Double.POSITIVE_INFINITY); break;
+					default:
+						if (!allowBareVariables)
+							throw error("unexpected name '" + token + "'");
+						result = new Expression.Variable(token);
+				}
+				break;
+			case OPERATOR:
+				if (isOperator("(")) {
+					next();
+					result = parseOr();
+					if (!isOperator(")"))
+						throw error("missing ')'");
+					break;
+				}
+				throw error("unexpected '" + token + "'");
+			default:
+				throw error("unexpected end of expression");
+		}
+		next();
+		return result;
+	}
+
+	private boolean isOperator(String operator) {
+		return tokenType == TokenType.OPERATOR && token.equals(operator);
+	}
+
+	private void next() throws CommandInterpreterException {
+		int length = text.length();
+		while (position < length && Character.isWhitespace(text.charAt(position))) position++;
+		tokenStart = position;
+		tokenValue = null;
+		if (position >= length) {
+			tokenType = TokenType.END;
+			token = "";
+			return;
+		}
+
+		char c = text.charAt(position);
+		if ((c >= '0' && c <= '9') || (c == '.' && position + 1 < length && Character.isDigit(text.charAt(position + 1)))) {
+			scanNumber();
+		} else if (c == '"' || c == '\'') {
+			scanString(c);
+		} else if (c == '$' || c == '_' || Character.isLetter(c)) {
+			int start = c == '$' ? position + 1 : position;
+			int end = start;
+			while (end < length && CommandTemplate.isVariableChar(text.charAt(end))) end++;
+			if (end == start)
+				throw error("missing variable name");
+			tokenType = c == '$' ? TokenType.VARIABLE : TokenType.NAME;
+			token = text.substring(start, end);
+			position = end;
+		} else {
+			for (String operator: OPERATORS) {
+				if (text.startsWith(operator, position)) {
+					tokenType = TokenType.OPERATOR;
+					token = operator;
+					position += operator.length();
+					return;
+				}
+			}
+			throw error("unexpected character '" + c + "'");
+		}
+	}
+
+	private void scanNumber() throws CommandInterpreterException {
+		int length = text.length();
+		int end = position;
+		boolean integral = true;
+		while (end < length && Character.isDigit(text.charAt(end))) end++;
+		if (end < length && text.charAt(end) == '.') {
+			integral = false;
+			end++;
+			while (end < length && Character.isDigit(text.charAt(end))) end++;
+		}
+		if (end < length && (text.charAt(end) == 'e' || text.charAt(end) == 'E')) {
+			integral = false;
+			end++;
+			if (end < length && (text.charAt(end) == '+' || text.charAt(end) == '-')) end++;
+			while (end < length && Character.isDigit(text.charAt(end))) end++;
+		}
+		if (end < length && CommandTemplate.isVariableChar(text.charAt(end)))
+			throw error("invalid number");
+
+		token = text.substring(position, end);
+		tokenType = TokenType.NUMBER;
+		try {
+			tokenValue = integral ? Long.parseLong(token) : Expression.number(Double.parseDouble(token));
+		} catch (NumberFormatException e) {
+			tokenValue = Expression.number(Double.parseDouble(token));
+		}
+		position = end;
+	}
+
+	private void scanString(char quote) throws CommandInterpreterException {
+		StringBuilder value = new StringBuilder();
+		int length = text.length();
+		int i = position + 1;
+		while (true) {
+			if (i >= length)
+				throw error("unterminated string");
+			char c = text.charAt(i++);
+			if (c == quote) break;
+			if (c == '\\' && i < length) {
+				c = text.charAt(i++);
+				switch (c) {
+					case 'n': c = '\n'; break;
+					case 't': c = '\t'; break;
+					case 'r': c = '\r'; break;
+					case 'b': c = '\b'; break;
+					case 'f': c = '\f'; break;
+					case 'u':
+						if (i + 4 > length)
+							throw error("invalid unicode escape");
+						try {
+							c = (char) Integer.parseInt(text.substring(i, i + 4), 16);
+						} catch (NumberFormatException e) {
+							throw error("invalid unicode escape");
+						}
+						i += 4;
+						break;
+					default:
+						break;
+				}
+			}
+			value.append(c);
+		}
+		token = text.substring(position, i);
+		tokenType = TokenType.STRING;
+		tokenValue = value.toString();
+		position = i;
+	}
+
+	private CommandInterpreterException error(String message) {
+		return new CommandInterpreterException("Unable to parse expression '" + text + "': " + message +
+		                                       " at column " + (tokenStart + 1));
+	}
+}
@@ -0,0 +1,17 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * An arithmetic or logical statement, such as "$i++", whose value is displayed
+ */
+public class ExpressionStatement extends Statement {
+	private final Expression expression;
+
+	public ExpressionStatement(int line, String source, Expression expression) {
+		super(line, source);
+		this.expression = expression;
+	}
+
+	public Expression getExpression() {
+		return expression;
+	}
+}
@@ -0,0 +1,35 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * if ... then / else / end if
+ */
+public class IfStatement extends Statement {
+	private final Expression condition;
+	private final Block thenBlock = new Block();
+	private Block elseBlock = null;
+
+	public IfStatement(int line, String source, Expression condition) {
+		super(line, source);
+		this.condition = condition;
+	}
+
+	public Expression getCondition() {
+		return condition;
+	}
+
+	public Block getThenBlock() {
+		return thenBlock;
+	}
+
+	/**
+	 * @return the else block, or null if there is no else
+	 */
+	public Block getElseBlock() {
+		return elseBlock;
+	}
+
+	Block addElseBlock() {
+		elseBlock = new Block();
+		return elseBlock;
+	}
+}
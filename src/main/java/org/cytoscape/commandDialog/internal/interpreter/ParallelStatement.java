@@ -0,0 +1,17 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * parallel / end parallel.  The body may only contain commands and assignments
+ * of command results, which are run at the same time.
+ */
+public class ParallelStatement extends Statement {
+	private final Block body = new Block();
+
+	public ParallelStatement(int line, String source) {
+		super(line, source);
+	}
+
+	public Block getBody() {
+		return body;
+	}
+}
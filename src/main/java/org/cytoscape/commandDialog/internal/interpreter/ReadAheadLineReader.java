@@ -0,0 +1,122 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads lines on a background thread into a bounded queue, so that a script
+ * coming from a pipe or a compressed file keeps arriving while commands run, but
+ * never more than a fixed number of lines ahead of them.
+ * <p>
+ * Only the reading thread touches the reader, which it closes when it is done.  A
+ * blocking read on a pipe or standard input can't be interrupted, and closing the
+ * reader would wait for the read to finish, so {@link #close()} doesn't wait: it
+ * closes the underlying input, if it was given one, to release it, and leaves the
+ * daemon thread to finish whenever its read returns.
+ */
+public class ReadAheadLineReader implements Closeable {
+	// Marks the end of the input in the queue
+	private final static String END = new String("");
+	// How often a waiting readLine checks whether it should stop
+	private final static long STOP_CHECK_MILLIS = 100;
+
+	private final BufferedReader reader;
+	private final Closeable input;
+	private final BlockingQueue<String> lines;
+	private final Thread thread;
+	private volatile IOException error = null;
+	private volatile boolean closed = false;
+	private boolean ended = false;
+
+	/**
+	 * @param reader the lines to read
+	 * @param input the stream under reader, which {@link #close()} closes directly to
+	 *        end a read that is waiting for input, or null if it shouldn't be closed
+	 *        (standard input, for instance)
+	 * @param readAhead the most lines to read before they are used
+	 * @param name the name of the input, for the reading thread
+	 */
+	public ReadAheadLineReader(BufferedReader reader, Closeable input, int readAhead, String name) {
+		this.reader = reader;
+		this.input = input;
+		this.lines = new ArrayBlockingQueue<>(readAhead);
+		this.thread = new Thread(this::readLines, "Command script reader: " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void readLines() {
+		try {
+			String line;
+			while(!closed && (line = reader.readLine()) != null) {
+				lines.put(line);
+			}
+		} catch (IOException e) {
+			// Closing the input makes a waiting read fail
+			if(!closed) error = e;
+		} catch (InterruptedException e) {
+			return;
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+
+		// Nothing reads the queue once it is closed, so don't wait for room in it
+		if(closed) return;
+		try {
+			lines.put(END);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	/**
+	 * @return the next line, waiting for it if necessary, or null at the end of the input
+	 * @throws IOException if reading the input failed
+	 */
+	public String readLine() throws IOException {
+		return readLine(() -> false);
+	}
+
+	/**
+	 * @param stopped checked while waiting for a line, so that a script whose input
+	 *        has gone quiet can still be cancelled or timed out
+	 * @return the next line, waiting for it if necessary, or null at the end of the
+	 *         input or once stopped returns true
+	 * @throws IOException if reading the input failed
+	 */
+	public String readLine(BooleanSupplier stopped) throws IOException {
+		if(ended) return null;
+		String line = null;
+		try {
+			while(line == null) {
+				if(stopped.getAsBoolean()) return null;
+				line = lines.poll(STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading script");
+		}
+		if(line == END) {
+			ended = true;
+			if(error != null) throw error;
+			return null;
+		}
+		return line;
+	}
+
+	/**
+	 * Stop reading.  This doesn't wait for the reading thread, which closes the reader.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		thread.interrupt();
+		if(input != null) input.close();
+	}
+}
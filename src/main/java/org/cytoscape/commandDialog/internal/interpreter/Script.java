@@ -0,0 +1,35 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A command script compiled by {@link ScriptCompiler}
+ */
+public class Script {
+	private final String name;
+	private final Block body;
+	private final Map<String, Double> directives;
+
+	public Script(String name, Block body, Map<String, Double> directives) {
+		this.name = name;
+		this.body = body;
+		this.directives = Collections.unmodifiableMap(new LinkedHashMap<>(directives));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Block getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the values of the "#@" directives in the script, by name
+	 */
+	public Map<String, Double> getDirectives() {
+		return directives;
+	}
+}
@@ -0,0 +1,142 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cytoscape.commandDialog.internal.handlers.JsonReader;
+import org.cytoscape.commandDialog.internal.handlers.JsonWriter;
+
+/**
+ * Where a script run had got to: the statement to run next and the variables
+ * of the session at that point.  The statement is given as a path through the
+ * compiled {@link Script}: the index of a statement in its block, followed (for
+ * an if statement) by 0 for the then block or 1 for the else block, and then the
+ * index in the nested block, and so on.
+ * <p>
+ * Checkpoints are saved as a small properties file, which is replaced atomically.
+ */
+public class ScriptCheckpoint {
+	private final static String VARIABLE_PREFIX = "var.";
+
+	private final int line;
+	private final String source;
+	private final List<Integer> path;
+	private final Map<String, Object> variables;
+
+	public ScriptCheckpoint(int line, String source, List<Integer> path, Map<String, Object> variables) {
+		this.line = line;
+		this.source = source;
+		this.path = Collections.unmodifiableList(new ArrayList<>(path));
+		this.variables = Collections.unmodifiableMap(new LinkedHashMap<>(variables));
+	}
+
+	/**
+	 * The line of the statement to run next
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * The source of the statement to run next, to check that the script hasn't changed
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public List<Integer> getPath() {
+		return path;
+	}
+
+	public Map<String, Object> getVariables() {
+		return variables;
+	}
+
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("line", String.valueOf(line));
+		properties.setProperty("source", source);
+		StringBuilder pathString = new StringBuilder();
+		for (int index: path) {
+			if (pathString.length() > 0) pathString.append('.');
+			pathString.append(index);
+		}
+		properties.setProperty("path", pathString.toString());
+		for (Map.Entry<String, Object> variable: variables.entrySet()) {
+			properties.setProperty(VARIABLE_PREFIX + variable.getKey(), encode(variable.getValue()));
+		}
+
+		file.getParentFile().mkdirs();
+		File temp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = new FileOutputStream(temp)) {
+			properties.store(out, "Command script checkpoint");
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the checkpoint saved in file, or null if there isn't one
+	 * @throws IOException if the checkpoint can't be read
+	 */
+	public static ScriptCheckpoint load(File file) throws IOException {
+		if (!file.exists()) return null;
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+
+		try {
+			int line = Integer.parseInt(properties.getProperty("line"));
+			List<Integer> path = new ArrayList<>();
+			for (String index: properties.getProperty("path").split("\\.")) {
+				path.add(Integer.parseInt(index));
+			}
+			Map<String, Object> variables = new LinkedHashMap<>();
+			for (String key: properties.stringPropertyNames()) {
+				if (key.startsWith(VARIABLE_PREFIX))
+					variables.put(key.substring(VARIABLE_PREFIX.length()), decode(properties.getProperty(key)));
+			}
+			return new ScriptCheckpoint(line, properties.getProperty("source"), path, variables);
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid checkpoint " + file + ": " + e.getMessage());
+		}
+	}
+
+	// Values are saved with their type, so numbers are still numbers when they are loaded.
+	// Maps and nested lists (results read from JSON) are saved as JSON, and read back into
+	// maps and lists.  Other values (lists, Cytoscape objects and values from the "js"
+	// script engine) are saved as the text that is substituted into commands.
+	private static String encode(Object value) {
+		if (value == null) return "N:";
+		if (value instanceof Long || value instanceof Integer) return "L:" + value;
+		if (value instanceof Number) return "D:" + ((Number) value).doubleValue();
+		if (value instanceof Boolean) return "B:" + value;
+		if (CommandInterpreterUtils.isStructured(value)) return "J:" + JsonWriter.write(value);
+		return "S:" + CommandInterpreterUtils.toText(value);
+	}
+
+	private static Object decode(String value) {
+		String text = value.substring(2);
+		switch (value.charAt(0)) {
+			case 'N': return null;
+			case 'L': return Long.parseLong(text);
+			case 'D': return Double.parseDouble(text);
+			case 'B': return Boolean.parseBoolean(text);
+			case 'J': return JsonReader.read(text);
+			default: return text;
+		}
+	}
+}
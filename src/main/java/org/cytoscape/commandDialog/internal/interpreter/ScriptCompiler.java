@@ -0,0 +1,268 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a command script into a tree of {@link Statement}s.  Each line is
+ * classified and split into a {@link CommandTemplate} exactly once, and loop bodies
+ * are kept as compiled blocks, so a {@link ScriptExecutor} can run them any number
+ * of times without looking at the source again.
+ * <p>
+ * Compilation continues after an error, so that all of the syntax errors in a
+ * script are reported at once.
+ * <p>
+ * Comments that start with "#@" are directives, which set options for the whole
+ * script: "#@ timeout &lt;seconds&gt;" limits how long the script can run, and
+ * "#@ commandTimeout &lt;seconds&gt;" limits how long each of its commands can run.
+ */
+public class ScriptCompiler {
+	public final static String TIMEOUT_DIRECTIVE = "timeout";
+	public final static String COMMAND_TIMEOUT_DIRECTIVE = "commandTimeout";
+	private final static String DIRECTIVE_PREFIX = "#@";
+
+	private final CommandInterpreter interpreter;
+	private final Map<String, Double> directives = new LinkedHashMap<>();
+	private final Deque<Statement> openStatements = new ArrayDeque<>();
+	private final Deque<Block> enclosingBlocks = new ArrayDeque<>();
+	private final List<String> errors = new ArrayList<>();
+	private Block currentBlock;
+	private Block body;
+
+	public ScriptCompiler(CommandInterpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	public Script compile(String name, BufferedReader reader) throws IOException, CommandInterpreterException {
+		reset();
+
+		String line;
+		int lineNumber = 0;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			String input = line.trim();
+			if(input.startsWith(DIRECTIVE_PREFIX)) {
+				try {
+					compileDirective(lineNumber, input);
+				} catch (CommandInterpreterException e) {
+					errors.add(e.getMessage());
+				}
+				continue;
+			}
+			if(input.isEmpty() || input.startsWith("#")) continue;
+			try {
+				compileLine(lineNumber, input);
+			} catch (CommandInterpreterException e) {
+				errors.add(e.getMessage());
+			} catch (RuntimeException e) {
+				errors.add("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+
+		addUnclosedErrors();
+		if(!errors.isEmpty()) {
+			throw new CommandInterpreterException(String.join("\n", errors));
+		}
+
+		return new Script(name, body, directives);
+	}
+
+	/**
+	 * Start compiling a script one line at a time with {@link #compileStatement(int, String)}
+	 */
+	public void reset() {
+		body = new Block();
+		currentBlock = body;
+		openStatements.clear();
+		enclosingBlocks.clear();
+		errors.clear();
+		directives.clear();
+	}
+
+	/**
+	 * @return the directives read so far
+	 */
+	public Map<String, Double> getDirectives() {
+		return directives;
+	}
+
+	/**
+	 * Compile the next line of a script that is being read incrementally, so that
+	 * each statement can be run as soon as it is complete.
+	 * 
+	 * @return the statement if the line completed a top level statement (a command,
+	 *         or the end of an if, while or parallel block), otherwise null
+	 * @throws CommandInterpreterException if the line has a syntax error
+	 */
+	public Statement compileStatement(int lineNumber, String line) throws CommandInterpreterException {
+		String input = line.trim();
+		if(input.startsWith(DIRECTIVE_PREFIX)) {
+			compileDirective(lineNumber, input);
+			return null;
+		}
+		if(input.isEmpty() || input.startsWith("#")) return null;
+
+		// Top level statements aren't kept once they have been returned
+		if(openStatements.isEmpty()) {
+			body = new Block();
+			currentBlock = body;
+		}
+		errors.clear();
+		try {
+			compileLine(lineNumber, input);
+		} catch (RuntimeException e) {
+			throw new CommandInterpreterException("Line " + lineNumber + ": " + e.getMessage());
+		}
+		if(!errors.isEmpty()) {
+			throw new CommandInterpreterException(String.join("\n", errors));
+		}
+
+		if(openStatements.isEmpty() && !body.isEmpty()) {
+			return body.getStatements().get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Finish compiling a script that was compiled one line at a time
+	 * 
+	 * @throws CommandInterpreterException if a block wasn't closed
+	 */
+	public void finish() throws CommandInterpreterException {
+		errors.clear();
+		addUnclosedErrors();
+		if(!errors.isEmpty()) {
+			throw new CommandInterpreterException(String.join("\n", errors));
+		}
+	}
+
+	private void compileDirective(int lineNumber, String input) throws CommandInterpreterException {
+		String[] words = input.substring(DIRECTIVE_PREFIX.length()).trim().split("\\s+");
+		String name = words[0];
+		if(!name.equals(TIMEOUT_DIRECTIVE) && !name.equals(COMMAND_TIMEOUT_DIRECTIVE)) {
+			throw new CommandInterpreterException("Line " + lineNumber + ": unknown directive '" + name + "'");
+		}
+		try {
+			if(words.length != 2) throw new NumberFormatException();
+			double seconds = Double.parseDouble(words[1]);
+			if(seconds < 0 || Double.isNaN(seconds)) throw new NumberFormatException();
+			directives.put(name, seconds);
+		} catch (NumberFormatException e) {
+			throw new CommandInterpreterException("Line " + lineNumber + ": '" + name + "' needs a number of seconds");
+		}
+	}
+
+	private void addUnclosedErrors() {
+		for(Iterator<Statement> unclosed = openStatements.descendingIterator(); unclosed.hasNext(); ) {
+			Statement open = unclosed.next();
+			String missing = open instanceof IfStatement ? "end if" : open instanceof WhileStatement ? "end while" : "end parallel";
+			errors.add("Line " + open.getLine() + ": missing '" + missing + "' for '" + open.getSource() + "'");
+		}
+	}
+
+	private void compileLine(int lineNumber, String input) throws CommandInterpreterException {
+		CommandType type = CommandInterpreterUtils.getCommandType(input);
+		if(openStatements.peek() instanceof ParallelStatement && type != CommandType.CYTOSCAPE_STATEMENT &&
+		   type != CommandType.ASSIGNMENT && type != CommandType.END_PARALLEL_STATEMENT) {
+			throw new CommandInterpreterException("Line " + lineNumber + ": only commands can be used in a parallel block.");
+		}
+
+		switch(type) {
+			case CYTOSCAPE_STATEMENT:
+				currentBlock.addStatement(new CommandStatement(lineNumber, input, CommandTemplate.parse(input)));
+				break;
+
+			case ASSIGNMENT:
+				String[] pair = CommandInterpreterUtils.parseAssignmentCommand(input);
+				String variable = CommandInterpreterUtils.getAssignmentVariable(pair[0]);
+				Expression expression = interpreter.compileExpression(pair[1]);
+				if(expression != null && openStatements.peek() instanceof ParallelStatement) {
+					throw new CommandInterpreterException("Line " + lineNumber + ": only command results can be assigned in a parallel block.");
+				}
+				currentBlock.addStatement(new AssignmentStatement(lineNumber, input, variable, CommandTemplate.parse(pair[1]), expression));
+				break;
+
+			case ARITHMETIC_STATEMENT:
+			case LOGICAL_STATEMENT:
+				currentBlock.addStatement(new ExpressionStatement(lineNumber, input, ExpressionParser.parse(input, false)));
+				break;
+
+			case IF_STATEMENT:
+				IfStatement ifStatement = new IfStatement(lineNumber, input, parseCondition(CommandInterpreter.IF_STATEMENT_PATTERN, lineNumber, input));
+				openBlock(ifStatement, ifStatement.getThenBlock());
+				break;
+
+			case ELSE_STATEMENT:
+				if(!(openStatements.peek() instanceof IfStatement) || ((IfStatement) openStatements.peek()).getElseBlock() != null) {
+					throw new CommandInterpreterException("Line " + lineNumber + ": Else without If.");
+				}
+				currentBlock = ((IfStatement) openStatements.peek()).addElseBlock();
+				break;
+
+			case END_IF_STATEMENT:
+				closeBlock(IfStatement.class, lineNumber, "End if without If.");
+				break;
+
+			case FOR_STATEMENT:
+				WhileStatement whileStatement = new WhileStatement(lineNumber, input, parseCondition(CommandInterpreter.WHILE_STATEMENT_PATTERN, lineNumber, input));
+				openBlock(whileStatement, whileStatement.getBody());
+				break;
+
+			case END_FOR_STATEMENT:
+				closeBlock(WhileStatement.class, lineNumber, "End while without While.");
+				break;
+
+			case PARALLEL_STATEMENT:
+				ParallelStatement parallelStatement = new ParallelStatement(lineNumber, input);
+				openBlock(parallelStatement, parallelStatement.getBody());
+				break;
+
+			case END_PARALLEL_STATEMENT:
+				closeBlock(ParallelStatement.class, lineNumber, "End parallel without Parallel.");
+				break;
+
+			default:
+				throw new CommandInterpreterException("Line " + lineNumber + ": Invalid command.");
+		}
+	}
+
+	private void openBlock(Statement statement, Block block) {
+		currentBlock.addStatement(statement);
+		openStatements.push(statement);
+		enclosingBlocks.push(currentBlock);
+		currentBlock = block;
+	}
+
+	private void closeBlock(Class<? extends Statement> type, int lineNumber, String error) throws CommandInterpreterException {
+		if(!type.isInstance(openStatements.peek())) {
+			throw new CommandInterpreterException("Line " + lineNumber + ": " + error);
+		}
+		openStatements.pop();
+		currentBlock = enclosingBlocks.pop();
+	}
+
+	private Expression parseCondition(Pattern pattern, int lineNumber, String input) {
+		// Errors are recorded rather than thrown, so that the block is still opened
+		// and its end isn't reported as unmatched
+		Matcher matcher = pattern.matcher(input);
+		if(!matcher.find()) {
+			errors.add("Line " + lineNumber + ": unable to parse condition: " + input);
+			return new Expression.Literal(Boolean.FALSE);
+		}
+		try {
+			return interpreter.compileCondition(matcher.group(1).trim());
+		} catch (CommandInterpreterException e) {
+			errors.add("Line " + lineNumber + ": " + e.getMessage());
+			return new Expression.Literal(Boolean.FALSE);
+		}
+	}
+}
@@ -0,0 +1,583 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cytoscape.commandDialog.internal.handlers.BufferedMessageHandler;
+import org.cytoscape.commandDialog.internal.handlers.CommandHandler;
+import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
+import org.cytoscape.commandDialog.internal.handlers.ResolvedCommand;
+import org.cytoscape.commandDialog.internal.handlers.TimeoutScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a compiled {@link Script}.  Errors in a statement are reported to the
+ * message handler and execution continues with the next statement, the same
+ * way that commands typed into the command line are handled.
+ */
+public class ScriptExecutor {
+	private final CommandHandler commandHandler;
+	private final CommandInterpreter interpreter;
+	private final MessageHandler resultsText;
+
+	private final static Logger logger = LoggerFactory.getLogger(ScriptExecutor.class);
+
+	// Worker pool for parallel blocks, shared by all scripts
+	private final static int PARALLEL_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static ExecutorService parallelPool = null;
+	private final static ThreadLocal<Boolean> parallelWorker = new ThreadLocal<>();
+
+	// Checkpoints.  The position is the path (see ScriptCheckpoint) of the statement being run.
+	// The interval and the time the next checkpoint is due are in System.nanoTime() nanoseconds.
+	private File checkpointFile = null;
+	private long checkpointInterval = 0;
+	private long nextCheckpoint = 0;
+	private ScriptCheckpoint lastCheckpoint = null;
+	private final List<Integer> position = new ArrayList<>();
+
+	// The most commands to run in one TaskIterator; 1 runs each command on its own
+	private int batchSize = 1;
+
+	private ScriptProfiler profiler = null;
+
+	// Timeouts, in milliseconds, and why the script was stopped, if it was
+	private long commandTimeout = 0;
+	private ScheduledFuture<?> timeout = null;
+	private volatile String stopped = null;
+
+	public ScriptExecutor(CommandHandler commandHandler, CommandInterpreter interpreter, MessageHandler resultsText) {
+		this.commandHandler = commandHandler;
+		this.interpreter = interpreter;
+		this.resultsText = resultsText;
+	}
+
+	/**
+	 * Save a checkpoint to file before the first statement that starts at least seconds
+	 * after the last one was saved.  The checkpoint isn't saved again if neither the
+	 * position nor the variables have changed since then.
+	 */
+	public void setCheckpoints(File file, double seconds) {
+		this.checkpointFile = file;
+		this.checkpointInterval = (long) (seconds * 1e9);
+		this.nextCheckpoint = System.nanoTime() + checkpointInterval;
+		this.lastCheckpoint = null;
+	}
+
+	/**
+	 * Run up to size consecutive commands at a time in a single TaskIterator.  A batch
+	 * ends at the first statement that isn't a command, or that uses a variable assigned
+	 * by a command earlier in the batch.
+	 */
+	public void setBatchSize(int size) {
+		this.batchSize = Math.max(1, size);
+	}
+
+	/**
+	 * Time each statement with profiler.  Commands aren't batched while profiling, so
+	 * that each line gets its own time.
+	 */
+	public void setProfiler(ScriptProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Cancel each command that runs for longer than millis, if millis is more than 0
+	 */
+	public void setCommandTimeout(long millis) {
+		this.commandTimeout = millis;
+	}
+
+	/**
+	 * Stop the script if it is still running millis milliseconds from now
+	 */
+	public synchronized void setTimeout(final long millis) {
+		clearTimeout();
+		if(millis > 0) {
+			timeout = TimeoutScheduler.schedule(() -> stop("Timed out after " + millis / 1000.0 + " seconds"), millis);
+		}
+	}
+
+	public synchronized void clearTimeout() {
+		if(timeout != null) {
+			timeout.cancel(false);
+			timeout = null;
+		}
+	}
+
+	/**
+	 * Stop the script: the command that is running is cancelled, and no more statements are run
+	 */
+	public void cancel() {
+		stop("Cancelled");
+	}
+
+	private void stop(String reason) {
+		if(stopped != null) return;
+		stopped = reason;
+		commandHandler.cancel(interpreter);
+	}
+
+	/**
+	 * @return why the script was stopped, or null if it wasn't
+	 */
+	public String getStopReason() {
+		return stopped;
+	}
+
+	public void execute(Script script) {
+		CommandInterpreter previous = interpreter.activate();
+		try {
+			position.clear();
+			executeBlock(script.getBody(), 0);
+		} finally {
+			CommandInterpreter.restore(previous);
+		}
+	}
+
+	/**
+	 * Continue running a script from a checkpoint saved by an earlier run.  The
+	 * session's variables are restored from the checkpoint first.
+	 * 
+	 * @throws CommandInterpreterException if the checkpoint doesn't fit the script,
+	 *         which means the script was changed after the checkpoint was saved
+	 */
+	public void execute(Script script, ScriptCheckpoint checkpoint) throws CommandInterpreterException {
+		Statement next = statementAt(script.getBody(), checkpoint.getPath(), 0);
+		if(next == null || next.getLine() != checkpoint.getLine() || !next.getSource().equals(checkpoint.getSource())) {
+			throw new CommandInterpreterException("The script has changed since the checkpoint was saved");
+		}
+
+		for(Map.Entry<String, Object> variable: checkpoint.getVariables().entrySet()) {
+			interpreter.addVariable(variable.getKey(), variable.getValue());
+		}
+
+		CommandInterpreter previous = interpreter.activate();
+		try {
+			position.clear();
+			resumeBlock(script.getBody(), checkpoint.getPath(), 0);
+		} finally {
+			CommandInterpreter.restore(previous);
+		}
+	}
+
+	/**
+	 * Run a single top level statement, for scripts that are compiled as they are read
+	 */
+	public void execute(Statement statement) {
+		CommandInterpreter previous = interpreter.activate();
+		try {
+			run(statement);
+		} finally {
+			CommandInterpreter.restore(previous);
+		}
+	}
+
+	private void executeBlock(Block block, int start) {
+		List<Statement> statements = block.getStatements();
+		int depth = position.size();
+		position.add(start);
+		try {
+			for(int i = start; i < statements.size() && stopped == null; ) {
+				position.set(depth, i);
+				checkpoint(statements.get(i));
+				int end = batchEnd(statements, i);
+				if(end - i > 1) {
+					executeBatch(statements.subList(i, end));
+				} else {
+					run(statements.get(i));
+				}
+				i = end;
+			}
+		} finally {
+			position.remove(depth);
+		}
+	}
+
+	private void executeBranch(Block block, int branch) {
+		position.add(branch);
+		try {
+			executeBlock(block, 0);
+		} finally {
+			position.remove(position.size() - 1);
+		}
+	}
+
+	/**
+	 * Run block from the statement at path[offset], descending into the if or while
+	 * statements on the path, and then finishing each of them normally
+	 */
+	private void resumeBlock(Block block, List<Integer> path, int offset) {
+		int index = path.get(offset);
+		if(offset == path.size() - 1) {
+			executeBlock(block, index);
+			return;
+		}
+
+		Statement statement = block.getStatements().get(index);
+		int depth = position.size();
+		position.add(index);
+		try {
+			if(statement instanceof IfStatement) {
+				IfStatement ifStatement = (IfStatement) statement;
+				int branch = path.get(offset + 1);
+				position.add(branch);
+				resumeBlock(branch == 0 ? ifStatement.getThenBlock() : ifStatement.getElseBlock(), path, offset + 2);
+			} else if(statement instanceof WhileStatement) {
+				WhileStatement whileStatement = (WhileStatement) statement;
+				resumeBlock(whileStatement.getBody(), path, offset + 1);
+				while(stopped == null && whileStatement.getCondition().test(interpreter)) {
+					executeBlock(whileStatement.getBody(), 0);
+				}
+			}
+		} catch (RuntimeException e) {
+			reportError(statement, e);
+		} catch (CommandInterpreterException e) {
+			reportError(statement, e);
+		} finally {
+			while(position.size() > depth) {
+				position.remove(position.size() - 1);
+			}
+		}
+		executeBlock(block, index + 1);
+	}
+
+	private static Statement statementAt(Block block, List<Integer> path, int offset) {
+		if(block == null || offset >= path.size()) return null;
+		int index = path.get(offset);
+		if(index < 0 || index >= block.getStatements().size()) return null;
+		Statement statement = block.getStatements().get(index);
+		if(offset == path.size() - 1) {
+			return statement;
+		} else if(statement instanceof IfStatement && offset + 1 < path.size()) {
+			IfStatement ifStatement = (IfStatement) statement;
+			return statementAt(path.get(offset + 1) == 0 ? ifStatement.getThenBlock() : ifStatement.getElseBlock(), path, offset + 2);
+		} else if(statement instanceof WhileStatement) {
+			return statementAt(((WhileStatement) statement).getBody(), path, offset + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the index after the last statement of the batch starting at start
+	 */
+	private int batchEnd(List<Statement> statements, int start) {
+		if(batchSize <= 1 || profiler != null || Boolean.TRUE.equals(parallelWorker.get())) return start + 1;
+
+		Set<String> assigned = new HashSet<>();
+		int end = start;
+		while(end < statements.size() && end - start < batchSize) {
+			Statement statement = statements.get(end);
+			if(statement.getClass() != CommandStatement.class && !isCommandAssignment(statement)) break;
+
+			CommandTemplate template = ((CommandStatement) statement).getTemplate();
+			if(commandHandler.isHelp(template.getText())) break;
+			boolean dependent = false;
+			for(String variable: template.getVariables()) {
+				dependent = dependent || assigned.contains(variable);
+			}
+			if(dependent) break;
+
+			if(statement instanceof AssignmentStatement)
+				assigned.add(((AssignmentStatement) statement).getVariable());
+			end++;
+		}
+		return Math.max(end, start + 1);
+	}
+
+	/**
+	 * Assignments are only batched once they are known to assign the result of a command
+	 * rather than of a "js" script
+	 */
+	private boolean isCommandAssignment(Statement statement) {
+		if(!(statement instanceof AssignmentStatement)) return false;
+		AssignmentStatement assignment = (AssignmentStatement) statement;
+		return assignment.getExpression() == null
+		       && (Boolean.FALSE.equals(assignment.isScript()) || !interpreter.hasScriptEngine());
+	}
+
+	/**
+	 * Run a batch of commands in a single TaskIterator.  The output of each command is
+	 * shown once the batch has finished, and results are assigned in script order.
+	 */
+	private void executeBatch(List<Statement> statements) {
+		List<BufferedMessageHandler> outputs = new ArrayList<>();
+		List<ResolvedCommand> commands = new ArrayList<>();
+		Exception[] errors = new Exception[statements.size()];
+		int[] indices = new int[statements.size()];
+		for(int i = 0; i < statements.size(); i++) {
+			CommandStatement statement = (CommandStatement) statements.get(i);
+			indices[i] = -1;
+			try {
+				String command = statement.getTemplate().render(interpreter);
+				ResolvedCommand resolvedCommand = resolveCommand(statement, command);
+				indices[i] = commands.size();
+				commands.add(resolvedCommand);
+				outputs.add(new BufferedMessageHandler());
+			} catch (RuntimeException e) {
+				errors[i] = e;
+			} catch (CommandInterpreterException e) {
+				errors[i] = e;
+			}
+		}
+
+		List<Object> results = commandHandler.executeCommands(outputs, commands, commandTimeout);
+
+		for(int i = 0; i < statements.size(); i++) {
+			Statement statement = statements.get(i);
+			resultsText.appendCommand(statement.getSource());
+			if(errors[i] != null) {
+				reportError(statement, errors[i]);
+			} else {
+				outputs.get(indices[i]).replay(resultsText);
+				try {
+					if(statement instanceof AssignmentStatement)
+						interpreter.addVariable(((AssignmentStatement) statement).getVariable(), results.get(indices[i]));
+				} catch (CommandInterpreterException e) {
+					reportError(statement, e);
+				}
+			}
+			resultsText.appendMessage("");
+		}
+	}
+
+	private void checkpoint(Statement next) {
+		if(checkpointFile == null || checkpointInterval <= 0) return;
+		long now = System.nanoTime();
+		if(now - nextCheckpoint < 0) return;
+
+		nextCheckpoint = now + checkpointInterval;
+		Map<String, Object> variables = interpreter.getScope().getLocal();
+		if(lastCheckpoint != null && lastCheckpoint.getPath().equals(position) && lastCheckpoint.getVariables().equals(variables))
+			return;
+		try {
+			ScriptCheckpoint checkpoint = new ScriptCheckpoint(next.getLine(), next.getSource(), position, variables);
+			checkpoint.save(checkpointFile);
+			lastCheckpoint = checkpoint;
+		} catch (IOException e) {
+			logger.warn("Unable to save checkpoint to " + checkpointFile, e);
+		}
+	}
+
+	private void run(Statement statement) {
+		if(stopped != null) return;
+		if(profiler != null) profiler.enter(statement);
+		try {
+			executeStatement(statement);
+		} catch (RuntimeException e) {
+			reportError(statement, e);
+		} catch (CommandInterpreterException e) {
+			reportError(statement, e);
+		} finally {
+			if(profiler != null) profiler.exit();
+		}
+	}
+
+	private void executeStatement(Statement statement) throws CommandInterpreterException {
+		if(statement instanceof AssignmentStatement) {
+			resultsText.appendCommand(statement.getSource());
+			executeAssignment((AssignmentStatement) statement);
+			resultsText.appendMessage("");
+		} else if(statement instanceof CommandStatement) {
+			resultsText.appendCommand(statement.getSource());
+			executeCommand((CommandStatement) statement);
+			resultsText.appendMessage("");
+		} else if(statement instanceof ExpressionStatement) {
+			resultsText.appendCommand(statement.getSource());
+			resultsText.appendResult(String.valueOf(((ExpressionStatement) statement).getExpression().evaluate(interpreter)));
+			resultsText.appendMessage("");
+		} else if(statement instanceof IfStatement) {
+			IfStatement ifStatement = (IfStatement) statement;
+			if(ifStatement.getCondition().test(interpreter)) {
+				executeBranch(ifStatement.getThenBlock(), 0);
+			} else if(ifStatement.getElseBlock() != null) {
+				executeBranch(ifStatement.getElseBlock(), 1);
+			}
+		} else if(statement instanceof WhileStatement) {
+			WhileStatement whileStatement = (WhileStatement) statement;
+			while(stopped == null && whileStatement.getCondition().test(interpreter)) {
+				executeBlock(whileStatement.getBody(), 0);
+			}
+		} else if(statement instanceof ParallelStatement) {
+			executeParallel((ParallelStatement) statement);
+		}
+	}
+
+	/**
+	 * Run the commands of a parallel block on the worker pool.  Variables are substituted
+	 * before any of the commands start, the output of each command is shown in script order
+	 * once they have all finished, and results are assigned in script order.  Parallel
+	 * blocks in scripts that are themselves run from a parallel block are run sequentially,
+	 * so workers never wait for each other.
+	 */
+	private void executeParallel(ParallelStatement parallel) {
+		if(Boolean.TRUE.equals(parallelWorker.get())) {
+			for(Statement statement: parallel.getBody().getStatements()) {
+				run(statement);
+			}
+			return;
+		}
+
+		List<ParallelCommand> commands = new ArrayList<>();
+		for(Statement statement: parallel.getBody().getStatements()) {
+			ParallelCommand command = new ParallelCommand((CommandStatement) statement);
+			commands.add(command);
+			try {
+				command.start();
+			} catch (RuntimeException e) {
+				command.error = e;
+			} catch (CommandInterpreterException e) {
+				command.error = e;
+			}
+		}
+
+		for(ParallelCommand command: commands) {
+			Statement statement = command.statement;
+			resultsText.appendCommand(statement.getSource());
+			try {
+				Object result = command.join();
+				if(profiler != null) profiler.record(statement, command.nanos, command.nanos);
+				command.output.replay(resultsText);
+				if(command.error != null) {
+					reportError(statement, command.error);
+				} else if(statement instanceof AssignmentStatement) {
+					interpreter.addVariable(((AssignmentStatement) statement).getVariable(), result);
+				}
+			} catch (CommandInterpreterException e) {
+				reportError(statement, e);
+			}
+			resultsText.appendMessage("");
+		}
+	}
+
+	/**
+	 * One command of a parallel block
+	 */
+	private class ParallelCommand {
+		final CommandStatement statement;
+		final BufferedMessageHandler output = new BufferedMessageHandler();
+		Future<Object> result = null;
+		Exception error = null;
+		volatile long nanos = 0;
+
+		ParallelCommand(CommandStatement statement) {
+			this.statement = statement;
+		}
+
+		void start() throws CommandInterpreterException {
+			String command = statement.getTemplate().render(interpreter);
+			if(commandHandler.isHelp(command)) {
+				commandHandler.handleHelp(output, command);
+				return;
+			}
+
+			ResolvedCommand resolvedCommand = resolveCommand(statement, command);
+
+			final ResolvedCommand toRun = resolvedCommand;
+			result = getParallelPool().submit(() -> {
+				CommandInterpreter previous = interpreter.activate();
+				parallelWorker.set(Boolean.TRUE);
+				long start = System.nanoTime();
+				try {
+					return commandHandler.evaluateCommand(output, toRun, commandTimeout);
+				} finally {
+					nanos = System.nanoTime() - start;
+					parallelWorker.remove();
+					CommandInterpreter.restore(previous);
+				}
+			});
+		}
+
+		Object join() {
+			if(result == null) return null;
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result.cancel(true);
+				error = e;
+			} catch (ExecutionException e) {
+				error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			return null;
+		}
+	}
+
+	private static synchronized ExecutorService getParallelPool() {
+		if(parallelPool == null) {
+			final AtomicInteger count = new AtomicInteger();
+			parallelPool = Executors.newFixedThreadPool(PARALLEL_THREADS, r -> {
+				Thread thread = new Thread(r, "Command script parallel-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return parallelPool;
+	}
+
+	/**
+	 * Resolve a statement's command, reusing the statement's earlier resolution unless
+	 * the available commands have changed since
+	 */
+	private ResolvedCommand resolveCommand(CommandStatement statement, String command) {
+		ResolvedCommand resolvedCommand = statement.getResolvedCommand();
+		if(resolvedCommand == null || !commandHandler.isCurrent(resolvedCommand)) {
+			resolvedCommand = commandHandler.resolveCommand(command);
+			statement.setResolvedCommand(resolvedCommand);
+		}
+		return resolvedCommand;
+	}
+
+	private Object executeCommand(CommandStatement statement) throws CommandInterpreterException {
+		String command = statement.getTemplate().render(interpreter);
+		if(commandHandler.isHelp(command)) {
+			commandHandler.handleHelp(resultsText, command);
+			return null;
+		}
+
+		ResolvedCommand resolvedCommand = resolveCommand(statement, command);
+		if(profiler == null) {
+			return commandHandler.evaluateCommand(resultsText, resolvedCommand, commandTimeout);
+		}
+
+		long start = System.nanoTime();
+		try {
+			return commandHandler.evaluateCommand(resultsText, resolvedCommand, commandTimeout);
+		} finally {
+			profiler.addTaskTime(System.nanoTime() - start);
+		}
+	}
+
+	private void executeAssignment(AssignmentStatement statement) throws CommandInterpreterException {
+		if(statement.getExpression() != null) {
+			interpreter.addVariable(statement.getVariable(), statement.getExpression().evaluate(interpreter));
+			return;
+		}
+
+		if(!Boolean.FALSE.equals(statement.isScript())) {
+			String script = statement.getTemplate().render(interpreter);
+			boolean assigned = interpreter.evaluateScriptAssignment(statement.getVariable(), script);
+			statement.setScript(assigned);
+			if(assigned) return;
+		}
+
+		// Not an expression, so assign the result of the command
+		interpreter.addVariable(statement.getVariable(), executeCommand(statement));
+	}
+
+	private void reportError(Statement statement, Exception e) {
+		logger.error("Error handling command \"" + statement.getSource() + "\" at line " + statement.getLine(), e);
+		resultsText.appendError("  Line " + statement.getLine() + ": " + e.getMessage());
+	}
+}
@@ -0,0 +1,180 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times each line of a script run by a {@link ScriptExecutor}.  For each line it
+ * records how many times the line ran, its total time (including the statements
+ * nested in it), its maximum time, and its own time split into the time spent in
+ * Cytoscape tasks and the time spent in the interpreter.
+ * <p>
+ * Times are also recorded against the stack of statements that were running, which
+ * is written as a collapsed stack file: one line per stack, with the frames
+ * separated by semicolons, followed by the time in microseconds.  Flame graph tools
+ * read this format.
+ */
+public class ScriptProfiler {
+	private final static String TASK_FRAME = "[task]";
+
+	private final String name;
+	private final Map<Integer, LineStats> lines = new LinkedHashMap<>();
+	private final Map<String, Long> stacks = new LinkedHashMap<>();
+	private final Deque<Frame> frames = new ArrayDeque<>();
+	private final long started = System.nanoTime();
+
+	private static class LineStats {
+		final int line;
+		final String source;
+		long count = 0;
+		long total = 0;
+		long max = 0;
+		long self = 0;
+		long task = 0;
+
+		LineStats(int line, String source) {
+			this.line = line;
+			this.source = source;
+		}
+	}
+
+	private static class Frame {
+		final Statement statement;
+		final String stack;
+		final long start = System.nanoTime();
+		long children = 0;
+		long task = 0;
+
+		Frame(Statement statement, String stack) {
+			this.statement = statement;
+			this.stack = stack;
+		}
+	}
+
+	/**
+	 * @param name the name of the script, which is the root of every stack
+	 */
+	public ScriptProfiler(String name) {
+		this.name = frameName(name);
+	}
+
+	/**
+	 * Start timing a statement, nested in the statement currently being timed
+	 */
+	synchronized void enter(Statement statement) {
+		frames.push(new Frame(statement, stackOf(statement)));
+	}
+
+	/**
+	 * Stop timing the most recently entered statement
+	 */
+	synchronized void exit() {
+		Frame frame = frames.pop();
+		long total = System.nanoTime() - frame.start;
+		record(frame.statement, frame.stack, total, Math.max(0, total - frame.children), frame.task);
+	}
+
+	/**
+	 * Add time spent running Cytoscape tasks to the statement currently being timed
+	 */
+	synchronized void addTaskTime(long nanos) {
+		if (!frames.isEmpty())
+			frames.peek().task += nanos;
+	}
+
+	/**
+	 * Record a statement that was timed elsewhere (such as a command in a parallel block),
+	 * nested in the statement currently being timed
+	 */
+	synchronized void record(Statement statement, long nanos, long taskNanos) {
+		record(statement, stackOf(statement), nanos, nanos, taskNanos);
+	}
+
+	private void record(Statement statement, String stack, long total, long self, long task) {
+		task = Math.min(task, self);
+		LineStats stats = lines.get(statement.getLine());
+		if (stats == null) {
+			stats = new LineStats(statement.getLine(), statement.getSource());
+			lines.put(statement.getLine(), stats);
+		}
+		stats.count++;
+		stats.total += total;
+		stats.max = Math.max(stats.max, total);
+		stats.self += self;
+		stats.task += task;
+
+		addStack(stack, self - task);
+		if (task > 0)
+			addStack(stack + ";" + TASK_FRAME, task);
+
+		if (!frames.isEmpty())
+			frames.peek().children += total;
+	}
+
+	private String stackOf(Statement statement) {
+		String parent = frames.isEmpty() ? name : frames.peek().stack;
+		return parent + ";" + frameName(statement.getLine() + " " + statement.getSource());
+	}
+
+	private void addStack(String stack, long nanos) {
+		Long time = stacks.get(stack);
+		stacks.put(stack, (time == null ? 0 : time) + nanos);
+	}
+
+	/**
+	 * Semicolons separate frames, so they can't be used in a frame's name
+	 */
+	private static String frameName(String text) {
+		return text.trim().replace(';', ',');
+	}
+
+	/**
+	 * @return the report, with the lines that took the most time of their own first
+	 */
+	public synchronized String getReport() {
+		List<LineStats> sorted = new ArrayList<>(lines.values());
+		Collections.sort(sorted, (a, b) -> Long.compare(b.self, a.self));
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "Profile of %s: %.3f s%n", name, (System.nanoTime() - started) / 1e9));
+		report.append(String.format(Locale.ROOT, "Times are in milliseconds; Total includes nested statements, "+
+		                            "Self doesn't, and is split into Interpreter and Task time%n"));
+		report.append(String.format(Locale.ROOT, "%6s %10s %12s %12s %10s %12s %12s  %s%n",
+		                            "Line", "Count", "Total", "Self", "Max", "Interpreter", "Task", "Source"));
+		for (LineStats stats: sorted) {
+			report.append(String.format(Locale.ROOT, "%6d %10d %12.3f %12.3f %10.3f %12.3f %12.3f  %s%n",
+			                            stats.line, stats.count, stats.total / 1e6, stats.self / 1e6, stats.max / 1e6,
+			                            (stats.self - stats.task) / 1e6, stats.task / 1e6, stats.source));
+		}
+		return report.toString();
+	}
+
+	public void writeReport(File file) throws IOException {
+		String report = getReport();
+		file.getParentFile().mkdirs();
+		try (Writer out = new FileWriter(file)) {
+			out.write(report);
+		}
+	}
+
+	public synchronized void writeCollapsedStacks(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		try (Writer out = new FileWriter(file)) {
+			for (Map.Entry<String, Long> stack: stacks.entrySet()) {
+				long micros = stack.getValue() / 1000;
+				if (micros > 0)
+					out.write(stack.getKey() + " " + micros + "\n");
+			}
+		}
+	}
+}
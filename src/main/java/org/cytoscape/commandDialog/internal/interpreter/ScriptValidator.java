@@ -0,0 +1,131 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cytoscape.commandDialog.internal.handlers.CommandHandler;
+
+/**
+ * Checks a compiled {@link Script} before it is run, so that mistakes are found
+ * without waiting for the script to reach them.  Every command is resolved against
+ * the available commands, which checks the namespace, the command, the argument
+ * names and the required arguments, and every variable must be assigned (earlier in
+ * the script, or before the script is run) before it is used.
+ * <p>
+ * Variables can't be checked until they have values, so their uses are replaced by
+ * a placeholder, and commands whose name contains a variable aren't checked at all.
+ */
+public class ScriptValidator {
+	private final static String PLACEHOLDER = "0";
+
+	private final CommandHandler commandHandler;
+	private final CommandInterpreter interpreter;
+	private final Set<String> assigned = new HashSet<>();
+	private final List<String> errors = new ArrayList<>();
+
+	public ScriptValidator(CommandHandler commandHandler, CommandInterpreter interpreter) {
+		this.commandHandler = commandHandler;
+		this.interpreter = interpreter;
+	}
+
+	/**
+	 * @return the errors, each starting with "Line N: ", in the order of the script
+	 */
+	public List<String> validate(Script script) {
+		assigned.clear();
+		errors.clear();
+		validateBlock(script.getBody());
+		return new ArrayList<>(errors);
+	}
+
+	/**
+	 * Check the next top level statement of a script that is run as it is read.
+	 * Variables assigned by earlier statements are remembered.
+	 * 
+	 * @return the errors in the statement
+	 */
+	public List<String> validate(Statement statement) {
+		errors.clear();
+		validateStatement(statement);
+		return new ArrayList<>(errors);
+	}
+
+	private void validateBlock(Block block) {
+		for(Statement statement: block.getStatements()) {
+			validateStatement(statement);
+		}
+	}
+
+	private void validateStatement(Statement statement) {
+		if(statement instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) statement;
+			if(assignment.getExpression() != null) {
+				checkVariables(statement, assignment.getExpression());
+			} else {
+				validateCommand(assignment, true);
+			}
+			assigned.add(assignment.getVariable());
+		} else if(statement instanceof CommandStatement) {
+			validateCommand((CommandStatement) statement, false);
+		} else if(statement instanceof ExpressionStatement) {
+			checkVariables(statement, ((ExpressionStatement) statement).getExpression());
+		} else if(statement instanceof IfStatement) {
+			IfStatement ifStatement = (IfStatement) statement;
+			checkVariables(statement, ifStatement.getCondition());
+			validateBlock(ifStatement.getThenBlock());
+			if(ifStatement.getElseBlock() != null) {
+				validateBlock(ifStatement.getElseBlock());
+			}
+		} else if(statement instanceof WhileStatement) {
+			WhileStatement whileStatement = (WhileStatement) statement;
+			checkVariables(statement, whileStatement.getCondition());
+			validateBlock(whileStatement.getBody());
+		} else if(statement instanceof ParallelStatement) {
+			validateBlock(((ParallelStatement) statement).getBody());
+		}
+	}
+
+	private void validateCommand(CommandStatement statement, boolean assignment) {
+		CommandTemplate template = statement.getTemplate();
+		for(String variable: template.getVariables()) {
+			checkVariable(statement, variable);
+		}
+
+		String command = template.renderPlaceholder(PLACEHOLDER);
+		if(command == null || commandHandler.isHelp(command)) {
+			return;
+		}
+
+		// The right hand side of an assignment might be a "js" script
+		if(assignment && !commandHandler.startsWithNamespace(command) && interpreter.hasScriptEngine()) {
+			return;
+		}
+
+		try {
+			statement.setResolvedCommand(commandHandler.resolveCommand(command, false));
+		} catch (RuntimeException e) {
+			error(statement, e.getMessage());
+		}
+	}
+
+	private void checkVariables(Statement statement, Expression expression) {
+		Set<String> variables = new LinkedHashSet<>();
+		expression.collectVariables(variables);
+		for(String variable: variables) {
+			checkVariable(statement, variable);
+		}
+	}
+
+	private void checkVariable(Statement statement, String variable) {
+		if(!assigned.contains(variable) && !interpreter.doesVariableExist(variable)) {
+			error(statement, "variable '" + variable + "' is used before it is assigned");
+		}
+	}
+
+	private void error(Statement statement, String message) {
+		errors.add("Line " + statement.getLine() + ": " + message);
+	}
+}
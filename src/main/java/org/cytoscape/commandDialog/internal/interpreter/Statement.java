@@ -0,0 +1,29 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * A single statement of a compiled command script.  Statements remember the
+ * line they were compiled from so that errors can be reported against the source.
+ */
+public abstract class Statement {
+	private final int line;
+	private final String source;
+
+	protected Statement(int line, String source) {
+		this.line = line;
+		this.source = source;
+	}
+
+	/**
+	 * @return the (1-based) line number of this statement in the script
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the original text of this statement
+	 */
+	public String getSource() {
+		return source;
+	}
+}
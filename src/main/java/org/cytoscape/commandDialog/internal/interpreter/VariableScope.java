@@ -0,0 +1,98 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+/**
+ * The variables of a {@link CommandInterpreter} session.  Variables are looked up
+ * in this scope first and then in the parent scope, if there is one, but they are
+ * always assigned in this scope, so a session can read the variables it shares
+ * with other sessions without changing them.
+ * <p>
+ * The {@link #global()} scope is the one used by the command dialog; scripts get a
+ * child of it, so they see the variables defined at the command line.
+ */
+public class VariableScope {
+	private final static VariableScope globalScope = new VariableScope(null);
+
+	private final VariableScope parent;
+	private final Map<String, Object> variables = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
+	private final Bindings bindings = new SimpleBindings(variables);
+
+	/**
+	 * Create a scope
+	 *
+	 * @param parent the scope to look variables up in when they aren't defined
+	 *        in this one, or null for an isolated scope
+	 */
+	public VariableScope(VariableScope parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * The scope shared by all sessions
+	 */
+	public static VariableScope global() {
+		return globalScope;
+	}
+
+	public VariableScope getParent() {
+		return parent;
+	}
+
+	/**
+	 * The variables defined in this scope, for the "js" script engine
+	 */
+	Bindings getBindings() {
+		return bindings;
+	}
+
+	public boolean contains(String name) {
+		for (VariableScope scope = this; scope != null; scope = scope.parent) {
+			if (scope.bindings.containsKey(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the value of the variable in the nearest scope that defines it, or
+	 * null if no scope does
+	 */
+	public Object get(String name) {
+		for (VariableScope scope = this; scope != null; scope = scope.parent) {
+			Object value = scope.bindings.get(name);
+			if (value != null || scope.bindings.containsKey(name))
+				return value;
+		}
+		return null;
+	}
+
+	public void put(String name, Object value) {
+		bindings.put(name, value);
+	}
+
+	/**
+	 * @return a snapshot of the variables defined in this scope (not its parents)
+	 */
+	public Map<String, Object> getLocal() {
+		synchronized (variables) {
+			return new LinkedHashMap<>(variables);
+		}
+	}
+
+	/**
+	 * @return a snapshot of all of the visible variables
+	 */
+	public Map<String, Object> getAll() {
+		Map<String, Object> all = parent != null ? parent.getAll() : new LinkedHashMap<String, Object>();
+		synchronized (variables) {
+			all.putAll(variables);
+		}
+		return all;
+	}
+}
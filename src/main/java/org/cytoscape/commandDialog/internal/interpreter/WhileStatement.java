@@ -0,0 +1,22 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+/**
+ * while ... loop / end while
+ */
+public class WhileStatement extends Statement {
+	private final Expression condition;
+	private final Block body = new Block();
+
+	public WhileStatement(int line, String source, Expression condition) {
+		super(line, source);
+		this.condition = condition;
+	}
+
+	public Expression getCondition() {
+		return condition;
+	}
+
+	public Block getBody() {
+		return body;
+	}
+}
@@ -1,5 +1,7 @@
 package org.cytoscape.commandDialog.internal.tasks;
 
+import javax.swing.SwingUtilities;
+
 import org.cytoscape.commandDialog.internal.ui.CommandToolDialog;
 import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.ProvidesTitle;
@@ -20,6 +22,6 @@ public class CommandDialogTask extends AbstractEmptyObservableTask {
 	@Override
 	public void run(TaskMonitor arg0) throws Exception {
 		// Start the command dialog on the swing thread
-		dialog.setVisible(true);
+		SwingUtilities.invokeLater(() -> dialog.setVisible(true));
 	}
 }
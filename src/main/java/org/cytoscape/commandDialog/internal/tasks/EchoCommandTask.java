@@ -7,6 +7,8 @@ import java.util.Set;
 
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreter;
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreterException;
+import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreterUtils;
+import org.cytoscape.commandDialog.internal.interpreter.VariableScope;
 import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.ObservableTask;
 import org.cytoscape.work.TaskMonitor;
@@ -33,12 +35,15 @@ public class EchoCommandTask extends AbstractTask implements ObservableTask {
 		try {
 			if(variableName == null || 
 			   variableName.equals("") || variableName.equals("*")) {
-				allVariables = CommandInterpreter.get().getAllVariables();
+				allVariables = CommandInterpreter.currentScope().getAll().entrySet();
 				value = allVariables.toString();
 				resultString = "All defined variables: " + value;
 				arg0.showMessage(TaskMonitor.Level.INFO, resultString);
 			}else {
-				value = String.valueOf(CommandInterpreter.get().getVariableValue(variableName));
+				VariableScope scope = CommandInterpreter.currentScope();
+				if (!scope.contains(variableName))
+					throw new CommandInterpreterException("Undefined variable '" + variableName + "'");
+				value = CommandInterpreterUtils.toText(scope.get(variableName));
 				resultString = "The value of variable '" + variableName + "' is: '" + value + "'";
 				arg0.showMessage(TaskMonitor.Level.INFO, resultString);
 			}
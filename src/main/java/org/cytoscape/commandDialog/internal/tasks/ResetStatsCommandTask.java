@@ -0,0 +1,19 @@
+package org.cytoscape.commandDialog.internal.tasks;
+
+import org.cytoscape.commandDialog.internal.handlers.CommandMetrics;
+import org.cytoscape.work.TaskMonitor;
+
+public class ResetStatsCommandTask extends AbstractEmptyObservableTask {
+	private final CommandMetrics metrics;
+
+	public ResetStatsCommandTask(CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void run(TaskMonitor arg0) throws Exception {
+		metrics.reset();
+		arg0.showMessage(TaskMonitor.Level.INFO, "Command statistics reset");
+	}
+}
@@ -0,0 +1,23 @@
+package org.cytoscape.commandDialog.internal.tasks;
+
+import org.cytoscape.commandDialog.internal.handlers.CommandMetrics;
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+public class ResetStatsCommandTaskFactory extends AbstractTaskFactory {
+	private final CommandMetrics metrics;
+
+	public ResetStatsCommandTaskFactory(CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new ResetStatsCommandTask(metrics));
+	}
+}
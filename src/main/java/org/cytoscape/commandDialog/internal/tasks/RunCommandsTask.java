@@ -1,31 +1,62 @@
 package org.cytoscape.commandDialog.internal.tasks;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.swing.SwingUtilities;
 
 import org.cytoscape.commandDialog.internal.handlers.CommandHandler;
 import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
+import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreter;
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreterException;
 import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreterUtils;
+import org.cytoscape.commandDialog.internal.interpreter.ReadAheadLineReader;
+import org.cytoscape.commandDialog.internal.interpreter.Script;
+import org.cytoscape.commandDialog.internal.interpreter.ScriptCheckpoint;
+import org.cytoscape.commandDialog.internal.interpreter.ScriptCompiler;
+import org.cytoscape.commandDialog.internal.interpreter.ScriptExecutor;
+import org.cytoscape.commandDialog.internal.interpreter.ScriptProfiler;
+import org.cytoscape.commandDialog.internal.interpreter.ScriptValidator;
+import org.cytoscape.commandDialog.internal.interpreter.Statement;
 import org.cytoscape.commandDialog.internal.ui.CommandToolDialog;
 import org.cytoscape.commandDialog.internal.ui.ConsoleCommandHandler;
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.ProvidesTitle;
 import org.cytoscape.work.TaskMonitor;
 import org.cytoscape.work.Tunable;
+import org.cytoscape.work.util.ListSingleSelection;
 
 public class RunCommandsTask extends AbstractEmptyObservableTask {
+	// The file name for standard input
+	private final static String STDIN = "-";
+	// How many lines of a streamed script may be read before they are run
+	private final static int READ_AHEAD_LINES = 1024;
+
 	CommandToolDialog dialog;
 	CommandHandler handler;
+	CyApplicationConfiguration appConfig;
+
+	// The executor running the script, so it can be cancelled
+	private volatile ScriptExecutor executor = null;
 
 	@ProvidesTitle
 	public String getTitle() { return "Execute Command File"; }
 
 	public File file;
-	@Tunable(description="Command File", required=true, params="input=true;fileCategory=unspecified")
+	@Tunable(description="Command File", required=true, params="input=true;fileCategory=unspecified",
+	         longDescription="The script to run.  Use ``-`` to read the script from standard input.  Standard input, "+
+	                         "named pipes and gzip compressed (``.gz``) files are run as they are read")
 	public File getfile() {
 		return file;
 	}
@@ -39,10 +70,62 @@ public class RunCommandsTask extends AbstractEmptyObservableTask {
 					 exampleStringValue="arg1:value,arg2:value")
 	public String args;
 
-	public RunCommandsTask(CommandToolDialog dialog, CommandHandler handler) {
+	@Tunable(description="On validation errors",
+	         longDescription="The whole script is checked before it is run.  If any errors are found, they are "+
+	                         "reported and then the script is either not run (``abort``, the default) or run "+
+	                         "anyway (``continue``).  ``skip`` runs the script without checking it first",
+	         exampleStringValue="abort")
+	public ListSingleSelection<String> onValidationError = new ListSingleSelection<>("abort", "continue", "skip");
+
+	@Tunable(description="Checkpoint interval (seconds)",
+	         longDescription="While the script runs, the position in the script and the values of its variables "+
+	                         "are saved every this many seconds, so that the script can be resumed if it doesn't finish.  "+
+	                         "0, the default, turns checkpoints off.  Scripts read from standard input, pipes and "+
+	                         "compressed files aren't checkpointed",
+	         exampleStringValue="60")
+	public double checkpointInterval = 0;
+
+	@Tunable(description="Resume from the last checkpoint",
+	         longDescription="If true, and an earlier run of the same script saved a checkpoint but didn't finish, "+
+	                         "continue from the checkpoint instead of starting from the beginning",
+	         exampleStringValue="false")
+	public boolean resume = false;
+
+	@Tunable(description="Commands per batch",
+	         longDescription="Run up to this many consecutive commands together, as a single task, which is "+
+	                         "much faster for scripts with many small commands.  A batch ends before a statement "+
+	                         "that isn't a command or that uses the result of a command in the batch.  1, the "+
+	                         "default, runs each command on its own.  Scripts run as they are read aren't batched",
+	         exampleStringValue="1")
+	public int batchSize = 1;
+
+	@Tunable(description="Profile the script",
+	         longDescription="If true, time each line of the script, and when it finishes write a report of how "+
+	                         "often each line ran and how long it took (in the interpreter and in Cytoscape tasks), "+
+	                         "and a collapsed stack file for flame graph tools, to the ``profiles`` directory of "+
+	                         "the Cytoscape configuration directory.  Commands aren't batched while profiling",
+	         exampleStringValue="false")
+	public boolean profile = false;
+
+	@Tunable(description="Script timeout (seconds)",
+	         longDescription="Stop the script if it is still running after this many seconds.  0, the default, "+
+	                         "uses the script's ``#@ timeout`` directive if it has one, and otherwise lets the "+
+	                         "script run for as long as it needs",
+	         exampleStringValue="0")
+	public double timeout = 0;
+
+	@Tunable(description="Command timeout (seconds)",
+	         longDescription="Cancel any command in the script that is still running after this many seconds.  0, "+
+	                         "the default, uses the script's ``#@ commandTimeout`` directive if it has one, and "+
+	                         "otherwise lets each command run for as long as it needs",
+	         exampleStringValue="0")
+	public double commandTimeout = 0;
+
+	public RunCommandsTask(CommandToolDialog dialog, CommandHandler handler, CyApplicationConfiguration appConfig) {
 		super();
 		this.dialog = dialog;
 		this.handler = handler;
+		this.appConfig = appConfig;
 	}
 
 	@Override
@@ -50,6 +133,17 @@ public class RunCommandsTask extends AbstractEmptyObservableTask {
 		executeCommandScriptInternal(arg0);
 	}
 
+	/**
+	 * Stop the script, cancelling the command that is running
+	 */
+	@Override
+	public void cancel() {
+		super.cancel();
+		ScriptExecutor running = executor;
+		if (running != null)
+			running.cancel();
+	}
+
 	public void executeCommandScript(String fileName, CommandToolDialog dialog) {
 		file = new File(fileName);
 		executeCommandScriptInternal(null);
@@ -76,26 +170,224 @@ public class RunCommandsTask extends AbstractEmptyObservableTask {
 	private void executeCommandScript(CommandToolDialog dialog, ConsoleCommandHandler consoleHandler) 
 	       throws FileNotFoundException, IOException, CommandInterpreterException {
 		if (dialog != null) {
-			// We have a GUI
-			dialog.setVisible(true);
+			// We have a GUI.  Scripts run off the event thread (on the dialog's command
+			// thread, for instance), so show the dialog on it.  The message handler can be
+			// used from any thread.
+			SwingUtilities.invokeLater(() -> dialog.setVisible(true));
+		}
+
+		// Each run gets its own session, so scripts don't share (or corrupt) each other's state
+		CommandInterpreter session = CommandInterpreter.newSession();
+		CommandInterpreterUtils.parseAndInitializeCommandScriptArguments(session, args);
+
+		MessageHandler resultsText = dialog != null ? dialog.getMessageHandler() : consoleHandler;
+		String validation = onValidationError.getSelectedValue();
+		ScriptProfiler profiler = profile ? new ScriptProfiler(file.getName()) : null;
+		// Stop the script when the session that started it (such as the dialog's) is stopped
+		Runnable stop = this::cancel;
+		handler.addCancelListener(stop);
+		try {
+			if (isStream()) {
+				if (resume)
+					resultsText.appendWarning("Scripts read from standard input, pipes or compressed files can't be resumed; running it from the start");
+				executeCommandStream(session, resultsText, validation, profiler);
+			} else {
+				executeCommandFile(session, resultsText, validation, profiler);
+			}
+		} finally {
+			handler.removeCancelListener(stop);
+			if (executor != null)
+				executor.clearTimeout();
+			if (profiler != null)
+				writeProfile(profiler, resultsText);
+		}
+	}
+
+	private ScriptExecutor createExecutor(CommandInterpreter session, MessageHandler resultsText, ScriptProfiler profiler) {
+		ScriptExecutor executor = new ScriptExecutor(handler, session, resultsText);
+		executor.setProfiler(profiler);
+		this.executor = executor;
+		if (cancelled)
+			executor.cancel();
+		return executor;
+	}
+
+	/**
+	 * Set the executor's timeouts from the arguments, or if they aren't given, from the
+	 * script's directives
+	 */
+	private void setTimeouts(ScriptExecutor executor, Map<String, Double> directives) {
+		Double scriptTimeout = timeout > 0 ? timeout : directives.get(ScriptCompiler.TIMEOUT_DIRECTIVE);
+		Double eachTimeout = commandTimeout > 0 ? commandTimeout : directives.get(ScriptCompiler.COMMAND_TIMEOUT_DIRECTIVE);
+		if (scriptTimeout != null)
+			executor.setTimeout((long) (scriptTimeout * 1000));
+		if (eachTimeout != null)
+			executor.setCommandTimeout((long) (eachTimeout * 1000));
+	}
+
+	private void checkStopped(ScriptExecutor executor) throws CommandInterpreterException {
+		if (executor.getStopReason() != null)
+			throw new CommandInterpreterException(executor.getStopReason() + "; the rest of " + file.getName() + " was not run");
+	}
+
+	/**
+	 * Compile, validate and run the whole script, or continue it from its checkpoint
+	 */
+	private void executeCommandFile(CommandInterpreter session, MessageHandler resultsText, String validation,
+	                                ScriptProfiler profiler) throws IOException, CommandInterpreterException {
+		// Compile the whole script up front so that loop bodies aren't re-parsed on every iteration
+		Script script;
+		try (BufferedReader reader = openScript()){
+			script = new ScriptCompiler(session).compile(file.getName(), reader);
 		}
 
-		CommandInterpreterUtils.parseAndInitializeCommandScriptArguments(args);
+		if (!"skip".equals(validation)) {
+			List<String> errors = new ScriptValidator(handler, session).validate(script);
+			for (String error: errors)
+				resultsText.appendError(error);
+			if (!errors.isEmpty() && !"continue".equals(validation))
+				throw new CommandInterpreterException(errors.size() + " error(s) found in " + file.getName() + "; the script was not run");
+		}
 
-		try (BufferedReader reader = new BufferedReader(new FileReader(file))){
-			String sourceCommand = null;
+		ScriptExecutor executor = createExecutor(session, resultsText, profiler);
+		setTimeouts(executor, script.getDirectives());
+		File checkpointFile = getCheckpointFile();
+		ScriptCheckpoint checkpoint = resume ? ScriptCheckpoint.load(checkpointFile) : null;
+		if (checkpointInterval > 0)
+			executor.setCheckpoints(checkpointFile, checkpointInterval);
+		executor.setBatchSize(batchSize);
 
-			// Read each line of command, pre-process it for variable substitution if required. // add same check of # and empty
-			while ((sourceCommand = reader.readLine()) != null) {
-				if (sourceCommand.length() == 0 || sourceCommand.startsWith("#")) continue;
+		if (checkpoint != null) {
+			resultsText.appendMessage("Resuming " + file.getName() + " from line " + checkpoint.getLine());
+			executor.execute(script, checkpoint);
+		} else {
+			if (resume)
+				resultsText.appendWarning("No checkpoint found for " + file.getName() + "; running it from the start");
+			executor.execute(script);
+		}
+		checkStopped(executor);
+
+		// The script finished, so there's nothing to resume
+		checkpointFile.delete();
+	}
+
+	/**
+	 * Checkpoints are kept in the configuration directory, in a file named after the script
+	 */
+	private File getCheckpointFile() {
+		return getScriptFile("checkpoints", ".checkpoint");
+	}
+
+	/**
+	 * @return a file in directory (in the configuration directory) named after the script
+	 */
+	private File getScriptFile(String directory, String suffix) {
+		String path = file.getAbsolutePath();
+		return new File(new File(appConfig.getConfigurationDirectoryLocation(), directory),
+		                file.getName() + "-" + Integer.toHexString(path.hashCode()) + suffix);
+	}
+
+	private void writeProfile(ScriptProfiler profiler, MessageHandler resultsText) {
+		File report = getScriptFile("profiles", ".profile.txt");
+		File stacks = getScriptFile("profiles", ".collapsed");
+		try {
+			profiler.writeReport(report);
+			profiler.writeCollapsedStacks(stacks);
+			resultsText.appendMessage("Profile written to " + report.getPath() + " and " + stacks.getPath());
+		} catch (IOException e) {
+			resultsText.appendError("Unable to write profile: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Standard input, pipes and compressed files are run as they are read, rather than
+	 * compiled first, since they may be produced while the script runs or be very large
+	 */
+	private boolean isStream() {
+		return STDIN.equals(file.getPath()) || file.getName().endsWith(".gz") || (file.exists() && !file.isFile());
+	}
+
+	private BufferedReader openScript() throws IOException {
+		return openScript(openInput());
+	}
+
+	/**
+	 * @return the script file, or standard input (which isn't closed when the script ends)
+	 */
+	private InputStream openInput() throws IOException {
+		if (STDIN.equals(file.getPath())) {
+			return new FilterInputStream(System.in) {
+				@Override
+				public void close() {}
+			};
+		}
+		return new FileInputStream(file);
+	}
+
+	private BufferedReader openScript(InputStream input) throws IOException {
+		InputStream in = input;
+		try {
+			if (file.getName().endsWith(".gz"))
+				in = new GZIPInputStream(in, 65536);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+		return new BufferedReader(new InputStreamReader(in));
+	}
+
+	/**
+	 * Compile and run the script one statement at a time, as it is read.  Blocks run
+	 * once their end has been read.  Each statement is validated before it runs, and
+	 * errors stop the script unless the validation setting says otherwise.
+	 */
+	private void executeCommandStream(CommandInterpreter session, MessageHandler resultsText, String validation,
+	                                  ScriptProfiler profiler) throws IOException, CommandInterpreterException {
+		boolean abortOnError = !"continue".equals(validation) && !"skip".equals(validation);
+		ScriptCompiler compiler = new ScriptCompiler(session);
+		ScriptValidator validator = "skip".equals(validation) ? null : new ScriptValidator(handler, session);
+		ScriptExecutor executor = createExecutor(session, resultsText, profiler);
+		int directives = 0;
+
+		compiler.reset();
+		setTimeouts(executor, compiler.getDirectives());
+		// When the script stops early, the file is closed under the reader to release it,
+		// but standard input is left open
+		InputStream input = openInput();
+		Closeable closeable = STDIN.equals(file.getPath()) ? null : input;
+		try (ReadAheadLineReader reader = new ReadAheadLineReader(openScript(input), closeable, READ_AHEAD_LINES, file.getName())) {
+			String line;
+			int lineNumber = 0;
+			// Stop waiting for input if the script is cancelled or times out
+			while ((line = reader.readLine(() -> executor.getStopReason() != null)) != null) {
+				lineNumber++;
+				Statement statement;
+				try {
+					statement = compiler.compileStatement(lineNumber, line);
+				} catch (CommandInterpreterException e) {
+					resultsText.appendError(e.getMessage());
+					if (abortOnError)
+						throw new CommandInterpreterException("Error found in " + file.getName() + "; the rest of the script was not run");
+					continue;
+				}
+				if (compiler.getDirectives().size() != directives) {
+					directives = compiler.getDirectives().size();
+					setTimeouts(executor, compiler.getDirectives());
+				}
+				if (statement == null) continue;
 
-				if (dialog != null) {
-					dialog.executeCommand(sourceCommand);
-				} else {
-					consoleHandler.appendCommand(sourceCommand);
-					handler.handleCommand((MessageHandler) consoleHandler, sourceCommand);
+				if (validator != null) {
+					List<String> errors = validator.validate(statement);
+					for (String error: errors)
+						resultsText.appendError(error);
+					if (!errors.isEmpty() && abortOnError)
+						throw new CommandInterpreterException("Error found in " + file.getName() + "; the rest of the script was not run");
 				}
+				executor.execute(statement);
+				checkStopped(executor);
 			}
+			checkStopped(executor);
+			compiler.finish();
 		}
 	}
 }
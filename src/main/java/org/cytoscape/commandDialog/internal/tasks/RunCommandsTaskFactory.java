@@ -1,5 +1,6 @@
 package org.cytoscape.commandDialog.internal.tasks;
 
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.work.AbstractTaskFactory;
 import org.cytoscape.work.TaskIterator;
 
@@ -9,11 +10,13 @@ import org.cytoscape.commandDialog.internal.ui.CommandToolDialog;
 public class RunCommandsTaskFactory extends AbstractTaskFactory {
 	CommandToolDialog dialog;
 	CommandHandler handler;
+	CyApplicationConfiguration appConfig;
 	
-	public RunCommandsTaskFactory(CommandToolDialog dialog, CommandHandler handler) {
+	public RunCommandsTaskFactory(CommandToolDialog dialog, CommandHandler handler, CyApplicationConfiguration appConfig) {
 		super();
 		this.dialog = dialog;
 		this.handler = handler;
+		this.appConfig = appConfig;
 	}
 	
 	public boolean isReady() {
@@ -21,7 +24,7 @@ public class RunCommandsTaskFactory extends AbstractTaskFactory {
 	}
 	
 	public TaskIterator createTaskIterator() {
-		return new TaskIterator(new RunCommandsTask(dialog, handler));
+		return new TaskIterator(new RunCommandsTask(dialog, handler, appConfig));
 	}
 
 }
@@ -0,0 +1,42 @@
+package org.cytoscape.commandDialog.internal.tasks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.cytoscape.commandDialog.internal.handlers.CommandMetrics;
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ObservableTask;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.json.JSONResult;
+
+public class StatsCommandTask extends AbstractTask implements ObservableTask {
+	private final CommandMetrics metrics;
+	private String text = null;
+	private String json = null;
+
+	public StatsCommandTask(CommandMetrics metrics) {
+		super();
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void run(TaskMonitor arg0) throws Exception {
+		text = metrics.toText();
+		json = metrics.toJSON();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <R> R getResults(Class<? extends R> clzz) {
+		if (clzz.equals(JSONResult.class)) {
+			JSONResult res = () -> { return json; };
+			return (R)res;
+		}
+		return (R)text;
+	}
+
+	@Override
+	public List<Class<?>> getResultClasses() {
+		return Arrays.asList(JSONResult.class, String.class);
+	}
+}
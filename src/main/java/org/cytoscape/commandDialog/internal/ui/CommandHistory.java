@@ -0,0 +1,333 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The commands entered in the command line dialog, oldest first.
+ * <p>
+ * Each command is appended to a journal file as soon as it is entered, so a crash
+ * loses nothing.  When the journal has twice as many commands as the history keeps,
+ * it is compacted to the most recent ones, and the older commands are dropped from
+ * memory too, renumbering the rest.  The journal is read, appended to and compacted
+ * on a background thread; until it has been read, the history only has the commands
+ * entered since the dialog started.
+ * <p>
+ * Commands are indexed by word for {@link #search}: a sorted map from each word to
+ * the (ascending) numbers of the commands containing it, in which the words that
+ * start with a prefix are next to each other.
+ */
+class CommandHistory {
+	private final static Logger logger = LoggerFactory.getLogger(CommandHistory.class);
+
+	// Beyond this many words starting with a prefix, scanning is faster than merging
+	private final static int MAX_PREFIX_WORDS = 256;
+
+	private final File file;
+	private final int maxSize;
+	private final ExecutorService journal = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Command history");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final List<String> commands = new ArrayList<>();
+	private final TreeMap<String, Postings> words = new TreeMap<>();
+	// The commands in the journal file, and how many of the commands (from the start)
+	// have been written to it; the rest have appends waiting on the journal thread
+	private int journalSize = 0;
+	private int journaled = 0;
+	private boolean journalRead = false;
+
+	/**
+	 * The ascending numbers of the commands containing a word
+	 */
+	private static class Postings {
+		int[] commands = new int[2];
+		int size = 0;
+
+		void add(int command) {
+			if (size > 0 && commands[size - 1] == command) return;
+			if (size == commands.length)
+				commands = Arrays.copyOf(commands, size * 2);
+			commands[size++] = command;
+		}
+
+		/**
+		 * Drop the commands before first, and renumber the rest from 0
+		 */
+		void removeBefore(int first) {
+			int index = Arrays.binarySearch(commands, 0, size, first);
+			if (index < 0) index = -index - 1;
+			for (int i = index; i < size; i++)
+				commands[i - index] = commands[i] - first;
+			size -= index;
+		}
+
+		/**
+		 * @return the last command before the given one, or -1 if there isn't one
+		 */
+		int lastBefore(int before) {
+			int index = Arrays.binarySearch(commands, 0, size, before);
+			if (index < 0) index = -index - 1;
+			return index > 0 ? commands[index - 1] : -1;
+		}
+	}
+
+	/**
+	 * @param file the journal
+	 * @param maxSize the most commands to keep, in memory and in the journal, when
+	 *        the journal is compacted
+	 */
+	CommandHistory(File file, int maxSize) {
+		this.file = file;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Read the journal in the background.  The commands in it are put before any
+	 * that have been added since the history was created.
+	 */
+	void load() {
+		journal.execute(() -> {
+			List<String> loaded = new ArrayList<>();
+			if (file.exists()) {
+				try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+				                                                                  StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = in.readLine()) != null)
+						loaded.add(line);
+				} catch (IOException e) {
+					logger.error("Error reading command history from '"+file.getAbsolutePath()+"': "+e);
+				}
+			}
+
+			synchronized (this) {
+				// The commands already written to the journal were read back from it
+				int written = loaded.size();
+				loaded.addAll(commands.subList(journaled, commands.size()));
+				commands.clear();
+				words.clear();
+				for (String command: loaded)
+					addToIndex(command);
+				journalSize = written;
+				journaled = written;
+				journalRead = true;
+			}
+			compactIfNeeded();
+		});
+	}
+
+	/**
+	 * Add a command, and append it to the journal
+	 */
+	void add(String command) {
+		synchronized (this) {
+			addToIndex(command);
+		}
+		journal.execute(() -> {
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+				out.write(command + "\n");
+			} catch (IOException e) {
+				logger.error("Error writing command history to '"+file.getAbsolutePath()+"': "+e);
+			}
+			synchronized (this) {
+				journalSize++;
+				journaled++;
+			}
+			compactIfNeeded();
+		});
+	}
+
+	synchronized int size() {
+		return commands.size();
+	}
+
+	synchronized String get(int index) {
+		return commands.get(index);
+	}
+
+	/**
+	 * Find the most recent command before another that matches a query.  A command
+	 * matches if it contains the query, ignoring case, starting at the start of a word.
+	 *
+	 * @param before the number of the command to search back from, which isn't
+	 *        included; the size of the history to search all of it
+	 * @return the number of the command, or -1 if none matches
+	 */
+	synchronized int search(String query, int before) {
+		String[] queryWords = getWords(query.toLowerCase());
+		if (queryWords.length == 0 && query.isEmpty())
+			return -1;
+		before = Math.min(before, commands.size());
+
+		// Every word but the last must appear whole.  Follow the rarest of them.
+		boolean lastIsWhole = query.length() > 0 && !isWordChar(query.charAt(query.length() - 1));
+		Postings rarest = null;
+		for (int i = 0; i < queryWords.length; i++) {
+			if (i == queryWords.length - 1 && !lastIsWhole) break;
+			Postings postings = words.get(queryWords[i]);
+			if (postings == null)
+				return -1;
+			if (rarest == null || postings.size < rarest.size)
+				rarest = postings;
+		}
+		if (rarest != null) {
+			for (int command = rarest.lastBefore(before); command >= 0; command = rarest.lastBefore(command)) {
+				if (matchStart(commands.get(command), query) >= 0)
+					return command;
+			}
+			return -1;
+		}
+
+		// Otherwise, merge the commands with the words starting with the last word
+		List<Postings> prefixed = queryWords.length == 1 ? getPrefixed(queryWords[0]) : null;
+		if (prefixed == null) {
+			for (int command = before - 1; command >= 0; command--) {
+				if (matchStart(commands.get(command), query) >= 0)
+					return command;
+			}
+			return -1;
+		}
+		while (true) {
+			int command = -1;
+			for (Postings postings: prefixed)
+				command = Math.max(command, postings.lastBefore(before));
+			if (command < 0 || matchStart(commands.get(command), query) >= 0)
+				return command;
+			before = command;
+		}
+	}
+
+	/**
+	 * @return where query matches command (as described for {@link #search}), or -1
+	 */
+	static int matchStart(String command, String query) {
+		if (query.isEmpty()) return -1;
+		String lowerCommand = command.toLowerCase();
+		String lowerQuery = query.toLowerCase();
+		boolean wordStart = isWordChar(lowerQuery.charAt(0));
+		for (int start = lowerCommand.indexOf(lowerQuery); start >= 0; start = lowerCommand.indexOf(lowerQuery, start + 1)) {
+			if (!wordStart || start == 0 || !isWordChar(lowerCommand.charAt(start - 1)))
+				return start;
+		}
+		return -1;
+	}
+
+	/**
+	 * Wait for the journal to be written, and stop its thread
+	 */
+	void close() {
+		journal.shutdown();
+		try {
+			journal.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void compactIfNeeded() {
+		List<String> kept;
+		synchronized (this) {
+			// Until the journal has been read, it has commands that aren't in memory
+			if (!journalRead || journalSize <= 2 * maxSize) return;
+			// Commands that are still waiting to be appended are left to their appends
+			int first = Math.max(0, journaled - maxSize);
+			kept = new ArrayList<>(commands.subList(first, journaled));
+			journalSize = kept.size();
+			removeBefore(first);
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+				for (String command: kept)
+					out.write(command + "\n");
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.error("Error compacting command history '"+file.getAbsolutePath()+"': "+e);
+		}
+	}
+
+	/**
+	 * Drop the commands before first from memory and from the index
+	 */
+	private void removeBefore(int first) {
+		if (first == 0) return;
+		commands.subList(0, first).clear();
+		journaled -= first;
+		for (Iterator<Postings> i = words.values().iterator(); i.hasNext(); ) {
+			Postings postings = i.next();
+			postings.removeBefore(first);
+			if (postings.size == 0)
+				i.remove();
+		}
+	}
+
+	private void addToIndex(String command) {
+		int number = commands.size();
+		commands.add(command);
+		for (String word: getWords(command.toLowerCase())) {
+			Postings postings = words.get(word);
+			if (postings == null) {
+				postings = new Postings();
+				words.put(word, postings);
+			}
+			postings.add(number);
+		}
+	}
+
+	/**
+	 * @return the postings of the words starting with prefix, or null if there are too many
+	 */
+	private List<Postings> getPrefixed(String prefix) {
+		List<Postings> prefixed = new ArrayList<>();
+		for (Map.Entry<String, Postings> entry: words.tailMap(prefix, true).entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) break;
+			if (prefixed.size() == MAX_PREFIX_WORDS) return null;
+			prefixed.add(entry.getValue());
+		}
+		return prefixed;
+	}
+
+	private static String[] getWords(String text) {
+		List<String> found = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean word = i < text.length() && isWordChar(text.charAt(i));
+			if (word && start < 0) {
+				start = i;
+			} else if (!word && start >= 0) {
+				found.add(text.substring(start, i));
+				start = -1;
+			}
+		}
+		return found.toArray(new String[found.size()]);
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
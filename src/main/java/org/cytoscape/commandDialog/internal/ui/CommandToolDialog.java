@@ -40,12 +40,16 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -53,12 +57,14 @@ import javax.swing.GroupLayout;
 import javax.swing.GroupLayout.Alignment;
 import javax.swing.Icon;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.border.LineBorder;
 
 import org.apache.log4j.Logger;
@@ -72,6 +78,8 @@ import org.cytoscape.application.events.CyShutdownListener;
 
 import org.cytoscape.commandDialog.internal.handlers.CommandHandler;
 import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
+import org.cytoscape.commandDialog.internal.interpreter.CommandInterpreter;
+import org.cytoscape.commandDialog.internal.interpreter.VariableScope;
 import org.cytoscape.util.swing.LookAndFeelUtil;
 
 @SuppressWarnings("serial")
@@ -79,31 +87,57 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 
 	private static final String NEXT = "next";
 	private static final String PREVIOUS = "previous";
+	private static final String STOP = "stop";
+	private static final String SEARCH = "search";
 
-	private List<String> commandList;
-	private int commandIndex = 0;
+	private final CommandHistory history;
+	// How far back in the history the command field is, 0 for a new command
+	private int historyOffset = 0;
+	private HistorySearch historySearch;
 
 	// Dialog components
-	private JResultsPane resultsText;
+	private ResultsLog resultsText;
 	private JTextField inputField;
 	private CommandHandler commandHandler;
-	private File savedCommandsFile;
-
-	public int MAX_SAVED_COMMANDS = 500;
+	private final CommandInterpreter session = new CommandInterpreter(VariableScope.global());
+	private JLabel statusLabel;
+
+	// Commands entered in the dialog are queued and run one at a time on this thread,
+	// so the event thread (and the rest of Cytoscape) isn't held up while they run
+	private final ThreadPoolExecutor commandExecutor =
+		new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread thread = new Thread(r, "Command line dialog");
+			thread.setDaemon(true);
+			return thread;
+		});
+	private final AtomicInteger queuedCommands = new AtomicInteger();
+	private volatile String runningCommand = null;
+
+	// Scrollback settings, read from cytoscape3.props
+	public final static String SCROLLBACK_LINES = "commandDialog.scrollbackLines";
+	public final static String SCROLLBACK_CHARACTERS = "commandDialog.scrollbackCharacters";
+	public final static String SPILL_SCROLLBACK = "commandDialog.spillScrollback";
+	// Show the log in a ResultsView rather than a JResultsPane
+	public final static String VIRTUAL_LOG = "commandDialog.virtualLog";
+	private final static int DEFAULT_SCROLLBACK_LINES = 10000;
+	public final static String LARGE_RESULT_SIZE = "commandDialog.largeResultSize";
+	// The commands kept in commandHistory.txt when it is compacted
+	public final static String HISTORY_SIZE = "commandDialog.historySize";
+	private final static int DEFAULT_HISTORY_SIZE = 10000;
 	final Logger logger;
 
 	public CommandToolDialog (final CommandHandler commandHandler, 
-	                          final CyApplicationConfiguration appConfig) {
-		commandList = new ArrayList<>();
+	                          final CyApplicationConfiguration appConfig,
+	                          final Properties properties) {
 		logger = Logger.getLogger(CyUserLog.NAME);
 		this.commandHandler = commandHandler;
 		File appConfigDir = appConfig.getConfigurationDirectoryLocation();
-		savedCommandsFile = new File(appConfigDir.getAbsolutePath()+File.separator+"commandHistory.txt");
-		if (savedCommandsFile.exists()) {
-			readCommands(savedCommandsFile);
-		}
+		history = new CommandHistory(new File(appConfigDir, "commandHistory.txt"),
+		                             Math.max(1, getIntProperty(properties, HISTORY_SIZE, DEFAULT_HISTORY_SIZE)));
+		history.load();
 
-		initComponents();
+		initComponents(properties != null && Boolean.parseBoolean(properties.getProperty(VIRTUAL_LOG)));
+		setLogLimits(properties, appConfigDir);
 		// setBorder(new LineBorder(Color.RED, 1));
 		setPreferredSize(new Dimension(800, 80));
 	}
@@ -133,23 +167,38 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 		getInputField().requestFocusInWindow();
 	}
 
-	private void readCommands(File commandsFile) {
+	/**
+	 * Limit the log to the scrollback set in the properties.  Messages that are
+	 * removed from the log are saved in commandLog.txt if spillScrollback is true,
+	 * and results over largeResultSize are only shown in part.
+	 */
+	private void setLogLimits(Properties properties, File appConfigDir) {
+		int lines = getIntProperty(properties, SCROLLBACK_LINES, DEFAULT_SCROLLBACK_LINES);
+		int characters = getIntProperty(properties, SCROLLBACK_CHARACTERS, 0);
+		resultsText.setScrollback(lines, characters);
+		if (properties != null && Boolean.parseBoolean(properties.getProperty(SPILL_SCROLLBACK)))
+			resultsText.setSpillFile(new File(appConfigDir, "commandLog.txt"));
+		resultsText.setLargeResultSize(getIntProperty(properties, LARGE_RESULT_SIZE, LargeResult.DEFAULT_SIZE));
+	}
+
+	private int getIntProperty(Properties properties, String name, int defaultValue) {
+		String value = properties != null ? properties.getProperty(name) : null;
+		if (value == null || value.trim().isEmpty())
+			return defaultValue;
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(commandsFile));
-			String line;
-			while ((line = br.readLine()) != null) {
-				commandList.add(line);
-			}
-			commandIndex = commandList.size();
-		} catch (Exception e) {
-			logger.error("Error reading command history from '"+commandsFile.getAbsolutePath()+"': "+e);
+			return Math.max(0, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for "+name+": '"+value+"'");
+			return defaultValue;
 		}
 	}
 
 	/**
 	 * Initialize all of the graphical components of the dialog
+	 *
+	 * @param virtualLog show the log in a {@link ResultsView} rather than a {@link JResultsPane}
 	 */
-	private void initComponents() {
+	private void initComponents(boolean virtualLog) {
 		// setTitle("Command Line Dialog");
 		// setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
@@ -160,13 +209,25 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 		final JLabel inputLabel = new JLabel("Command:");
 		inputLabel.setFont(inputLabel.getFont().deriveFont(LookAndFeelUtil.getSmallFontSize()));
 
-		resultsText = new JResultsPane(null, this);
-		resultsText.setEditable(false);
+		final JComponent resultsComponent;
+		if (virtualLog) {
+			ResultsView resultsView = new ResultsView();
+			resultsText = resultsView;
+			resultsComponent = resultsView;
+		} else {
+			JResultsPane resultsPane = new JResultsPane(null, this);
+			resultsPane.setEditable(false);
+			resultsText = resultsPane;
+			resultsComponent = resultsPane;
+		}
 
-		final JScrollPane scrollPane = new JScrollPane(resultsText);
+		final JScrollPane scrollPane = new JScrollPane(resultsComponent);
 		// scrollPane.getVerticalScrollBar().addAdjustmentListener(resultsText);
 		resultsText.setScrollPane(scrollPane); // So we can update the scroll position
 
+		// Ctrl-R in the input field searches the history, showing the search in place of the label
+		historySearch = new HistorySearch(history, getInputField(), inputLabel);
+
 		/*
 		// Create the button box
 		final JButton doneButton = new JButton(new AbstractAction("Close") {
@@ -183,6 +244,18 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 		clearButton.addActionListener(this);
 		clearButton.putClientProperty("JButton.buttonType", "gradient");
 
+		// Stops running commands and scripts and drops queued commands; Escape in the input field does the same
+		final JButton stopButton = new JButton("Stop");
+		stopButton.setToolTipText("Stop the running commands and scripts, and drop the queued commands (Escape)");
+		stopButton.setActionCommand(STOP);
+		stopButton.addActionListener(this);
+		stopButton.putClientProperty("JButton.buttonType", "gradient");
+		stopButton.setFont(stopButton.getFont().deriveFont(LookAndFeelUtil.getSmallFontSize()));
+
+		// Shows the running command and how many are waiting
+		statusLabel = new JLabel();
+		statusLabel.setFont(statusLabel.getFont().deriveFont(LookAndFeelUtil.getSmallFontSize()));
+
 		// final JPanel buttonBox = LookAndFeelUtil.createOkCancelPanel(null, doneButton);
 		// buttonBox.add(clearButton);
 		// buttonBox.add(doneButton);
@@ -201,7 +274,11 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 						)
 						.addGroup(layout.createParallelGroup(Alignment.LEADING, true)
 								.addComponent(scrollPane, DEFAULT_SIZE, 880, Short.MAX_VALUE)
-								.addComponent(getInputField(), DEFAULT_SIZE, DEFAULT_SIZE, Short.MAX_VALUE)
+								.addGroup(layout.createSequentialGroup()
+										.addComponent(getInputField(), DEFAULT_SIZE, DEFAULT_SIZE, Short.MAX_VALUE)
+										.addComponent(statusLabel, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
+										.addComponent(stopButton, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
+								)
 						)
 				)
 			//	.addComponent(buttonBox, DEFAULT_SIZE, DEFAULT_SIZE, Short.MAX_VALUE)
@@ -218,6 +295,8 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 				.addGroup(layout.createParallelGroup(Alignment.CENTER, false)
 						.addComponent(inputLabel, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
 						.addComponent(getInputField(), PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
+						.addComponent(statusLabel, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
+						.addComponent(stopButton, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
 				)
 			//	.addComponent(buttonBox, PREFERRED_SIZE, DEFAULT_SIZE, PREFERRED_SIZE)
 		);
@@ -228,62 +307,153 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 	}
 
 	/**
- 	 * External interface for users to inject commands
+ 	 * External interface for users to inject commands.  The command is queued to run
+ 	 * after any commands that were entered before it.
  	 */
 	public void executeCommand(String command) {
-		resultsText.appendCommand(command);
-		commandHandler.handleCommand((MessageHandler) resultsText, command);
+		queueCommand(command);
 	}
 
 	/**
-	 * External interface to run a single command and get the result.
+	 * External interface to run a single command and get the result.  The command
+	 * runs on the calling thread, once any command that is running has finished.
 	 */
 	public String executeCommandAndReturnResult(String command) {
-		return commandHandler.handleCommand((MessageHandler) resultsText, command);
+		synchronized (session) {
+			return commandHandler.handleCommand(session, (MessageHandler) resultsText, command);
+		}
 	}
 
 	/**
-	 * Set the list of commands.
+	 * Queue a command to run on the dialog's command thread.  The command is shown
+	 * in the log when it starts.
 	 */
-	public void setCommandList(List<String> commands) {
-		if (commands != null && commands.size() > 0)
-			commandList.addAll(commands);
-	};
+	private void queueCommand(final String command) {
+		queuedCommands.incrementAndGet();
+		updateStatus();
+		QueuedCommand queued = new QueuedCommand(command);
+		queued.setFuture(commandHandler.submit(session, resultsText, command, queued));
+	}
 
 	/**
-	 * Write out the last 500 commands
+	 * A command waiting on the dialog's command thread.  The command handler passes
+	 * the task that handles the command to {@link #execute}, which queues it.
 	 */
-	public void handleEvent(CyShutdownEvent shutdown) {
-		if (savedCommandsFile.exists()) {
-			savedCommandsFile.delete();
+	private class QueuedCommand implements Executor, Runnable {
+		final String command;
+		Runnable task;
+		private CompletableFuture<?> future = null;
+		private boolean dropped = false;
+
+		QueuedCommand(String command) {
+			this.command = command;
 		}
-		int start = 0;
-		if (commandList.size() > MAX_SAVED_COMMANDS)
-			start = commandList.size() - MAX_SAVED_COMMANDS;
 
-		try {
-			FileWriter writer = new FileWriter(savedCommandsFile);
-			for (int i = start; i < commandList.size(); i++) {
-				writer.write(commandList.get(i)+"\n");
+		@Override
+		public void execute(Runnable task) {
+			this.task = task;
+			commandExecutor.execute(this);
+		}
+
+		@Override
+		public void run() {
+			queuedCommands.decrementAndGet();
+			runningCommand = command;
+			updateStatus();
+			resultsText.appendCommand(command);
+			try {
+				task.run();
+			} finally {
+				runningCommand = null;
+				updateStatus();
 			}
-			writer.close();
-		} catch (Exception ioe){
-			logger.error("Error writing command history to '"+savedCommandsFile.getAbsolutePath()+"': "+ioe);
-			System.err.println("Error writing command history to '"+savedCommandsFile.getAbsolutePath()+"': "+ioe);
 		}
+
+		synchronized void setFuture(CompletableFuture<?> future) {
+			this.future = future;
+			if (dropped)
+				future.cancel(false);
+		}
+
+		/**
+		 * Cancel the future of a command that was taken off the queue, so that
+		 * anything waiting for it doesn't wait forever
+		 */
+		synchronized void drop() {
+			dropped = true;
+			if (future != null)
+				future.cancel(false);
+		}
+	}
+
+	/**
+	 * Drop the queued commands and stop the running ones, including scripts started
+	 * from the dialog
+	 */
+	private void stopCommands() {
+		List<Runnable> dropped = new ArrayList<>();
+		commandExecutor.getQueue().drainTo(dropped);
+		for (Runnable command: dropped)
+			((QueuedCommand) command).drop();
+		if (!dropped.isEmpty()) {
+			queuedCommands.addAndGet(-dropped.size());
+			resultsText.appendWarning("Cancelled "+dropped.size()+" queued command"+(dropped.size() > 1 ? "s" : ""));
+		}
+		commandHandler.cancel(session);
+		updateStatus();
+	}
+
+	private void updateStatus() {
+		SwingUtilities.invokeLater(() -> {
+			String running = runningCommand;
+			int queued = queuedCommands.get();
+			if (running == null && queued == 0) {
+				statusLabel.setText("");
+				statusLabel.setToolTipText(null);
+				return;
+			}
+			String text = running != null ? "Running" : "";
+			if (queued > 0)
+				text += (text.isEmpty() ? "" : ", ")+queued+" queued";
+			statusLabel.setText(" "+text+" ");
+			statusLabel.setToolTipText(running);
+		});
+	}
+
+	/**
+	 * The message handler that displays results in the dialog
+	 */
+	public MessageHandler getMessageHandler() {
+		return resultsText;
+	}
+
+	/**
+	 * Add commands to the history.
+	 */
+	public void setCommandList(List<String> commands) {
+		if (commands != null)
+			commands.forEach(history::add);
+	};
+
+	/**
+	 * Finish writing the command history.  Each command is saved as it is entered.
+	 */
+	public void handleEvent(CyShutdownEvent shutdown) {
+		history.close();
 	}
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		if ("clear".equals(e.getActionCommand())) {
 			resultsText.clear();
+		} else if (STOP.equals(e.getActionCommand())) {
+			stopCommands();
 		} else {
 			String input = getInputField().getText();
-			resultsText.appendCommand(input);
-			commandList.add(input);
-			commandIndex = commandList.size();
+			history.add(input);
+			historyOffset = 0;
 
-			commandHandler.handleCommand((MessageHandler) resultsText, input);
+			queueCommand(input);
 
 			getInputField().setText("");
 		}
@@ -302,6 +472,21 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 			final Action nextAction = new LineAction(NEXT);
 			inputField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), NEXT);
 			inputField.getActionMap().put(NEXT, nextAction);
+
+			inputField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), STOP);
+			inputField.getActionMap().put(STOP, new AbstractAction() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					stopCommands();
+				}
+			});
+			inputField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_R, KeyEvent.CTRL_DOWN_MASK), SEARCH);
+			inputField.getActionMap().put(SEARCH, new AbstractAction() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					historySearch.search();
+				}
+			});
 			inputField.addActionListener(this);
 		}
 
@@ -319,27 +504,30 @@ public class CommandToolDialog extends JPanel implements CytoPanelComponent2,Act
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			if (commandList.size() == 0)
+			// Commands loaded from the journal go before the ones entered since,
+			// so count back from the newest command
+			int size = history.size();
+			if (size == 0)
 				return;
 
 			if (action.equals(NEXT)) {
-				commandIndex++;
+				historyOffset--;
 			} else if (action.equals(PREVIOUS)) {
-				commandIndex--;
+				historyOffset++;
 			} else {
 				return;
 			}
 
 			final String inputCommand;
 
-			if (commandIndex >= commandList.size()) {
+			if (historyOffset <= 0) {
 				inputCommand = "";
-				commandIndex = commandList.size();
-			} else if (commandIndex < 0) {
+				historyOffset = 0;
+			} else if (historyOffset > size) {
 				inputCommand = "";
-				commandIndex = -1;
+				historyOffset = size + 1;
 			} else {
-				inputCommand = commandList.get(commandIndex);
+				inputCommand = history.get(size - historyOffset);
 			}
 
 			getInputField().setText(inputCommand);
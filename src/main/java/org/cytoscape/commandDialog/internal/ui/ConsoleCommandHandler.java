@@ -35,6 +35,8 @@ package org.cytoscape.commandDialog.internal.ui;
 import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
 
 public class ConsoleCommandHandler implements MessageHandler {
+	private final static int CHUNK_SIZE = 65536;
+
 	public ConsoleCommandHandler() {
 	}
 
@@ -49,12 +51,22 @@ public class ConsoleCommandHandler implements MessageHandler {
 	public void appendResult(String s) {
 		// Be a little careful.  We want to space newlines to they all
 		// appear in column order
-		String[] splitString = s.split("\n");
-		if (splitString.length > 1) {
-			for (String splitS: splitString)
-				System.out.println("-->  "+splitS+"\n");
-		} else 
+		if (s.indexOf('\n') < 0) {
 			System.out.println("--> "+s+"\n");
+			return;
+		}
+
+		// Print large results in chunks as the lines are found, rather than
+		// splitting the whole result or printing each line separately
+		StringBuilder chunk = new StringBuilder();
+		LargeResult.forEachLine(s, line -> {
+			chunk.append("-->  ").append(line).append("\n\n");
+			if (chunk.length() >= CHUNK_SIZE) {
+				System.out.print(chunk);
+				chunk.setLength(0);
+			}
+		});
+		System.out.print(chunk);
 	}
 
 	public void appendWarning(String s) {
@@ -0,0 +1,128 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+
+/**
+ * Incremental reverse search of the command history in the command field, as in
+ * bash: after Ctrl-R, the characters typed are added to the search, and the field
+ * shows the most recent command that matches it.  Ctrl-R again finds an older match,
+ * Backspace shortens the search, Enter runs the match, Escape puts back what was in
+ * the field, and any other key leaves the match in the field to be edited.
+ */
+class HistorySearch extends KeyAdapter {
+	private final CommandHistory history;
+	private final JTextField field;
+	private final JLabel label;
+	private final String labelText;
+
+	private boolean searching = false;
+	private final StringBuilder query = new StringBuilder();
+	private String originalText;
+	// How far back from the newest command the one shown is, or 0 if there isn't one.
+	// Counting from the newest keeps the match when old commands are dropped or loaded.
+	private int matchOffset;
+
+	HistorySearch(CommandHistory history, JTextField field, JLabel label) {
+		this.history = history;
+		this.field = field;
+		this.label = label;
+		this.labelText = label.getText();
+		field.addKeyListener(this);
+		field.addFocusListener(new FocusAdapter() {
+			@Override
+			public void focusLost(FocusEvent e) {
+				if (searching) stop();
+			}
+		});
+	}
+
+	/**
+	 * Start searching, or find an older match if already searching
+	 */
+	void search() {
+		if (!searching) {
+			searching = true;
+			query.setLength(0);
+			originalText = field.getText();
+			matchOffset = 0;
+			showQuery(true);
+		} else {
+			find(history.size() - matchOffset);
+		}
+	}
+
+	@Override
+	public void keyTyped(KeyEvent e) {
+		if (!searching) return;
+		char c = e.getKeyChar();
+		if (c == KeyEvent.CHAR_UNDEFINED || Character.isISOControl(c) || e.isControlDown() || e.isAltDown())
+			return;
+		e.consume();
+		query.append(c);
+		// The current match may still match the longer search
+		find(Math.min(history.size() - matchOffset + 1, history.size()));
+	}
+
+	@Override
+	public void keyPressed(KeyEvent e) {
+		if (!searching) return;
+		switch (e.getKeyCode()) {
+		case KeyEvent.VK_R:
+			if (e.isControlDown()) {
+				e.consume();
+				search();
+			}
+			break;
+		case KeyEvent.VK_BACK_SPACE:
+			e.consume();
+			if (query.length() > 0) {
+				query.setLength(query.length() - 1);
+				find(history.size());
+			}
+			break;
+		case KeyEvent.VK_ESCAPE:
+			e.consume();
+			stop();
+			field.setText(originalText);
+			break;
+		case KeyEvent.VK_ENTER:
+			stop();
+			break;
+		default:
+			// Leave the match in the field to be edited, and let the key act on it
+			if (e.isActionKey() || e.getKeyCode() == KeyEvent.VK_TAB ||
+			    (e.isControlDown() && e.getKeyCode() != KeyEvent.VK_CONTROL)) {
+				stop();
+				field.setCaretPosition(field.getText().length());
+			}
+		}
+	}
+
+	private void find(int before) {
+		String text = query.toString();
+		int found = history.search(text, before);
+		if (found >= 0) {
+			matchOffset = history.size() - found;
+			String command = history.get(found);
+			field.setText(command);
+			int start = CommandHistory.matchStart(command, text);
+			field.select(start, start + text.length());
+		}
+		showQuery(found >= 0 || text.isEmpty());
+	}
+
+	private void showQuery(boolean found) {
+		label.setText((found ? "" : "failing ") + "search '" + query + "':");
+	}
+
+	private void stop() {
+		searching = false;
+		label.setText(labelText);
+	}
+}
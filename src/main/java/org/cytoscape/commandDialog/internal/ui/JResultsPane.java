@@ -32,8 +32,16 @@
  */
 package org.cytoscape.commandDialog.internal.ui;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JDialog;
 import javax.swing.JPanel;
@@ -41,17 +49,18 @@ import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.HyperlinkEvent;
+import javax.swing.text.AttributeSet;
 import javax.swing.text.DefaultCaret;
 import javax.swing.text.Element;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.HTML;
 import javax.swing.text.html.HTMLEditorKit.ParserCallback;
 
-import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class JResultsPane extends JTextPane implements MessageHandler {
+public class JResultsPane extends JTextPane implements ResultsLog {
 	private static final long serialVersionUID = 5891537236297794535L;
 	private final static Logger logger = LoggerFactory.getLogger(JResultsPane.class);
 	
@@ -60,7 +69,7 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 	private String resultAttributes;
 	private String errorAttributes;
 	private String warningAttributes;
-	private HTMLDocument currentDocument;
+	private ResultsDocument currentDocument;
 	private Element rootElement;
 	private final JDialog parentDialog;
 	private final JPanel dataPanel;
@@ -74,6 +83,47 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 	private static String ITALICS = "font-style:italic";
 	private static String DEFAULT_STYLE = "margin-top:0px;margin-bottom:0px";
 
+	// Messages are queued and added to the document in batches, at most once per
+	// FLUSH_INTERVAL milliseconds, so chatty scripts don't flood the event thread
+	private final static int FLUSH_INTERVAL = 30;
+	// The most messages added by one flush, so a long burst of output is added in
+	// chunks, with other events handled in between
+	final static int MAX_FLUSH_MESSAGES = 2000;
+	private final Queue<Message> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+	private final Timer flushTimer;
+	private long lastFlush = 0;
+
+	// Messages without markup are added to the document without being parsed, with
+	// these attributes for each style
+	private final Map<String, AttributeSet> divAttributes = new HashMap<>();
+
+	private static class Message {
+		final String style;
+		final String text;
+
+		Message(String style, String text) {
+			this.style = style;
+			this.text = text;
+		}
+	}
+
+	// Scrollback limits (0 for none).  When a limit is passed, the oldest messages are
+	// removed until the log is at SCROLLBACK_KEEP of the limit, so they are removed in
+	// batches.  Removed messages are appended to the spill file, if there is one.
+	final static double SCROLLBACK_KEEP = 0.9;
+	private int scrollbackLines = 0;
+	private int scrollbackCharacters = 0;
+	private RollingLogFile spillFile = null;
+
+	// Results longer than largeResultSize (0 for no limit) are shown as a preview,
+	// with links to show or save the whole result
+	private final static String EXPAND_LINK = "expand-result:";
+	private final static String SAVE_LINK = "save-result:";
+	private int largeResultSize = LargeResult.DEFAULT_SIZE;
+	private final Map<Integer, LargeResult> largeResults = new ConcurrentHashMap<>();
+	private final AtomicInteger largeResultIds = new AtomicInteger();
+
 	public JResultsPane(JDialog parentDialog, JPanel dataPanel) {
 		super();
 
@@ -82,8 +132,8 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 
 		DefaultCaret caret = (DefaultCaret)getCaret();
 		caret.setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
-		setContentType("text/html");
-		currentDocument = (HTMLDocument) getDocument();
+		setEditorKit(new ResultsDocument.EditorKit());
+		currentDocument = (ResultsDocument) getDocument();
 		rootElement = currentDocument.getDefaultRootElement();
 
 		commandAttributes = BLUE+";"+BOLD+";"+ITALICS;
@@ -91,6 +141,14 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 		errorAttributes = RED;
 		warningAttributes = ORANGE;
 		resultAttributes = GREEN+";"+BOLD+";"+ITALICS;
+
+		flushTimer = new Timer(FLUSH_INTERVAL, e -> flush(false));
+		flushTimer.setRepeats(false);
+
+		addHyperlinkListener(e -> {
+			if (e.getEventType() == HyperlinkEvent.EventType.ACTIVATED && e.getDescription() != null)
+				openLargeResult(e.getDescription());
+		});
 	}
 
 	public void appendCommand(String s) {
@@ -102,14 +160,47 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 	}
 
 	public void appendResult(String s) {
+		if (largeResultSize > 0 && s.length() > largeResultSize && appendLargeResult(s))
+			return;
+
 		// Be a little careful.  We want to space newlines to they all
 		// appear in column order
-		String[] splitString = s.split("\n");
-		if (splitString.length > 1) {
-			for (String splitS: splitString)
-				updateString(resultAttributes, "\u2192  "+splitS+"\n");
-		} else 
-			updateString(resultAttributes, "\u2192  "+s+"\n");
+		LargeResult.forEachLine(s, line -> updateString(resultAttributes, "\u2192  "+line+"\n"));
+	}
+
+	/**
+	 * Save a large result to a file, and show its first lines
+	 *
+	 * @return false if the result couldn't be saved
+	 */
+	private boolean appendLargeResult(String s) {
+		LargeResult result;
+		try {
+			result = LargeResult.create(s);
+		} catch (IOException e) {
+			logger.warn("Unable to save large command result", e);
+			return false;
+		}
+		int id = largeResultIds.incrementAndGet();
+		largeResults.put(id, result);
+
+		for (String line: result.getPreview())
+			updateString(resultAttributes, "\u2192  "+line+"\n");
+		updateString(messageAttributes, result.getSummary()+
+		             "&nbsp;&nbsp;<a href='"+EXPAND_LINK+id+"'>Expand</a>"+
+		             "&nbsp;&nbsp;<a href='"+SAVE_LINK+id+"'>Save to file</a>");
+		return true;
+	}
+
+	private void openLargeResult(String link) {
+		boolean expand = link.startsWith(EXPAND_LINK);
+		if (!expand && !link.startsWith(SAVE_LINK)) return;
+		LargeResult result = largeResults.get(Integer.valueOf(link.substring(link.indexOf(':') + 1)));
+		if (result == null) return;
+		if (expand)
+			result.show(this);
+		else
+			result.save(this);
 	}
 
 	public void appendWarning(String s) {
@@ -124,44 +215,190 @@ public class JResultsPane extends JTextPane implements MessageHandler {
 		this.scrollPane = scrollPane;
 	}
 
+	public void setScrollback(int lines, int characters) {
+		this.scrollbackLines = lines;
+		this.scrollbackCharacters = characters;
+	}
+
+	public void setSpillFile(File file) {
+		this.spillFile = file != null ? new RollingLogFile(file) : null;
+	}
+
+	public void setLargeResultSize(int characters) {
+		this.largeResultSize = characters;
+	}
+
 	/**
 	 * Recreate new Document, set it to the current JResultsPane and reset the rootElement
 	 * to be used while inserting HTML Element
 	 */
 	public void clear() {
-		currentDocument = (HTMLDocument) new HTMLEditorKit().createDefaultDocument();
+		pending.clear();
+		for (LargeResult result: largeResults.values())
+			result.delete();
+		largeResults.clear();
+		currentDocument = (ResultsDocument) getEditorKit().createDefaultDocument();
 		setStyledDocument(currentDocument);
 		rootElement = currentDocument.getDefaultRootElement();
 	}
 
 	private void updateString(final String style, final String s) {
-		if (!SwingUtilities.isEventDispatchThread()) {
-			SwingUtilities.invokeLater(new Runnable() {
-				public void run() {
-					updateStringImmediate(style, s);
-				}
-			});
-		} else {
-			updateStringImmediate(style, s);
+		pending.add(new Message(style, s));
+
+		// A command run from the dialog keeps the event thread busy, so the timer can't
+		// fire until it finishes; flush from here instead, often enough to show progress
+		if (SwingUtilities.isEventDispatchThread() && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+			flush(true);
+		} else if (flushScheduled.compareAndSet(false, true)) {
+			// Swing timers aren't safe to restart from another thread while they are firing
+			SwingUtilities.invokeLater(flushTimer::restart);
 		}
 	}
 
-	private void updateStringImmediate(final String style, final String s) {
+	/**
+	 * Add all of the queued messages to the document, then repaint and scroll to
+	 * the end once.  Consecutive messages without markup are added together, and
+	 * consecutive messages with markup are parsed together.
+	 *
+	 * @param immediate paint now, because the event thread is busy
+	 */
+	private void flush(boolean immediate) {
+		flushScheduled.set(false);
+		lastFlush = System.currentTimeMillis();
+		if (pending.isEmpty()) return;
+
 		try {
-			String p = "<div style='"+DEFAULT_STYLE+";"+style+"'>"+s+"</div>\n";
-			currentDocument.insertBeforeEnd(rootElement, p);
+			ResultsDocument.Divs divs = currentDocument.new Divs();
+			StringBuilder html = new StringBuilder();
+			Message message;
+			int count = 0;
+			while (count++ < MAX_FLUSH_MESSAGES && (message = pending.poll()) != null) {
+				String text = getPlainText(message.text);
+				if (text != null) {
+					insertHTML(html);
+					divs.add(getDivAttributes(message.style), text);
+				} else {
+					if (!divs.isEmpty()) {
+						currentDocument.append(divs);
+						divs = currentDocument.new Divs();
+					}
+					html.append("<div style='"+DEFAULT_STYLE+";"+message.style+"'>"+message.text+"</div>\n");
+				}
+			}
+			insertHTML(html);
+			currentDocument.append(divs);
+			trimScrollback();
 			setCaretPosition(currentDocument.getLength());
 
-			// Force (I mean, *really* force) the dialog to repaint.
-			paintImmediately(getBounds());
-			if (parentDialog != null)
-				parentDialog.revalidate();
-			dataPanel.paintImmediately(dataPanel.getBounds());
+			if (immediate) {
+				// Force (I mean, *really* force) the dialog to repaint.
+				paintImmediately(getBounds());
+				if (parentDialog != null)
+					parentDialog.revalidate();
+				dataPanel.paintImmediately(dataPanel.getBounds());
+			} else {
+				if (parentDialog != null)
+					parentDialog.revalidate();
+				repaint();
+			}
 		} catch (Exception e) {
 			logger.error("Unable to update command result in the dialog.", e);
 		}
 		
-		JScrollBar verticalScrollBar = scrollPane.getVerticalScrollBar();
-		verticalScrollBar.setValue(verticalScrollBar.getMaximum());
+		if (scrollPane != null) {
+			JScrollBar verticalScrollBar = scrollPane.getVerticalScrollBar();
+			verticalScrollBar.setValue(verticalScrollBar.getMaximum());
+		}
+
+		// Add the rest in another chunk, after any other waiting events
+		if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater(() -> flush(false));
+	}
+
+	private void insertHTML(StringBuilder html) throws Exception {
+		if (html.length() == 0) return;
+		currentDocument.insertBeforeEnd(rootElement, html.toString());
+		html.setLength(0);
+	}
+
+	/**
+	 * @return the text of a message as it would be shown in a div (empty for the blank
+	 * messages that separate output), or null if it has markup and has to be parsed
+	 */
+	private static String getPlainText(String s) {
+		if (s.indexOf('<') >= 0 || s.indexOf('&') >= 0)
+			return null;
+
+		// Collapse white space, including line breaks, as HTML does
+		StringBuilder text = new StringBuilder(s.length());
+		boolean space = false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = text.length() > 0;
+			} else {
+				if (space) text.append(' ');
+				space = false;
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+
+	private AttributeSet getDivAttributes(String style) {
+		AttributeSet attributes = divAttributes.get(style);
+		if (attributes == null) {
+			attributes = currentDocument.getDivAttributes(DEFAULT_STYLE+";"+style);
+			divAttributes.put(style, attributes);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Remove the oldest messages if the log is over the scrollback limits.  Each
+	 * message is a div after the (empty) body element of the document.
+	 */
+	private void trimScrollback() throws Exception {
+		int lines = rootElement.getElementCount() - 1;
+		int characters = currentDocument.getLength();
+		boolean overLines = scrollbackLines > 0 && lines > scrollbackLines;
+		boolean overCharacters = scrollbackCharacters > 0 && characters > scrollbackCharacters;
+		if (!overLines && !overCharacters) return;
+
+		int keepLines = scrollbackLines > 0 ? (int) (scrollbackLines * SCROLLBACK_KEEP) : lines;
+		int keepCharacters = scrollbackCharacters > 0 ? (int) (scrollbackCharacters * SCROLLBACK_KEEP) : characters;
+		int start = rootElement.getElement(1).getStartOffset();
+		int last = 1;
+		while (last < lines && (lines - last > keepLines ||
+		                        characters - (rootElement.getElement(last).getEndOffset() - start) > keepCharacters)) {
+			last++;
+		}
+		int end = rootElement.getElement(last).getEndOffset();
+
+		if (spillFile != null)
+			spillFile.append(currentDocument.getText(start, end - start));
+		if (!largeResults.isEmpty()) {
+			for (int i = 1; i <= last; i++)
+				deleteLargeResults(rootElement.getElement(i));
+		}
+		currentDocument.remove(start, end - start);
+	}
+
+	/**
+	 * Delete the large results whose summaries are in an element that is being removed
+	 */
+	private void deleteLargeResults(Element element) {
+		if (!element.isLeaf()) {
+			for (int i = 0; i < element.getElementCount(); i++)
+				deleteLargeResults(element.getElement(i));
+			return;
+		}
+		Object anchor = element.getAttributes().getAttribute(HTML.Tag.A);
+		if (!(anchor instanceof AttributeSet)) return;
+		Object href = ((AttributeSet) anchor).getAttribute(HTML.Attribute.HREF);
+		if (href == null || !href.toString().startsWith(EXPAND_LINK)) return;
+		LargeResult result = largeResults.remove(Integer.valueOf(href.toString().substring(EXPAND_LINK.length())));
+		if (result != null)
+			result.delete();
 	}
 }
@@ -0,0 +1,159 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Window;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.PlainDocument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A command result that is too large to show in the command log.  The result is
+ * saved to a temporary file, and the log shows its first lines and a summary,
+ * from which the whole result can be shown in a window or saved to a file.
+ */
+class LargeResult {
+	private final static Logger logger = LoggerFactory.getLogger(LargeResult.class);
+
+	final static int DEFAULT_SIZE = 100000;
+	private final static int PREVIEW_LINES = 20;
+	private final static int PREVIEW_CHARACTERS = 2000;
+
+	private final File file;
+	private final long characters;
+	private final int lines;
+	private final List<String> preview;
+
+	private LargeResult(File file, long characters, int lines, List<String> preview) {
+		this.file = file;
+		this.characters = characters;
+		this.lines = lines;
+		this.preview = preview;
+	}
+
+	/**
+	 * Save a result to a temporary file
+	 */
+	static LargeResult create(String result) throws IOException {
+		File file = File.createTempFile("commandResult", ".txt");
+		file.deleteOnExit();
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			out.write(result);
+		}
+
+		List<String> preview = new ArrayList<>();
+		int[] lines = { 0 };
+		forEachLine(result, line -> {
+			if (preview.size() < PREVIEW_LINES) {
+				preview.add(line.length() > PREVIEW_CHARACTERS ?
+				              line.substring(0, PREVIEW_CHARACTERS) + "\u2026" : line);
+			}
+			lines[0]++;
+		});
+		return new LargeResult(file, result.length(), lines[0], preview);
+	}
+
+	/**
+	 * Pass each line of text to action, without splitting the whole text first
+	 */
+	static void forEachLine(String text, Consumer<String> action) {
+		int start = 0;
+		int length = text.length();
+		do {
+			int end = text.indexOf('\n', start);
+			if (end < 0) end = length;
+			action.accept(text.substring(start, end));
+			start = end + 1;
+		} while (start < length);
+	}
+
+	/**
+	 * The first lines of the result
+	 */
+	List<String> getPreview() {
+		return preview;
+	}
+
+	/**
+	 * A description of what the preview leaves out
+	 */
+	String getSummary() {
+		return String.format(Locale.ROOT, "\u2026 showing %d of %,d lines (%,d characters)",
+		                     preview.size(), lines, characters);
+	}
+
+	/**
+	 * Show the whole result in a window.  The result is read in the background.
+	 */
+	void show(Component parent) {
+		Window owner = parent != null ? SwingUtilities.getWindowAncestor(parent) : null;
+		JDialog dialog = new JDialog(owner, "Command Result");
+		JTextArea text = new JTextArea("Loading " + file.getName() + "\u2026");
+		text.setEditable(false);
+		dialog.add(new JScrollPane(text));
+		dialog.setSize(new Dimension(800, 600));
+		dialog.setLocationRelativeTo(parent);
+		dialog.setVisible(true);
+
+		Thread reader = new Thread(() -> {
+			PlainDocument document = new PlainDocument();
+			try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+				char[] buffer = new char[65536];
+				int count;
+				while ((count = in.read(buffer)) > 0)
+					document.insertString(document.getLength(), new String(buffer, 0, count), null);
+			} catch (Exception e) {
+				logger.warn("Unable to read command result from " + file, e);
+			}
+			SwingUtilities.invokeLater(() -> {
+				text.setDocument(document);
+				text.setCaretPosition(0);
+			});
+		}, "Command result reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Ask for a file and save the whole result in it
+	 */
+	void save(Component parent) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("result.txt"));
+		if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION)
+			return;
+		try {
+			Files.copy(file.toPath(), chooser.getSelectedFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(parent, "Unable to save result: " + e.getMessage(),
+			                              "Save Result", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	void delete() {
+		file.delete();
+	}
+}
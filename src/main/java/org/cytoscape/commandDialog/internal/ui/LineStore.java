@@ -0,0 +1,174 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lines shown by a {@link ResultsView}.  Each line has a style id, its text,
+ * and the height of its row in pixels.  Lines are only added at the end and removed
+ * from the start.
+ * <p>
+ * Lines are kept in chunks of CHUNK_SIZE, and each chunk keeps the total height of
+ * its rows, so finding the row at a position adds up the chunk totals and then the
+ * rows of a single chunk, rather than every row before it.
+ */
+class LineStore {
+	final static int CHUNK_SIZE = 1024;
+
+	private static class Chunk {
+		final byte[] styles = new byte[CHUNK_SIZE];
+		final String[] texts = new String[CHUNK_SIZE];
+		final int[] heights = new int[CHUNK_SIZE];
+		// Lines before start have been removed; only the first chunk has any
+		int start = 0;
+		int end = 0;
+		long height = 0;
+
+		int size() {
+			return end - start;
+		}
+	}
+
+	private final List<Chunk> chunks = new ArrayList<>();
+	private int size = 0;
+	private long height = 0;
+	private long characters = 0;
+
+	void add(byte style, String text, int rowHeight) {
+		Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (last == null || last.end == CHUNK_SIZE) {
+			last = new Chunk();
+			chunks.add(last);
+		}
+		last.styles[last.end] = style;
+		last.texts[last.end] = text;
+		last.heights[last.end] = rowHeight;
+		last.end++;
+		last.height += rowHeight;
+
+		size++;
+		height += rowHeight;
+		characters += text.length();
+	}
+
+	/**
+	 * Remove the oldest lines
+	 */
+	void removeFirst(int count) {
+		count = Math.min(count, size);
+		while (count > 0) {
+			Chunk first = chunks.get(0);
+			int removed = Math.min(count, first.size());
+			for (int i = first.start; i < first.start + removed; i++) {
+				first.height -= first.heights[i];
+				height -= first.heights[i];
+				characters -= first.texts[i].length();
+				first.texts[i] = null;
+			}
+			first.start += removed;
+			size -= removed;
+			count -= removed;
+			if (first.size() == 0 && (first.end == CHUNK_SIZE || chunks.size() > 1))
+				chunks.remove(0);
+		}
+	}
+
+	void clear() {
+		chunks.clear();
+		size = 0;
+		height = 0;
+		characters = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * The total height of the rows
+	 */
+	long getHeight() {
+		return height;
+	}
+
+	long getCharacters() {
+		return characters;
+	}
+
+	byte getStyle(int line) {
+		Chunk chunk = chunks.get(chunkIndex(line));
+		return chunk.styles[offset(line)];
+	}
+
+	String getText(int line) {
+		Chunk chunk = chunks.get(chunkIndex(line));
+		return chunk.texts[offset(line)];
+	}
+
+	int getRowHeight(int line) {
+		Chunk chunk = chunks.get(chunkIndex(line));
+		return chunk.heights[offset(line)];
+	}
+
+	void setRowHeight(int line, int rowHeight) {
+		Chunk chunk = chunks.get(chunkIndex(line));
+		int offset = offset(line);
+		int change = rowHeight - chunk.heights[offset];
+		chunk.heights[offset] = rowHeight;
+		chunk.height += change;
+		height += change;
+	}
+
+	/**
+	 * @return the position of the top of a line's row
+	 */
+	long getY(int line) {
+		int index = chunkIndex(line);
+		long y = 0;
+		for (int i = 0; i < index; i++)
+			y += chunks.get(i).height;
+		Chunk chunk = chunks.get(index);
+		for (int i = chunk.start, end = offset(line); i < end; i++)
+			y += chunk.heights[i];
+		return y;
+	}
+
+	/**
+	 * @return the line whose row contains y, the last line if y is below the last
+	 * row, or -1 if there are no lines
+	 */
+	int lineAt(long y) {
+		if (size == 0) return -1;
+		if (y < 0) return 0;
+
+		int line = 0;
+		for (Chunk chunk: chunks) {
+			if (y >= chunk.height) {
+				y -= chunk.height;
+				line += chunk.size();
+				continue;
+			}
+			for (int i = chunk.start; i < chunk.end; i++) {
+				if (y < chunk.heights[i])
+					return line;
+				y -= chunk.heights[i];
+				line++;
+			}
+		}
+		return size - 1;
+	}
+
+	// Every chunk but the first starts at 0, and every chunk but the last is full
+	private int chunkIndex(int line) {
+		if (line < 0 || line >= size)
+			throw new IndexOutOfBoundsException("Line " + line + " of " + size);
+		int firstSize = chunks.get(0).size();
+		return line < firstSize ? 0 : 1 + (line - firstSize) / CHUNK_SIZE;
+	}
+
+	private int offset(int line) {
+		Chunk first = chunks.get(0);
+		int firstSize = first.size();
+		return line < firstSize ? first.start + line : (line - firstSize) % CHUNK_SIZE;
+	}
+}
@@ -0,0 +1,115 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * The document of a {@link JResultsPane}.  Messages without markup are added as
+ * divs directly, with the same elements as the HTML parser would create for
+ * "&lt;div style=...&gt;text&lt;/div&gt;", so only messages with HTML are parsed.
+ */
+class ResultsDocument extends HTMLDocument {
+	private static final long serialVersionUID = 6470279218843617265L;
+
+	private final static AttributeSet IMPLIED_PARAGRAPH = nameAttributes(HTML.Tag.IMPLIED);
+	private final static AttributeSet CONTENT = nameAttributes(HTML.Tag.CONTENT);
+	// The newline that ends a paragraph is marked with HTMLDocument's private "CR" attribute
+	private final static AttributeSet IMPLIED_CR;
+	static {
+		SimpleAttributeSet impliedCR = new SimpleAttributeSet(CONTENT);
+		impliedCR.addAttribute("CR", Boolean.TRUE);
+		IMPLIED_CR = impliedCR;
+	}
+	private final static char[] NEWLINE = { '\n' };
+
+	/**
+	 * An HTML editor kit that creates ResultsDocuments
+	 */
+	static class EditorKit extends HTMLEditorKit {
+		private static final long serialVersionUID = 3124873356081529127L;
+
+		@Override
+		public Document createDefaultDocument() {
+			// The same as HTMLEditorKit's document
+			StyleSheet styles = new StyleSheet();
+			styles.addStyleSheet(getStyleSheet());
+			ResultsDocument document = new ResultsDocument(styles);
+			document.setParser(getParser());
+			document.setAsynchronousLoadPriority(4);
+			document.setTokenThreshold(100);
+			return document;
+		}
+	}
+
+	/**
+	 * Divs to add to the end of the document with a single {@link ResultsDocument#append}
+	 */
+	class Divs {
+		private final List<ElementSpec> specs = new ArrayList<>();
+
+		/**
+		 * @param divAttributes the attributes from {@link ResultsDocument#getDivAttributes}
+		 * @param text the text of the div, which can't contain markup.  An empty div,
+		 * like the parser's, has only the newline that ends its paragraph.
+		 */
+		void add(AttributeSet divAttributes, String text) {
+			char[] chars = text.toCharArray();
+			specs.add(new ElementSpec(divAttributes, ElementSpec.StartTagType));
+			specs.add(new ElementSpec(IMPLIED_PARAGRAPH, ElementSpec.StartTagType));
+			if (chars.length > 0)
+				specs.add(new ElementSpec(CONTENT, ElementSpec.ContentType, chars, 0, chars.length));
+			specs.add(new ElementSpec(IMPLIED_CR, ElementSpec.ContentType, NEWLINE, 0, 1));
+			specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+			specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+		}
+
+		boolean isEmpty() {
+			return specs.isEmpty();
+		}
+	}
+
+	ResultsDocument(StyleSheet styles) {
+		super(styles);
+	}
+
+	/**
+	 * @return the attributes of a div with the given CSS style
+	 */
+	AttributeSet getDivAttributes(String style) {
+		SimpleAttributeSet attributes = new SimpleAttributeSet(getStyleSheet().getDeclaration(style));
+		attributes.addAttribute(StyleConstants.NameAttribute, HTML.Tag.DIV);
+		return attributes;
+	}
+
+	/**
+	 * Add divs to the end of the document, after the divs added by
+	 * {@link #insertBeforeEnd} and earlier appends
+	 */
+	void append(Divs divs) throws BadLocationException {
+		if (divs.isEmpty()) return;
+
+		// Close the last paragraph and div, as the parser does
+		List<ElementSpec> specs = new ArrayList<>(divs.specs.size() + 3);
+		specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+		specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+		specs.addAll(divs.specs);
+		specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+		insert(getDefaultRootElement().getEndOffset(), specs.toArray(new ElementSpec[specs.size()]));
+	}
+
+	private static AttributeSet nameAttributes(HTML.Tag tag) {
+		SimpleAttributeSet attributes = new SimpleAttributeSet();
+		attributes.addAttribute(StyleConstants.NameAttribute, tag);
+		return attributes;
+	}
+}
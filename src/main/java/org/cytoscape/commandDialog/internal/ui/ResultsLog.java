@@ -0,0 +1,44 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.io.File;
+
+import javax.swing.JScrollPane;
+
+import org.cytoscape.commandDialog.internal.handlers.MessageHandler;
+
+/**
+ * The command log shown in the command line dialog
+ */
+public interface ResultsLog extends MessageHandler {
+	/**
+	 * Remove all of the messages
+	 */
+	public void clear();
+
+	/**
+	 * Limit the log to the most recent messages
+	 *
+	 * @param lines the most messages to keep, or 0 for no limit
+	 * @param characters the most characters of text to keep, or 0 for no limit
+	 */
+	public void setScrollback(int lines, int characters);
+
+	/**
+	 * Append messages that are removed from the log to file, or if it's null,
+	 * discard them
+	 */
+	public void setSpillFile(File file);
+
+	/**
+	 * Show results longer than characters as their first lines, with a way to show
+	 * or save the whole result, which is kept in a file rather than in the log
+	 *
+	 * @param characters the size of a large result, or 0 to show all results in full
+	 */
+	public void setLargeResultSize(int characters);
+
+	/**
+	 * The scroll pane the log is shown in, so it can be scrolled to the latest message
+	 */
+	public void setScrollPane(JScrollPane scrollPane);
+}
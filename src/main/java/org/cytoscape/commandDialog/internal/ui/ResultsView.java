@@ -0,0 +1,565 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.plaf.basic.BasicHTML;
+import javax.swing.text.View;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A command log that only renders the rows that are visible.  Messages are kept in
+ * a {@link LineStore} as a style and the text of each line, and painting looks up
+ * the rows in the clip rectangle, so adding a message or repainting the log costs
+ * the same however long the log is.
+ * <p>
+ * Messages that contain HTML, such as the output of the help command, are rendered
+ * with a Swing HTML view when they are first shown, and only the most recently
+ * shown views are kept.  Until a message has been rendered its row has an estimated
+ * height.  Rows can be selected with the mouse and copied as plain text.
+ * <p>
+ * Results larger than the large result size are shown as their first lines and a
+ * summary; clicking the summary shows or saves the whole result.
+ */
+public class ResultsView extends JComponent implements ResultsLog, Scrollable {
+	private static final long serialVersionUID = 3921570866416265743L;
+	private final static Logger logger = LoggerFactory.getLogger(ResultsView.class);
+
+	// Styles.  HTML is added to the style of a message that has markup.
+	private final static byte COMMAND = 0;
+	private final static byte MESSAGE = 1;
+	private final static byte RESULT = 2;
+	private final static byte ERROR = 3;
+	private final static byte WARNING = 4;
+	private final static byte HTML = 0x10;
+
+	// The same styles as JResultsPane
+	private final static Color[] COLORS = {
+		Color.BLUE, Color.BLUE, new Color(0x008000), Color.RED, new Color(0xFFA500)
+	};
+	private final static String[] CSS = {
+		"color:blue;font-weight:bold;font-style:italic", "color:blue",
+		"color:green;font-weight:bold;font-style:italic", "color:red", "color:orange"
+	};
+	private final static int[] FONT_STYLES = {
+		Font.BOLD|Font.ITALIC, Font.PLAIN, Font.BOLD|Font.ITALIC, Font.PLAIN, Font.PLAIN
+	};
+	private final static int[] INDENTS = { 0, 10, 0, 0, 0 };
+	private final static int MARGIN = 4;
+
+	private final static Pattern MARKUP = Pattern.compile("<[a-zA-Z/!]|&#?[a-zA-Z0-9]+;");
+	private final static Pattern LINE_BREAK = Pattern.compile("(?i)<br\\s*/?>|</p>|</div>|</li>|</h[1-6]>");
+	private final static Pattern TAG = Pattern.compile("<[^>]*>");
+	private final static int MAX_HTML_VIEWS = 256;
+
+	private final static int FLUSH_INTERVAL = 30;
+
+	private static class Message {
+		final byte style;
+		final String text;
+		final LargeResult result;
+
+		Message(byte style, String text, LargeResult result) {
+			this.style = style;
+			this.text = text;
+			this.result = result;
+		}
+	}
+
+	private final LineStore lines = new LineStore();
+	private final Queue<Message> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+	private final Timer flushTimer;
+	private long lastFlush = 0;
+	private JScrollPane scrollPane = null;
+
+	private final Font[] fonts = new Font[COLORS.length];
+	private int rowHeight = 16;
+	private int ascent = 12;
+	private int width = 0;
+
+	// Rendered HTML messages, by the number of their line counting the removed lines,
+	// so removing lines doesn't change the numbers
+	private long removedLines = 0;
+	private final Map<Long, View> htmlViews = new LinkedHashMap<Long, View>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, View> eldest) {
+			return size() > MAX_HTML_VIEWS;
+		}
+	};
+
+	// The selected lines are the ones from anchor to lead, or none if they are -1
+	private int anchor = -1;
+	private int lead = -1;
+
+	private int scrollbackLines = 0;
+	private int scrollbackCharacters = 0;
+	private RollingLogFile spillFile = null;
+
+	// The large results, by the number of the line with their summary
+	private int largeResultSize = LargeResult.DEFAULT_SIZE;
+	private final Map<Long, LargeResult> largeResults = new HashMap<>();
+
+	public ResultsView() {
+		super();
+		setOpaque(true);
+		setBackground(Color.WHITE);
+		setForeground(Color.BLACK);
+		setFocusable(true);
+		Font font = UIManager.getFont("TextPane.font");
+		setFont(font != null ? font : new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+
+		flushTimer = new Timer(FLUSH_INTERVAL, e -> flush(false));
+		flushTimer.setRepeats(false);
+
+		MouseAdapter mouseListener = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				requestFocusInWindow();
+				int line = lines.lineAt(e.getY());
+				if (!e.isShiftDown() || anchor < 0)
+					anchor = line;
+				lead = line;
+				repaint();
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int line = lines.lineAt(e.getY());
+				LargeResult result = line < 0 ? null : largeResults.get(removedLines + line);
+				if (result != null)
+					showLargeResultMenu(result, e.getX(), e.getY());
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (anchor < 0) return;
+				lead = lines.lineAt(e.getY());
+				scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+				repaint();
+			}
+		};
+		addMouseListener(mouseListener);
+		addMouseMotionListener(mouseListener);
+
+		int shortcut = GraphicsEnvironment.isHeadless() ? InputEvent.CTRL_MASK :
+		                 Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+		getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, shortcut), "copy");
+		getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_COPY, 0), "copy");
+		getActionMap().put("copy", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				copy();
+			}
+		});
+		getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A, shortcut), "select-all");
+		getActionMap().put("select-all", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				anchor = 0;
+				lead = lines.size() - 1;
+				repaint();
+			}
+		});
+	}
+
+	public void appendCommand(String s) {
+		append(COMMAND, s);
+	}
+
+	public void appendError(String s) {
+		append(ERROR, s);
+	}
+
+	public void appendResult(String s) {
+		if (largeResultSize > 0 && s.length() > largeResultSize) {
+			try {
+				LargeResult result = LargeResult.create(s);
+				for (String line: result.getPreview())
+					append(RESULT, line);
+				append(MESSAGE, result.getSummary() + " \u2014 click to show or save the whole result", result);
+				return;
+			} catch (IOException e) {
+				logger.warn("Unable to save large command result", e);
+			}
+		}
+		append(RESULT, s);
+	}
+
+	public void appendWarning(String s) {
+		append(WARNING, s);
+	}
+
+	public void appendMessage(String s) {
+		append(MESSAGE, s);
+	}
+
+	public void setScrollPane(JScrollPane scrollPane) {
+		this.scrollPane = scrollPane;
+	}
+
+	public void setScrollback(int lines, int characters) {
+		this.scrollbackLines = lines;
+		this.scrollbackCharacters = characters;
+	}
+
+	public void setSpillFile(File file) {
+		this.spillFile = file != null ? new RollingLogFile(file) : null;
+	}
+
+	public void setLargeResultSize(int characters) {
+		this.largeResultSize = characters;
+	}
+
+	public void clear() {
+		pending.clear();
+		removedLines += lines.size();
+		lines.clear();
+		htmlViews.clear();
+		for (LargeResult result: largeResults.values())
+			result.delete();
+		largeResults.clear();
+		anchor = lead = -1;
+		width = 0;
+		revalidate();
+		repaint();
+	}
+
+	@Override
+	public void setFont(Font font) {
+		super.setFont(font);
+		if (font == null) return;
+		for (int style = 0; style < fonts.length; style++)
+			fonts[style] = font.deriveFont(FONT_STYLES[style]);
+		rowHeight = getFontMetrics(fonts[COMMAND]).getHeight();
+		ascent = getFontMetrics(fonts[COMMAND]).getAscent();
+	}
+
+	private void append(byte style, String s) {
+		append(style, s, null);
+	}
+
+	/**
+	 * @param result the large result that s is the summary of, or null
+	 */
+	private void append(byte style, String s, LargeResult result) {
+		pending.add(new Message(style, s, result));
+
+		// As in JResultsPane, flush from the event thread while it's busy running a command
+		if (SwingUtilities.isEventDispatchThread() && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+			flush(true);
+		} else if (flushScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(flushTimer::restart);
+		}
+	}
+
+	/**
+	 * Add the queued messages to the line store, and scroll to the end
+	 *
+	 * @param immediate paint now, because the event thread is busy
+	 */
+	private void flush(boolean immediate) {
+		flushScheduled.set(false);
+		lastFlush = System.currentTimeMillis();
+		if (pending.isEmpty()) return;
+
+		Message message;
+		int count = 0;
+		while (count++ < JResultsPane.MAX_FLUSH_MESSAGES && (message = pending.poll()) != null) {
+			if (message.result != null)
+				largeResults.put(removedLines + lines.size(), message.result);
+			add(message.style, message.text);
+		}
+		trimScrollback();
+
+		// Add the rest in another chunk, after any other waiting events
+		if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater(() -> flush(false));
+
+		if (scrollPane == null) {
+			revalidate();
+			repaint();
+			return;
+		}
+
+		// Lay out now, which is cheap, so the scroll bar knows the new size
+		invalidate();
+		scrollPane.validate();
+		JScrollBar verticalScrollBar = scrollPane.getVerticalScrollBar();
+		verticalScrollBar.setValue(verticalScrollBar.getMaximum());
+		if (immediate)
+			scrollPane.paintImmediately(0, 0, scrollPane.getWidth(), scrollPane.getHeight());
+		else
+			scrollPane.repaint();
+	}
+
+	/**
+	 * Add a message.  A message with HTML is a single row; otherwise each line of
+	 * the message is a row.
+	 */
+	private void add(byte style, String text) {
+		if (style != COMMAND && style != RESULT && MARKUP.matcher(text).find()) {
+			lines.add((byte) (style | HTML), text, estimateHeight(text));
+			return;
+		}
+
+		int start = 0;
+		do {
+			int end = text.indexOf('\n', start);
+			if (end < 0) end = text.length();
+			String line = text.substring(start, end);
+			if (style == RESULT)
+				line = "\u2192  " + line;
+			lines.add(style, line, rowHeight);
+			width = Math.max(width, INDENTS[style] + getFontMetrics(fonts[style]).stringWidth(line));
+			start = end + 1;
+		} while (start < text.length());
+	}
+
+	private int estimateHeight(String html) {
+		int rows = 1;
+		Matcher matcher = LINE_BREAK.matcher(html);
+		while (matcher.find())
+			rows++;
+		return rows * rowHeight;
+	}
+
+	private void trimScrollback() {
+		int size = lines.size();
+		long characters = lines.getCharacters();
+		boolean overLines = scrollbackLines > 0 && size > scrollbackLines;
+		boolean overCharacters = scrollbackCharacters > 0 && characters > scrollbackCharacters;
+		if (!overLines && !overCharacters) return;
+
+		long keepLines = scrollbackLines > 0 ? (long) (scrollbackLines * JResultsPane.SCROLLBACK_KEEP) : size;
+		long keepCharacters = scrollbackCharacters > 0 ?
+		                        (long) (scrollbackCharacters * JResultsPane.SCROLLBACK_KEEP) : characters;
+		StringBuilder spilled = spillFile != null ? new StringBuilder() : null;
+		int removed = 0;
+		while (removed < size - 1 && (size - removed > keepLines || characters > keepCharacters)) {
+			String text = lines.getText(removed);
+			characters -= text.length();
+			if (spilled != null)
+				spilled.append(getPlainText(removed)).append('\n');
+			removed++;
+		}
+
+		lines.removeFirst(removed);
+		removedLines += removed;
+		for (Iterator<Map.Entry<Long, LargeResult>> i = largeResults.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry<Long, LargeResult> entry = i.next();
+			if (entry.getKey() < removedLines) {
+				entry.getValue().delete();
+				i.remove();
+			}
+		}
+		anchor -= removed;
+		lead -= removed;
+		if (anchor < 0 || lead < 0)
+			anchor = lead = -1;
+		if (spilled != null)
+			spillFile.append(spilled.toString());
+	}
+
+	/**
+	 * The text of a line, without any HTML markup
+	 */
+	private String getPlainText(int line) {
+		String text = lines.getText(line);
+		if ((lines.getStyle(line) & HTML) == 0)
+			return text;
+		text = LINE_BREAK.matcher(text).replaceAll("\n");
+		text = TAG.matcher(text).replaceAll("");
+		return text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+		           .replace("&quot;", "\"").replace("&amp;", "&").trim();
+	}
+
+	private void showLargeResultMenu(LargeResult result, int x, int y) {
+		JPopupMenu menu = new JPopupMenu();
+		menu.add(new AbstractAction("Show Whole Result") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				result.show(ResultsView.this);
+			}
+		});
+		menu.add(new AbstractAction("Save to File...") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				result.save(ResultsView.this);
+			}
+		});
+		menu.show(this, x, y);
+	}
+
+	/**
+	 * Copy the selected lines to the clipboard
+	 */
+	private void copy() {
+		if (anchor < 0) return;
+		StringBuilder text = new StringBuilder();
+		for (int line = Math.min(anchor, lead); line <= Math.max(anchor, lead); line++)
+			text.append(getPlainText(line)).append('\n');
+		StringSelection selection = new StringSelection(text.toString());
+		Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+	}
+
+	private View getHTMLView(int line, byte style) {
+		Long key = removedLines + line;
+		View view = htmlViews.get(key);
+		if (view == null) {
+			String html = "<html><div style='" + CSS[style & ~HTML] + "'>" + lines.getText(line) + "</div></html>";
+			view = BasicHTML.createHTMLView(this, html);
+			htmlViews.put(key, view);
+		}
+		return view;
+	}
+
+	@Override
+	protected void paintComponent(Graphics graphics) {
+		Graphics2D g = (Graphics2D) graphics.create();
+		try {
+			Map<?, ?> hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+			if (hints != null)
+				g.addRenderingHints(hints);
+
+			Rectangle clip = g.getClipBounds();
+			if (clip == null)
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			g.setColor(getBackground());
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+			int line = lines.lineAt(clip.y);
+			if (line < 0) return;
+
+			Color selectionColor = UIManager.getColor("TextArea.selectionBackground");
+			if (selectionColor == null)
+				selectionColor = new Color(0xB8CFE5);
+			int firstSelected = anchor < 0 ? -1 : Math.min(anchor, lead);
+			int lastSelected = anchor < 0 ? -1 : Math.max(anchor, lead);
+
+			boolean resized = false;
+			int y = (int) lines.getY(line);
+			for (; line < lines.size() && y < clip.y + clip.height; line++) {
+				byte style = lines.getStyle(line);
+				int height = lines.getRowHeight(line);
+				View view = null;
+				if ((style & HTML) != 0) {
+					// Now that the message is shown, use its real size
+					view = getHTMLView(line, style);
+					int viewHeight = (int) Math.ceil(view.getPreferredSpan(View.Y_AXIS));
+					int viewWidth = INDENTS[style & ~HTML] + (int) Math.ceil(view.getPreferredSpan(View.X_AXIS));
+					if (viewHeight != height) {
+						lines.setRowHeight(line, viewHeight);
+						height = viewHeight;
+						resized = true;
+					}
+					if (viewWidth > width) {
+						width = viewWidth;
+						resized = true;
+					}
+				}
+
+				if (line >= firstSelected && line <= lastSelected) {
+					g.setColor(selectionColor);
+					g.fillRect(clip.x, y, clip.width, height);
+				}
+
+				int x = MARGIN + INDENTS[style & ~HTML];
+				if (view != null) {
+					view.paint(g, new Rectangle(x, y, getWidth() - x, height));
+				} else {
+					g.setFont(fonts[style]);
+					g.setColor(COLORS[style]);
+					g.drawString(lines.getText(line), x, y + ascent);
+				}
+				y += height;
+			}
+
+			if (resized) {
+				revalidate();
+				repaint();
+			}
+		} finally {
+			g.dispose();
+		}
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet())
+			return super.getPreferredSize();
+		return new Dimension(2*MARGIN + width, (int) Math.min(Integer.MAX_VALUE, lines.getHeight()));
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return new Dimension(400, 10*rowHeight);
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.VERTICAL ? rowHeight : 20;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+	}
+}
@@ -0,0 +1,45 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log file that text is appended to, which is rolled over to a ".1" file when
+ * it reaches MAX_SIZE, so at most two files' worth of text are kept.
+ */
+class RollingLogFile {
+	private final static Logger logger = LoggerFactory.getLogger(RollingLogFile.class);
+	private final static long MAX_SIZE = 10*1024*1024;
+
+	private final File file;
+
+	RollingLogFile(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	void append(String text) {
+		try {
+			if (file.length() > MAX_SIZE) {
+				File previous = new File(file.getPath() + ".1");
+				previous.delete();
+				file.renameTo(previous);
+			}
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+				out.write(text);
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to save old messages to " + file, e);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandLexerTest {
+	private Map<String, Object> settings;
+
+	@Before
+	public void setUp() {
+		settings = new LinkedHashMap<>();
+	}
+
+	private String lex(String input) {
+		return CommandLexer.lex(input, 0, settings);
+	}
+
+	private String lexError(String input) {
+		try {
+			lex(input);
+		} catch (RuntimeException e) {
+			return e.getMessage();
+		}
+		throw new AssertionError("lexed '" + input + "'");
+	}
+
+	@Test
+	public void testCommandWords() {
+		assertEquals("create empty", lex("create empty"));
+		assertEquals("create empty", lex("  create \t empty  "));
+		assertEquals("", lex("   "));
+		assertTrue(settings.isEmpty());
+	}
+
+	@Test
+	public void testStart() {
+		assertEquals("create", CommandLexer.lex("network create name=x", 7, settings));
+		assertEquals("x", settings.get("name"));
+	}
+
+	@Test
+	public void testArguments() {
+		assertEquals("create", lex("create name=test source=current"));
+		Map<String, Object> expected = new HashMap<>();
+		expected.put("name", "test");
+		expected.put("source", "current");
+		assertEquals(expected, settings);
+	}
+
+	@Test
+	public void testWhitespaceAroundEquals() {
+		assertEquals("create", lex("create name = test  source\t=current"));
+		assertEquals("test", settings.get("name"));
+		assertEquals("current", settings.get("source"));
+	}
+
+	@Test
+	public void testQuotedValues() {
+		lex("create a=\"my network\" b='x = y' c=\"it's\" d='say \"hi\"' e=\"\"");
+		assertEquals("my network", settings.get("a"));
+		assertEquals("x = y", settings.get("b"));
+		assertEquals("it's", settings.get("c"));
+		assertEquals("say \"hi\"", settings.get("d"));
+		assertEquals("", settings.get("e"));
+	}
+
+	@Test
+	public void testQuotedWords() {
+		assertEquals("add node x", lex("\"add node\" 'x' size=2"));
+		assertEquals("2", settings.get("size"));
+		assertEquals("", lex("'name' = value"));
+		assertEquals("value", settings.get("name"));
+	}
+
+	@Test
+	public void testBackslashesAreLiteral() {
+		lex("open a=\"C:\\new\\path\" b=C:\\temp\\x c='\\'");
+		assertEquals("C:\\new\\path", settings.get("a"));
+		assertEquals("C:\\temp\\x", settings.get("b"));
+		assertEquals("\\", settings.get("c"));
+	}
+
+	@Test
+	public void testUnquotedValueEndsAtWhitespace() {
+		assertEquals("select more", lex("select query=a=b x=it's nodes=a,\"b\" more"));
+		assertEquals("a=b", settings.get("query"));
+		assertEquals("it's", settings.get("x"));
+		// Only a quote at the start of a value is a quote
+		assertEquals("a,\"b\"", settings.get("nodes"));
+	}
+
+	@Test
+	public void testWordEndsAtEqualsOrQuote() {
+		assertEquals("create", lex("create name=\"a b\"x=1"));
+		assertEquals("a b", settings.get("name"));
+		assertEquals("1", settings.get("x"));
+	}
+
+	@Test
+	public void testMissingName() {
+		String message = lexError("=value");
+		assertTrue(message, message.startsWith("Syntax error at column 1: missing argument name"));
+		message = lexError("create x=1 =2");
+		assertTrue(message, message.startsWith("Syntax error at column 12: missing argument name"));
+	}
+
+	@Test
+	public void testMissingValue() {
+		String message = lexError("create name=");
+		assertTrue(message, message.startsWith("Syntax error at column 8: missing value for 'name'"));
+		lexError("create name =   ");
+	}
+
+	@Test
+	public void testUnterminatedQuote() {
+		String message = lexError("create name=\"my network");
+		assertTrue(message, message.startsWith("Syntax error at column 13: unterminated quoted string"));
+		lexError("create 'name");
+	}
+}
@@ -0,0 +1,102 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonReaderTest {
+	@Test
+	public void testScalars() {
+		assertEquals("text", JsonReader.read("\"text\""));
+		assertEquals(true, JsonReader.read("true"));
+		assertEquals(false, JsonReader.read(" false "));
+		assertNull(JsonReader.read("null"));
+	}
+
+	@Test
+	public void testNumbers() {
+		assertEquals(42L, JsonReader.read("42"));
+		assertEquals(-7L, JsonReader.read("-7"));
+		assertEquals(1.5, JsonReader.read("1.5"));
+		assertEquals(1000.0, JsonReader.read("1e3"));
+		assertEquals(-2.5e-3, JsonReader.read("-2.5E-3"));
+		// Too big for a long
+		assertEquals(1e20, JsonReader.read("100000000000000000000"));
+	}
+
+	@Test
+	public void testStringEscapes() {
+		assertEquals("a\"b\\c/d", JsonReader.read("\"a\\\"b\\\\c\\/d\""));
+		assertEquals("\b\f\n\r\t", JsonReader.read("\"\\b\\f\\n\\r\\t\""));
+		assertEquals("\u00e9\u2603", JsonReader.read("\"\\u00e9\\u2603\""));
+		assertEquals("it's", JsonReader.read("\"it\\u0027s\""));
+	}
+
+	@Test
+	public void testObjectsAndArrays() {
+		Object value = JsonReader.read("{ \"name\": \"net\", \"nodes\": [1, 2.5, \"x\", null, []], \"style\": {} }");
+		Map<String, Object> expected = new LinkedHashMap<>();
+		expected.put("name", "net");
+		expected.put("nodes", Arrays.asList(1L, 2.5, "x", null, Collections.emptyList()));
+		expected.put("style", Collections.emptyMap());
+		assertEquals(expected, value);
+		// Members keep their order
+		assertEquals(Arrays.asList("name", "nodes", "style"), new ArrayList<>(((Map<?, ?>) value).keySet()));
+	}
+
+	@Test
+	public void testInvalid() {
+		String[] invalid = { "", "  ", "{", "[1,", "[1 2]", "{\"a\" 1}", "{a: 1}", "\"abc", "tru", "1.2.3", "-",
+		                     "{\"a\": 1,}", "[1] 2", "'a'", "\"\\u12\"" };
+		for (String text: invalid) {
+			try {
+				JsonReader.read(text);
+				throw new AssertionError("read '" + text + "'");
+			} catch (RuntimeException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testErrorPosition() {
+		try {
+			JsonReader.read("[1, x]");
+			throw new AssertionError("read invalid JSON");
+		} catch (RuntimeException e) {
+			assertEquals("Invalid JSON at position 5: unexpected 'x'", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testWriter() {
+		Map<String, Object> value = new LinkedHashMap<>();
+		value.put("name", "a \"quoted\"\\name\n\u0001");
+		value.put("sizes", Arrays.asList(1L, 2.5, Double.NaN, Double.POSITIVE_INFINITY, null));
+		value.put("visible", true);
+		assertEquals("{\"name\":\"a \\\"quoted\\\"\\\\name\\n\\u0001\",\"sizes\":[1,2.5,null,null,null],\"visible\":true}",
+		             JsonWriter.write(value));
+		assertEquals("\"\\t\"", JsonWriter.quote("\t"));
+	}
+
+	@Test
+	public void testWriterRoundTrip() {
+		Map<String, Object> value = new LinkedHashMap<>();
+		value.put("name", "\u00e9 \"x\" \\ / \b\f\n\r\t\u001f");
+		value.put("count", Long.MIN_VALUE);
+		value.put("scale", -0.125);
+		value.put("empty", new ArrayList<>());
+		List<Object> nested = new ArrayList<>();
+		nested.add(Collections.singletonMap("a", Arrays.asList(true, false, null)));
+		nested.add(new LinkedHashMap<>());
+		value.put("nested", nested);
+		assertEquals(value, JsonReader.read(JsonWriter.write(value)));
+	}
+}
@@ -0,0 +1,87 @@
+package org.cytoscape.commandDialog.internal.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class WordTrieTest {
+	private static WordTrie trie(String... names) {
+		return new WordTrie(Arrays.asList(names));
+	}
+
+	@Test
+	public void testUniqueAbbreviation() {
+		WordTrie namespaces = trie("network", "node", "layout", "view");
+		assertEquals("network", namespaces.uniqueMatch("net"));
+		assertEquals("node", namespaces.uniqueMatch("no"));
+		assertEquals("layout", namespaces.uniqueMatch("l"));
+		assertEquals("view", namespaces.uniqueMatch("view"));
+	}
+
+	@Test
+	public void testNoMatch() {
+		WordTrie namespaces = trie("network", "node");
+		assertNull(namespaces.uniqueMatch("edge"));
+		assertNull(namespaces.uniqueMatch("networks"));
+		assertNull(trie().uniqueMatch("network"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testAmbiguousPrefix() {
+		trie("network", "node").uniqueMatch("n");
+	}
+
+	@Test
+	public void testExactMatchWins() {
+		WordTrie commands = trie("select", "selection", "selected");
+		assertEquals("select", commands.uniqueMatch("select"));
+		assertEquals("selection", commands.uniqueMatch("selecti"));
+		try {
+			commands.uniqueMatch("sel");
+			throw new AssertionError("'sel' matched");
+		} catch (RuntimeException expected) {
+		}
+	}
+
+	@Test
+	public void testMultipleWords() {
+		WordTrie commands = trie("add node", "add edge", "add", "create empty");
+		assertEquals("add node", commands.uniqueMatch("add n"));
+		assertEquals("add edge", commands.uniqueMatch("a e"));
+		assertEquals("create empty", commands.uniqueMatch("cr em"));
+		assertEquals("add", commands.uniqueMatch("a"));
+		// The number of words must be the same
+		assertNull(commands.uniqueMatch("create"));
+		assertNull(commands.uniqueMatch("add node edge"));
+	}
+
+	@Test
+	public void testEarlierExactWordWins() {
+		// "a bc" matches the first word exactly, "ab b" only the second
+		WordTrie commands = trie("ab b", "a bc");
+		assertEquals("a bc", commands.uniqueMatch("a b"));
+		assertEquals("ab b", commands.uniqueMatch("ab b"));
+		// More exact words win when the earlier words are the same
+		assertEquals("a b", trie("a bc", "a b").uniqueMatch("a b"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testAmbiguousLaterWord() {
+		trie("add nodes", "add notes").uniqueMatch("add no");
+	}
+
+	@Test
+	public void testCaseFolding() {
+		WordTrie namespaces = trie("Network", "cyBrowser");
+		assertEquals("Network", namespaces.uniqueMatch("NET"));
+		assertEquals("cyBrowser", namespaces.uniqueMatch("cybrowser"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testSameNameInDifferentCase() {
+		trie("View", "view").uniqueMatch("view");
+	}
+}
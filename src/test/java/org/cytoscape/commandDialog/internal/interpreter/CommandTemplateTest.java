@@ -0,0 +1,112 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandTemplateTest {
+	private CommandInterpreter interpreter;
+
+	@Before
+	public void setUp() {
+		interpreter = new CommandInterpreter(new VariableScope(null));
+	}
+
+	private String render(String text) throws CommandInterpreterException {
+		return CommandTemplate.parse(text).render(interpreter);
+	}
+
+	@Test
+	public void testParse() {
+		CommandTemplate template = CommandTemplate.parse("node select nodes=$nodes network=$net_1");
+		assertTrue(template.hasVariables());
+		assertArrayEquals(new String[] { "nodes", "net_1" }, template.getVariables());
+		assertEquals("node select nodes=$nodes network=$net_1", template.getText());
+	}
+
+	@Test
+	public void testDollarWithoutName() {
+		assertFalse(CommandTemplate.parse("echo cost $ 5 and $").hasVariables());
+		assertArrayEquals(new String[] { "b" }, CommandTemplate.parse("a$$b").getVariables());
+		assertArrayEquals(new String[] { "a", "b" }, CommandTemplate.parse("$a$b-$").getVariables());
+	}
+
+	@Test
+	public void testRenderWithoutVariables() throws CommandInterpreterException {
+		String text = "network create empty";
+		assertSame(text, CommandTemplate.parse(text).render(interpreter));
+	}
+
+	@Test
+	public void testRenderFormatsValues() throws CommandInterpreterException {
+		interpreter.addVariable("name", "my network");
+		interpreter.addVariable("count", 3L);
+		interpreter.addVariable("scale", 1.5);
+		interpreter.addVariable("nodes", Arrays.asList("a", "b"));
+		interpreter.addVariable("style", Collections.singletonMap("color", "it's red"));
+		assertEquals("network create name=\"my network\"", render("network create name=$name"));
+		assertEquals("layout x count=3 scale=1.5", render("layout x count=$count scale=$scale"));
+		assertEquals("node select nodes=\"a,b\"", render("node select nodes=$nodes"));
+		assertEquals("x y style='{\"color\":\"it\\u0027s red\"}'", render("x y style=$style"));
+		assertEquals("a$3", render("a$$count"));
+		assertEquals("33.", render("$count$count."));
+	}
+
+	@Test
+	public void testValuesAreNotSubstitutedAgain() throws CommandInterpreterException {
+		interpreter.addVariable("path", "C:\\temp\\$count");
+		interpreter.addVariable("count", 3L);
+		assertEquals("open file=\"C:\\temp\\$count\" n=3", render("open file=$path n=$count"));
+	}
+
+	@Test
+	public void testUndefinedVariable() {
+		try {
+			render("network create name=$missing");
+			throw new AssertionError("rendered an undefined variable");
+		} catch (CommandInterpreterException e) {
+			assertEquals("Value for 'missing' was not provided.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testRendersAreIndependent() throws CommandInterpreterException {
+		CommandTemplate template = CommandTemplate.parse("echo message=$x");
+		interpreter.addVariable("x", "first");
+		String first = template.render(interpreter);
+		char[] big = new char[10000];
+		Arrays.fill(big, 'z');
+		interpreter.addVariable("x", new String(big));
+		String second = template.render(interpreter);
+		interpreter.addVariable("x", "third");
+		String third = template.render(interpreter);
+		assertEquals("echo message=\"first\"", first);
+		assertEquals("echo message=\"" + new String(big) + "\"", second);
+		assertEquals("echo message=\"third\"", third);
+	}
+
+	@Test
+	public void testRenderPlaceholder() {
+		assertEquals("network create name=0 x=0", CommandTemplate.parse("network create name=$n x=$x").renderPlaceholder("0"));
+		assertEquals("network create", CommandTemplate.parse("network create").renderPlaceholder("0"));
+		// Variables in the command name can't be checked
+		assertNull(CommandTemplate.parse("$ns create x=1").renderPlaceholder("0"));
+		assertNull(CommandTemplate.parse("network $command").renderPlaceholder("0"));
+	}
+
+	@Test
+	public void testInterpreterCachesTemplates() {
+		CommandTemplate template = interpreter.getTemplate("node select nodes=$nodes");
+		assertSame(template, interpreter.getTemplate("node select nodes=$nodes"));
+		assertEquals("node select nodes=$nodes", template.getText());
+	}
+}
@@ -0,0 +1,237 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExpressionParserTest {
+	private CommandInterpreter interpreter;
+
+	@Before
+	public void setUp() {
+		interpreter = new CommandInterpreter(new VariableScope(null));
+	}
+
+	private Object evaluate(String text) throws CommandInterpreterException {
+		return ExpressionParser.parse(text, false).evaluate(interpreter);
+	}
+
+	private Object evaluateCondition(String text) throws CommandInterpreterException {
+		return ExpressionParser.parse(text, true).evaluate(interpreter);
+	}
+
+	@Test
+	public void testPrecedence() throws CommandInterpreterException {
+		assertEquals(7L, evaluate("1 + 2 * 3"));
+		assertEquals(9L, evaluate("(1 + 2) * 3"));
+		assertEquals(2L, evaluate("2 * 3 % 4"));
+		assertEquals(-6L, evaluate("-2 * 3"));
+		assertEquals(-1L, evaluate("-(2 - 3) * -1"));
+		assertEquals(true, evaluate("1 + 2 < 4 && 3 == 3"));
+		assertEquals(true, evaluate("1 < 2 == 2 < 3"));
+		assertEquals(true, evaluate("!false == true"));
+		// && binds more tightly than ||
+		assertEquals(false, evaluate("false || true && false"));
+		assertEquals(true, evaluate("true || false && false"));
+	}
+
+	@Test
+	public void testLeftAssociativity() throws CommandInterpreterException {
+		assertEquals(3L, evaluate("10 - 4 - 3"));
+		assertEquals(2L, evaluate("16 / 4 / 2"));
+		assertEquals("33", evaluate("1 + 2 + '3'"));
+		assertEquals("123", evaluate("'1' + 2 + 3"));
+	}
+
+	@Test
+	public void testIntegralResults() throws CommandInterpreterException {
+		assertEquals(2L, evaluate("6 / 3"));
+		assertEquals(3.5, evaluate("7 / 2"));
+		assertEquals(3L, evaluate("1.5 + 1.5"));
+		assertEquals(3L, evaluate("2 * 1.5"));
+		assertEquals(-1L, evaluate("-7 % 3"));
+		assertEquals(1000L, evaluate("1e3"));
+		assertEquals(0.5, evaluate(".5"));
+	}
+
+	@Test
+	public void testOverflowBecomesDouble() throws CommandInterpreterException {
+		Object sum = evaluate("9223372036854775807 + 1");
+		assertTrue(sum instanceof Double);
+		assertEquals(9.223372036854775807e18, (Double) sum, 0);
+		assertTrue(evaluate("4611686018427387904 * 4") instanceof Double);
+		assertTrue(evaluate("99999999999999999999") instanceof Double);
+	}
+
+	@Test
+	public void testDivisionByZero() throws CommandInterpreterException {
+		assertEquals(Double.POSITIVE_INFINITY, evaluate("1 / 0"));
+		assertEquals(Double.NEGATIVE_INFINITY, evaluate("-1 / 0"));
+		assertTrue(Double.isNaN((Double) evaluate("5 % 0")));
+		assertTrue(Double.isNaN((Double) evaluate("0 / 0")));
+	}
+
+	@Test
+	public void testStringCoercion() throws CommandInterpreterException {
+		assertEquals("12", evaluate("'1' + 2"));
+		assertEquals("a1.5", evaluate("\"a\" + 1.5"));
+		assertEquals("atrue", evaluate("'a' + true"));
+		assertEquals("anull", evaluate("'a' + null"));
+		assertEquals(12L, evaluate("'3' * '4'"));
+		assertEquals(1L, evaluate("'3' - 2"));
+		assertEquals(2L, evaluate("true + 1"));
+		assertEquals(5L, evaluate("+'5'"));
+		assertEquals(-5L, evaluate("-' 5 '"));
+		assertTrue(Double.isNaN((Double) evaluate("'a' * 2")));
+	}
+
+	@Test
+	public void testLooseEquality() throws CommandInterpreterException {
+		assertEquals(true, evaluate("'2' == 2"));
+		assertEquals(true, evaluate("2.0 == 2"));
+		assertEquals(true, evaluate("'' == 0"));
+		assertEquals(true, evaluate("true == 1"));
+		assertEquals(true, evaluate("null == null"));
+		assertEquals(false, evaluate("null == 0"));
+		assertEquals(false, evaluate("'2' == '2.0'"));
+		assertEquals(true, evaluate("'a' != 'b'"));
+	}
+
+	@Test
+	public void testStrictEquality() throws CommandInterpreterException {
+		assertEquals(false, evaluate("'2' === 2"));
+		assertEquals(true, evaluate("2 === 2.0"));
+		assertEquals(true, evaluate("'a' === 'a'"));
+		assertEquals(true, evaluate("true !== 1"));
+		assertEquals(false, evaluate("null === 0"));
+	}
+
+	@Test
+	public void testComparison() throws CommandInterpreterException {
+		assertEquals(true, evaluate("'abc' < 'abd'"));
+		// Strings are compared as text, but a string and a number as numbers
+		assertEquals(true, evaluate("'10' < '9'"));
+		assertEquals(false, evaluate("'10' < 9"));
+		assertEquals(true, evaluate("2 >= 2.0"));
+		assertEquals(true, evaluate("null < 1"));
+	}
+
+	@Test
+	public void testNaNComparisonsAreFalse() throws CommandInterpreterException {
+		String[] operators = { "<", "<=", ">", ">=", "==" };
+		for (String operator: operators) {
+			assertEquals(operator, false, evaluate("NaN " + operator + " 1"));
+			assertEquals(operator, false, evaluate("1 " + operator + " NaN"));
+			assertEquals(operator, false, evaluate("NaN " + operator + " NaN"));
+			assertEquals(operator, false, evaluate("'abc' " + operator + " 1"));
+		}
+		assertEquals(true, evaluate("NaN != NaN"));
+		assertEquals(false, evaluate("!!NaN"));
+	}
+
+	@Test
+	public void testShortCircuit() throws CommandInterpreterException {
+		interpreter.addVariable("x", 1L);
+		// The undefined variable is never evaluated
+		assertEquals(1L, evaluate("$x || $missing"));
+		assertEquals(0L, evaluate("0 && $missing"));
+		assertEquals("b", evaluate("'a' && 'b'"));
+		assertEquals("", evaluate("'' || ''"));
+	}
+
+	@Test
+	public void testVariables() throws CommandInterpreterException {
+		interpreter.addVariable("count", 3L);
+		interpreter.addVariable("name", "node");
+		assertEquals(4L, evaluate("$count + 1"));
+		assertEquals("node3", evaluate("$name + $count"));
+		assertEquals(true, evaluateCondition("count == 3 && name == 'node'"));
+	}
+
+	@Test(expected = CommandInterpreterException.class)
+	public void testUndefinedVariable() throws CommandInterpreterException {
+		evaluate("$missing + 1");
+	}
+
+	@Test
+	public void testBareVariablesOnlyInConditions() throws CommandInterpreterException {
+		ExpressionParser.parse("count + 1", true);
+		try {
+			ExpressionParser.parse("count + 1", false);
+			throw new AssertionError("bare variable accepted");
+		} catch (CommandInterpreterException expected) {
+		}
+		// Keywords aren't variables
+		assertEquals(true, evaluate("true"));
+		assertNull(evaluate("null"));
+		assertEquals(Double.POSITIVE_INFINITY, evaluate("Infinity"));
+	}
+
+	@Test
+	public void testIncrement() throws CommandInterpreterException {
+		interpreter.addVariable("i", 1L);
+		assertEquals(1L, evaluate("$i++"));
+		assertEquals(2L, interpreter.getVariableValue("i"));
+		assertEquals(3L, evaluate("++$i"));
+		assertEquals(2L, evaluate("--$i"));
+		assertEquals(2L, evaluate("$i--"));
+		assertEquals(1L, interpreter.getVariableValue("i"));
+
+		interpreter.addVariable("d", 0.5);
+		assertEquals(0.5, evaluate("$d++"));
+		assertEquals(1.5, interpreter.getVariableValue("d"));
+	}
+
+	@Test
+	public void testStringEscapes() throws CommandInterpreterException {
+		assertEquals("a\tb\nc", evaluate("'a\\tb\\nc'"));
+		assertEquals("it's", evaluate("'it\\'s'"));
+		assertEquals("say \"hi\"", evaluate("'say \"hi\"'"));
+		assertEquals("\u00e9", evaluate("\"\\u00e9\""));
+		assertEquals("a\\b", evaluate("'a\\\\b'"));
+	}
+
+	@Test
+	public void testSyntaxErrors() {
+		String[] invalid = { "1 +", "(1", "1 2", "'abc", "1a", "$", "* 2", "++1", "'\\u12'", "1 ^ 2" };
+		for (String text: invalid) {
+			try {
+				ExpressionParser.parse(text, false);
+				throw new AssertionError("parsed '" + text + "'");
+			} catch (CommandInterpreterException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testType() throws CommandInterpreterException {
+		assertEquals(CommandType.LOGICAL_STATEMENT, ExpressionParser.parse("1 < 2", false).getType());
+		assertEquals(CommandType.LOGICAL_STATEMENT, ExpressionParser.parse("!1", false).getType());
+		assertEquals(CommandType.LOGICAL_STATEMENT, ExpressionParser.parse("true && 1 == 1", false).getType());
+		assertEquals(CommandType.ARITHMETIC_STATEMENT, ExpressionParser.parse("1 + 2", false).getType());
+		assertEquals(CommandType.ARITHMETIC_STATEMENT, ExpressionParser.parse("1 || 2", false).getType());
+	}
+
+	@Test
+	public void testCollectVariables() throws CommandInterpreterException {
+		List<String> variables = new ArrayList<>();
+		ExpressionParser.parse("$a + b * ($c < ++d)", true).collectVariables(variables);
+		assertEquals(Arrays.asList("a", "b", "c", "d"), variables);
+	}
+
+	@Test
+	public void testTest() throws CommandInterpreterException {
+		assertTrue(ExpressionParser.parse("'0'", false).test(interpreter));
+		assertFalse(ExpressionParser.parse("''", false).test(interpreter));
+		assertFalse(ExpressionParser.parse("0.0", false).test(interpreter));
+		assertFalse(ExpressionParser.parse("null", false).test(interpreter));
+	}
+}
@@ -0,0 +1,142 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ReadAheadLineReaderTest {
+	/**
+	 * Input whose producer has written some lines and then stays open without writing
+	 * more.  Like a read on a pipe, a read waiting for more can't be interrupted.
+	 */
+	private static class QuietInput extends InputStream {
+		private final byte[] data;
+		private int position = 0;
+		final CountDownLatch waiting = new CountDownLatch(1);
+		final CountDownLatch producerClosed = new CountDownLatch(1);
+		volatile boolean closed = false;
+
+		QuietInput(String text) {
+			data = text.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public synchronized int read() {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0];
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			synchronized (this) {
+				if (position < data.length) {
+					int n = Math.min(len, data.length - position);
+					System.arraycopy(data, position, b, off, n);
+					position += n;
+					return n;
+				}
+			}
+			waiting.countDown();
+			while (true) {
+				try {
+					producerClosed.await();
+					return -1;
+				} catch (InterruptedException e) {
+					// Ignored, as a blocking read ignores interrupts
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static BufferedReader reader(InputStream in) {
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testReadsLines() throws IOException {
+		try (ReadAheadLineReader reader = new ReadAheadLineReader(new BufferedReader(new StringReader("a\n\nb")), null, 1, "test")) {
+			assertEquals("a", reader.readLine());
+			assertEquals("", reader.readLine());
+			assertEquals("b", reader.readLine());
+			assertNull(reader.readLine());
+			assertNull(reader.readLine());
+		}
+	}
+
+	@Test
+	public void testReadError() {
+		BufferedReader failing = new BufferedReader(new StringReader("")) {
+			@Override
+			public String readLine() throws IOException {
+				throw new IOException("broken");
+			}
+		};
+		try (ReadAheadLineReader reader = new ReadAheadLineReader(failing, null, 1, "test")) {
+			reader.readLine();
+			throw new AssertionError("read from a broken input");
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelQuietInput() throws Exception {
+		QuietInput input = new QuietInput("first\n");
+		ReadAheadLineReader reader = new ReadAheadLineReader(reader(input), input, 4, "test");
+		assertEquals("first", reader.readLine());
+		assertTrue(input.waiting.await(5, TimeUnit.SECONDS));
+
+		// Stopping ends a readLine that is waiting for input
+		long start = System.nanoTime();
+		Thread stopper = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+			}
+		});
+		stopper.start();
+		assertNull(reader.readLine(() -> !stopper.isAlive()));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		// Closing doesn't wait for the read, which still holds the reader's lock
+		start = System.nanoTime();
+		reader.close();
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		assertTrue(input.closed);
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelQuietStandardInput() throws Exception {
+		QuietInput input = new QuietInput("");
+		ReadAheadLineReader reader = new ReadAheadLineReader(reader(input), null, 4, "test");
+		assertTrue(input.waiting.await(5, TimeUnit.SECONDS));
+		assertNull(reader.readLine(() -> true));
+
+		// Standard input isn't closed under the reader; the reading thread closes
+		// the reader once its read returns
+		reader.close();
+		assertFalse(input.closed);
+		input.producerClosed.countDown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!input.closed && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		assertTrue(input.closed);
+	}
+}
@@ -0,0 +1,127 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptCheckpointTest {
+	private File directory;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("checkpoint").toFile();
+		file = new File(new File(directory, "scripts"), "test.checkpoint");
+	}
+
+	@After
+	public void tearDown() {
+		deleteAll(directory);
+	}
+
+	private static void deleteAll(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child: children)
+				deleteAll(child);
+		}
+		file.delete();
+	}
+
+	private ScriptCheckpoint roundTrip(ScriptCheckpoint checkpoint) throws IOException {
+		checkpoint.save(file);
+		return ScriptCheckpoint.load(file);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Map<String, Object> variables = new LinkedHashMap<>();
+		variables.put("count", 42L);
+		variables.put("scale", 1.5);
+		variables.put("done", true);
+		variables.put("name", "my network = \u00e9\\");
+		variables.put("typed", "L:5");
+		variables.put("nothing", null);
+		String source = "node select nodes=$name # \u00e9";
+		ScriptCheckpoint checkpoint = roundTrip(new ScriptCheckpoint(17, source, Arrays.asList(2, 0, 11), variables));
+
+		assertEquals(17, checkpoint.getLine());
+		assertEquals(source, checkpoint.getSource());
+		assertEquals(Arrays.asList(2, 0, 11), checkpoint.getPath());
+		assertEquals(variables, checkpoint.getVariables());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testNumberTypes() throws IOException {
+		Map<String, Object> variables = new LinkedHashMap<>();
+		variables.put("int", 7);
+		variables.put("float", 0.25f);
+		variables.put("nan", Double.NaN);
+		variables.put("max", Long.MAX_VALUE);
+		Map<String, Object> loaded = roundTrip(new ScriptCheckpoint(1, "x", Arrays.asList(0), variables)).getVariables();
+		assertEquals(7L, loaded.get("int"));
+		assertEquals(0.25, loaded.get("float"));
+		assertTrue(Double.isNaN((Double) loaded.get("nan")));
+		assertEquals(Long.MAX_VALUE, loaded.get("max"));
+	}
+
+	@Test
+	public void testStructuredValues() throws IOException {
+		Map<String, Object> style = new LinkedHashMap<>();
+		style.put("color", "it's \"red\"");
+		style.put("sizes", Arrays.asList(1L, 2.5, null));
+		style.put("nested", Collections.singletonMap("visible", false));
+		List<Object> table = Arrays.<Object>asList(Arrays.asList("a", 1L), Arrays.asList("b", 2L));
+		Map<String, Object> variables = new LinkedHashMap<>();
+		variables.put("style", style);
+		variables.put("table", table);
+		// Plain lists are saved as the text substituted into commands
+		variables.put("nodes", Arrays.asList("a", "b"));
+
+		Map<String, Object> loaded = roundTrip(new ScriptCheckpoint(1, "x", Arrays.asList(0), variables)).getVariables();
+		assertEquals(style, loaded.get("style"));
+		assertEquals(table, loaded.get("table"));
+		assertEquals("a,b", loaded.get("nodes"));
+	}
+
+	@Test
+	public void testSaveReplaces() throws IOException {
+		new ScriptCheckpoint(1, "first", Arrays.asList(0), Collections.<String, Object>singletonMap("a", 1L)).save(file);
+		ScriptCheckpoint checkpoint = roundTrip(new ScriptCheckpoint(2, "second", Arrays.asList(1),
+		                                                             Collections.<String, Object>emptyMap()));
+		assertEquals("second", checkpoint.getSource());
+		assertTrue(checkpoint.getVariables().isEmpty());
+	}
+
+	@Test
+	public void testLoadMissing() throws IOException {
+		assertNull(ScriptCheckpoint.load(file));
+	}
+
+	@Test(expected = IOException.class)
+	public void testLoadInvalid() throws IOException {
+		file.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write("line=x\npath=0\n".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		ScriptCheckpoint.load(file);
+	}
+}
@@ -0,0 +1,202 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptCompilerTest {
+	private CommandInterpreter interpreter;
+	private ScriptCompiler compiler;
+
+	@Before
+	public void setUp() {
+		interpreter = new CommandInterpreter(new VariableScope(null));
+		compiler = new ScriptCompiler(interpreter);
+	}
+
+	private Script compile(String... lines) throws IOException, CommandInterpreterException {
+		return compiler.compile("test", new BufferedReader(new StringReader(String.join("\n", lines))));
+	}
+
+	private String compileError(String... lines) throws IOException {
+		try {
+			compile(lines);
+		} catch (CommandInterpreterException e) {
+			return e.getMessage();
+		}
+		throw new AssertionError("compiled without errors");
+	}
+
+	@Test
+	public void testStatements() throws IOException, CommandInterpreterException {
+		Script script = compile(
+			"# a comment",
+			"network create empty",
+			"",
+			"$count := 1 + 2",
+			"  $net := network create name=$count  ",
+			"$count++");
+		assertEquals("test", script.getName());
+		List<Statement> statements = script.getBody().getStatements();
+		assertEquals(4, statements.size());
+
+		CommandStatement command = (CommandStatement) statements.get(0);
+		assertEquals(2, command.getLine());
+		assertEquals("network create empty", command.getSource());
+		assertEquals("network create empty", command.getTemplate().getText());
+
+		AssignmentStatement expression = (AssignmentStatement) statements.get(1);
+		assertEquals("count", expression.getVariable());
+		assertNotNull(expression.getExpression());
+		assertEquals(3L, expression.getExpression().evaluate(interpreter));
+
+		AssignmentStatement result = (AssignmentStatement) statements.get(2);
+		assertEquals(5, result.getLine());
+		assertEquals("$net := network create name=$count", result.getSource());
+		assertEquals("net", result.getVariable());
+		assertNull(result.getExpression());
+		assertEquals("network create name=$count", result.getTemplate().getText());
+
+		assertTrue(statements.get(3) instanceof ExpressionStatement);
+		assertEquals(6, statements.get(3).getLine());
+	}
+
+	@Test
+	public void testBlocks() throws IOException, CommandInterpreterException {
+		Script script = compile(
+			"$i := 0",
+			"while $i < 3 loop",
+			"  if i == 1 then",
+			"    node select nodes=$i",
+			"  else",
+			"    parallel",
+			"      network create empty",
+			"      $n := network list",
+			"    end parallel",
+			"  end if",
+			"  $i++",
+			"end while",
+			"network list");
+		List<Statement> statements = script.getBody().getStatements();
+		assertEquals(3, statements.size());
+
+		WhileStatement loop = (WhileStatement) statements.get(1);
+		assertEquals(2, loop.getLine());
+		assertEquals(2, loop.getBody().getStatements().size());
+		interpreter.addVariable("i", 2L);
+		assertTrue(loop.getCondition().test(interpreter));
+
+		IfStatement ifStatement = (IfStatement) loop.getBody().getStatements().get(0);
+		assertEquals(1, ifStatement.getThenBlock().getStatements().size());
+		assertEquals(4, ifStatement.getThenBlock().getStatements().get(0).getLine());
+		assertEquals(1, ifStatement.getElseBlock().getStatements().size());
+
+		ParallelStatement parallel = (ParallelStatement) ifStatement.getElseBlock().getStatements().get(0);
+		assertEquals(2, parallel.getBody().getStatements().size());
+		assertTrue(parallel.getBody().getStatements().get(1) instanceof AssignmentStatement);
+
+		assertEquals("network list", statements.get(2).getSource());
+		assertEquals(13, statements.get(2).getLine());
+	}
+
+	@Test
+	public void testDirectives() throws IOException, CommandInterpreterException {
+		Script script = compile(
+			"#@ timeout 30",
+			"#@commandTimeout 2.5",
+			"network list");
+		assertEquals(30.0, script.getDirectives().get(ScriptCompiler.TIMEOUT_DIRECTIVE), 0);
+		assertEquals(2.5, script.getDirectives().get(ScriptCompiler.COMMAND_TIMEOUT_DIRECTIVE), 0);
+
+		String errors = compileError("#@ retries 3", "#@ timeout soon", "#@ timeout -1");
+		assertEquals("Line 1: unknown directive 'retries'\n" +
+		             "Line 2: 'timeout' needs a number of seconds\n" +
+		             "Line 3: 'timeout' needs a number of seconds", errors);
+	}
+
+	@Test
+	public void testAllErrorsAreReported() throws IOException {
+		String errors = compileError(
+			"end if",
+			"else",
+			"network list",
+			"if $x > 1",
+			"end while",
+			"end if",
+			"while true loop",
+			"parallel");
+		assertEquals("Line 1: End if without If.\n" +
+		             "Line 2: Else without If.\n" +
+		             "Line 4: unable to parse condition: if $x > 1\n" +
+		             "Line 5: End while without While.\n" +
+		             "Line 7: missing 'end while' for 'while true loop'\n" +
+		             "Line 8: missing 'end parallel' for 'parallel'", errors);
+	}
+
+	@Test
+	public void testElseOnlyOnce() throws IOException {
+		String errors = compileError("if true then", "else", "else", "end if");
+		assertEquals("Line 3: Else without If.", errors);
+	}
+
+	@Test
+	public void testParallelBlocksOnlyHaveCommands() throws IOException {
+		String errors = compileError(
+			"parallel",
+			"if true then",
+			"end if",
+			"$x := 1",
+			"$y := network list",
+			"end parallel");
+		assertEquals("Line 2: only commands can be used in a parallel block.\n" +
+		             "Line 3: only commands can be used in a parallel block.\n" +
+		             "Line 4: only command results can be assigned in a parallel block.", errors);
+	}
+
+	@Test
+	public void testCompileStatement() throws CommandInterpreterException {
+		compiler.reset();
+		assertNull(compiler.compileStatement(1, "# comment"));
+		assertNull(compiler.compileStatement(2, "#@ timeout 10"));
+		assertEquals(10.0, compiler.getDirectives().get(ScriptCompiler.TIMEOUT_DIRECTIVE), 0);
+
+		Statement command = compiler.compileStatement(3, "network list");
+		assertEquals("network list", command.getSource());
+
+		// A block is only returned once it is closed
+		assertNull(compiler.compileStatement(4, "if true then"));
+		assertNull(compiler.compileStatement(5, "network list"));
+		Statement ifStatement = compiler.compileStatement(6, "end if");
+		assertTrue(ifStatement instanceof IfStatement);
+		assertEquals(4, ifStatement.getLine());
+		compiler.finish();
+	}
+
+	@Test
+	public void testCompileStatementErrors() throws CommandInterpreterException {
+		compiler.reset();
+		try {
+			compiler.compileStatement(1, "end while");
+			throw new AssertionError("compiled 'end while'");
+		} catch (CommandInterpreterException e) {
+			assertEquals("Line 1: End while without While.", e.getMessage());
+		}
+
+		compiler.compileStatement(2, "while true loop");
+		try {
+			compiler.finish();
+			throw new AssertionError("finished with an open block");
+		} catch (CommandInterpreterException e) {
+			assertEquals("Line 2: missing 'end while' for 'while true loop'", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.cytoscape.commandDialog.internal.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.command.AvailableCommands;
+import org.cytoscape.commandDialog.internal.handlers.CommandHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptValidatorTest {
+	private CommandInterpreter interpreter;
+	private CommandHandler commandHandler;
+	private ScriptValidator validator;
+
+	@Before
+	public void setUp() {
+		interpreter = new CommandInterpreter(new VariableScope(null));
+		commandHandler = new CommandHandler(availableCommands(
+			"network create name source",
+			"network list",
+			"node select nodes* network"), null, null);
+		validator = new ScriptValidator(commandHandler, interpreter);
+	}
+
+	/**
+	 * The available commands, each given as "namespace command argument...", with
+	 * "*" after the required arguments
+	 */
+	private static AvailableCommands availableCommands(String... commands) {
+		Map<String, Map<String, List<String>>> namespaces = new LinkedHashMap<>();
+		for (String command: commands) {
+			String[] words = command.split(" ");
+			Map<String, List<String>> namespace = namespaces.get(words[0]);
+			if (namespace == null) {
+				namespace = new LinkedHashMap<>();
+				namespaces.put(words[0], namespace);
+			}
+			namespace.put(words[1], Arrays.asList(words).subList(2, words.length));
+		}
+
+		return (AvailableCommands) Proxy.newProxyInstance(AvailableCommands.class.getClassLoader(),
+		                                                  new Class<?>[] { AvailableCommands.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getNamespaces":
+					return new ArrayList<>(namespaces.keySet());
+				case "getCommands":
+					Map<String, List<String>> namespace = namespaces.get(args[0]);
+					return namespace == null ? Collections.emptyList() : new ArrayList<>(namespace.keySet());
+				case "getArguments":
+					List<String> arguments = new ArrayList<>();
+					for (String argument: namespaces.get(args[0]).get(args[1]))
+						arguments.add(argument.replace("*", ""));
+					return arguments;
+				case "getArgRequired":
+					return namespaces.get(args[0]).get(args[1]).contains(args[2] + "*");
+				default:
+					return method.getReturnType() == boolean.class ? false : null;
+			}
+		});
+	}
+
+	private List<String> validate(String... lines) throws IOException, CommandInterpreterException {
+		Script script = new ScriptCompiler(interpreter).compile("test", new BufferedReader(new StringReader(String.join("\n", lines))));
+		return validator.validate(script);
+	}
+
+	@Test
+	public void testValidScript() throws IOException, CommandInterpreterException {
+		List<String> errors = validate(
+			"$net := network create name=test",
+			"net cr name=$net source=x",
+			"node select nodes=all network=$net",
+			"help network");
+		assertEquals(Collections.emptyList(), errors);
+	}
+
+	@Test
+	public void testCommandsAreResolved() throws IOException, CommandInterpreterException {
+		Script script = new ScriptCompiler(interpreter).compile("test", new BufferedReader(new StringReader("net l")));
+		assertEquals(Collections.emptyList(), validator.validate(script));
+		CommandStatement statement = (CommandStatement) script.getBody().getStatements().get(0);
+		assertNotNull(statement.getResolvedCommand());
+		assertEquals("list", statement.getResolvedCommand().getCommand());
+		// Checking a script isn't counted as running its commands
+		assertTrue(commandHandler.getMetrics().getAll().isEmpty());
+	}
+
+	@Test
+	public void testInvalidCommands() throws IOException, CommandInterpreterException {
+		List<String> errors = validate(
+			"foo bar",
+			"network frobnicate",
+			"network create color=red",
+			"node select network=x",
+			"n list");
+		assertEquals(Arrays.asList(
+			"Line 1: Failed to find command namespace: 'foo bar'",
+			"Line 2: Failed to find command: 'frobnicate' (from namespace: network)",
+			"Line 3: Error: argument 'color isn't applicable to command: 'network create'",
+			"Line 4: Error: argument 'nodes' is required for command: 'node select'",
+			"Line 5: Namespace abbreviation not unique"), errors);
+	}
+
+	@Test
+	public void testVariablesUsedBeforeAssignment() throws IOException, CommandInterpreterException {
+		List<String> errors = validate(
+			"network create name=$name",
+			"if count > 1 then",
+			"  $total := $count + $step",
+			"end if",
+			"$name := 'x'",
+			"network create name=$name");
+		assertEquals(Arrays.asList(
+			"Line 1: variable 'name' is used before it is assigned",
+			"Line 2: variable 'count' is used before it is assigned",
+			"Line 3: variable 'count' is used before it is assigned",
+			"Line 3: variable 'step' is used before it is assigned"), errors);
+	}
+
+	@Test
+	public void testVariablesAssignedBeforeTheScript() throws IOException, CommandInterpreterException {
+		interpreter.addVariable("count", 2L);
+		List<String> errors = validate(
+			"$i := 0",
+			"while $i < count loop",
+			"  node select nodes=$i",
+			"  $i++",
+			"end while");
+		assertEquals(Collections.emptyList(), errors);
+	}
+
+	@Test
+	public void testVariableCommandNamesArentChecked() throws IOException, CommandInterpreterException {
+		List<String> errors = validate(
+			"$ns := 'network'",
+			"$ns frobnicate",
+			"network $command");
+		assertEquals(Arrays.asList("Line 3: variable 'command' is used before it is assigned"), errors);
+	}
+
+	@Test
+	public void testValidateStatements() throws CommandInterpreterException {
+		ScriptCompiler compiler = new ScriptCompiler(interpreter);
+		compiler.reset();
+		assertEquals(Collections.emptyList(), validator.validate(compiler.compileStatement(1, "$x := 1")));
+		assertEquals(Collections.emptyList(), validator.validate(compiler.compileStatement(2, "network create name=$x")));
+		assertEquals(Arrays.asList("Line 3: variable 'y' is used before it is assigned"),
+		             validator.validate(compiler.compileStatement(3, "network create name=$y")));
+	}
+}
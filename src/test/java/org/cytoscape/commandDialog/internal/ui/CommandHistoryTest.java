@@ -0,0 +1,194 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandHistoryTest {
+	private File file;
+	private CommandHistory history;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("history", ".txt");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		if (history != null)
+			history.close();
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	private CommandHistory history(int maxSize, String... commands) {
+		history = new CommandHistory(file, maxSize);
+		for (String command: commands)
+			history.add(command);
+		return history;
+	}
+
+	private List<String> getCommands() {
+		List<String> commands = new ArrayList<>();
+		for (int i = 0; i < history.size(); i++)
+			commands.add(history.get(i));
+		return commands;
+	}
+
+	private List<String> readJournal() throws IOException {
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	}
+
+	private void writeJournal(String... commands) throws IOException {
+		Files.write(file.toPath(), Arrays.asList(commands), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testNewestMatchFirst() {
+		history(100, "network create empty", "node select nodes=all", "network list", "layout force-directed");
+		assertEquals(2, history.search("net", history.size()));
+		// Searching again from the match finds older ones
+		assertEquals(0, history.search("net", 2));
+		assertEquals(-1, history.search("net", 0));
+		assertEquals(-1, history.search("", history.size()));
+	}
+
+	@Test
+	public void testIgnoresCase() {
+		history(100, "Network Create", "node list");
+		assertEquals(0, history.search("NET", history.size()));
+		assertEquals(0, history.search("network c", history.size()));
+	}
+
+	@Test
+	public void testMatchesStartOfWords() {
+		history(100, "network list", "layout force-directed", "view fit_content");
+		assertEquals(-1, history.search("work", history.size()));
+		assertEquals(0, history.search("list", history.size()));
+		assertEquals(1, history.search("directed", history.size()));
+		assertEquals(-1, history.search("content", history.size()));
+		assertEquals(2, history.search("fit_c", history.size()));
+		// A search that doesn't start with a word character can match anywhere
+		assertEquals(1, history.search("-dir", history.size()));
+	}
+
+	@Test
+	public void testMultipleWords() {
+		history(100, "node select nodes=all", "node select nodes=none", "network select nodes=all");
+		assertEquals(2, history.search("select nodes=a", history.size()));
+		assertEquals(0, history.search("node select nodes=a", history.size()));
+		assertEquals(1, history.search("node sel", history.size()));
+		// Every word but the last has to be whole
+		assertEquals(-1, history.search("nod select", history.size()));
+		assertEquals(2, history.search("nodes=all", history.size()));
+		assertEquals(0, history.search("nodes=all", 2));
+		// The words have to be together
+		assertEquals(-1, history.search("node nodes", history.size()));
+	}
+
+	@Test
+	public void testManyWordsWithPrefix() {
+		List<String> commands = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			commands.add("echo word" + (i * 7919 % 1000) + (i % 3 == 0 ? " other" : ""));
+		history(1000, commands.toArray(new String[0]));
+
+		// Too many words start with "word" to merge them, so it is found by scanning
+		String[] queries = { "word", "word1", "word99", "other", "echo word5", "ot", "word12 o" };
+		for (String query: queries) {
+			int before = history.size();
+			while (true) {
+				int expected = before - 1;
+				while (expected >= 0 && CommandHistory.matchStart(commands.get(expected), query) < 0)
+					expected--;
+				int found = history.search(query, before);
+				assertEquals(query, expected, found);
+				if (found < 0) break;
+				before = found;
+			}
+		}
+	}
+
+	@Test
+	public void testMatchStart() {
+		assertEquals(7, CommandHistory.matchStart("layout force-directed", "force"));
+		assertEquals(13, CommandHistory.matchStart("layout force-directed", "DIR"));
+		assertEquals(-1, CommandHistory.matchStart("network list", "work"));
+		assertEquals(7, CommandHistory.matchStart("network list", " list"));
+		assertEquals(-1, CommandHistory.matchStart("network list", ""));
+	}
+
+	@Test
+	public void testJournal() throws IOException {
+		history(100, "network list", "node list");
+		history.close();
+		assertEquals(Arrays.asList("network list", "node list"), readJournal());
+
+		// The next history reads the journal, and puts what was added before that after it
+		history(100, "view fit");
+		history.load();
+		history.add("layout force-directed");
+		history.close();
+		assertEquals(Arrays.asList("network list", "node list", "view fit", "layout force-directed"), getCommands());
+		assertEquals(getCommands(), readJournal());
+		assertEquals(0, history.search("net", history.size()));
+	}
+
+	@Test
+	public void testCompactOnLoad() throws IOException {
+		writeJournal("c1", "c2", "c3", "c4", "c5", "c6", "c7");
+		history(3);
+		history.load();
+		history.close();
+		// Both the history and the journal keep only the most recent
+		assertEquals(Arrays.asList("c5", "c6", "c7"), getCommands());
+		assertEquals(Arrays.asList("c5", "c6", "c7"), readJournal());
+	}
+
+	@Test
+	public void testNoCompactionUntilLoaded() throws IOException {
+		writeJournal("c1", "c2");
+		history(1, "c3", "c4", "c5");
+		history.close();
+		assertEquals(Arrays.asList("c1", "c2", "c3", "c4", "c5"), readJournal());
+	}
+
+	@Test
+	public void testCompactOnAdd() throws IOException {
+		history(2);
+		history.load();
+		for (int i = 1; i <= 7; i++)
+			history.add("c" + i);
+		history.close();
+		// Compacted to c4 and c5 when the fifth command was written
+		assertEquals(Arrays.asList("c4", "c5", "c6", "c7"), readJournal());
+		assertEquals(Arrays.asList("c4", "c5", "c6", "c7"), getCommands());
+	}
+
+	@Test
+	public void testSearchAfterCompaction() throws IOException {
+		history(3);
+		history.load();
+		for (int i = 1; i <= 7; i++)
+			history.add("network c" + i + (i % 2 == 0 ? " even" : ""));
+		history.close();
+		// The commands kept are renumbered from 0, and the dropped ones aren't found
+		assertEquals(Arrays.asList("network c5", "network c6 even", "network c7"), getCommands());
+		assertEquals(2, history.search("net", history.size()));
+		assertEquals(1, history.search("even", history.size()));
+		assertEquals(-1, history.search("even", 1));
+		assertEquals(-1, history.search("c2", history.size()));
+		assertEquals(0, history.search("c5", history.size()));
+	}
+}
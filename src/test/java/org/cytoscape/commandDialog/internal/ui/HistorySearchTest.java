@@ -0,0 +1,138 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistorySearchTest {
+	private File file;
+	private CommandHistory history;
+	private JTextField field;
+	private JLabel label;
+	private HistorySearch search;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("history", ".txt");
+		history = new CommandHistory(file, 100);
+		history.add("network create empty");
+		history.add("node select nodes=all");
+		history.add("network list");
+		field = new JTextField("typed");
+		label = new JLabel("Command:");
+		search = new HistorySearch(history, field, label);
+	}
+
+	@After
+	public void tearDown() {
+		history.close();
+		file.delete();
+	}
+
+	private void type(String text) {
+		for (char c: text.toCharArray())
+			search.keyTyped(new KeyEvent(field, KeyEvent.KEY_TYPED, 0, 0, KeyEvent.VK_UNDEFINED, c));
+	}
+
+	private KeyEvent press(int keyCode, int modifiers) {
+		KeyEvent event = new KeyEvent(field, KeyEvent.KEY_PRESSED, 0, modifiers, keyCode, KeyEvent.CHAR_UNDEFINED);
+		search.keyPressed(event);
+		return event;
+	}
+
+	@Test
+	public void testIncrementalSearch() {
+		search.search();
+		assertEquals("search '':", label.getText());
+		type("n");
+		assertEquals("network list", field.getText());
+		type("o");
+		assertEquals("node select nodes=all", field.getText());
+		assertEquals("no", field.getSelectedText());
+		type("de s");
+		assertEquals("node select nodes=all", field.getText());
+		assertEquals("search 'node s':", label.getText());
+	}
+
+	@Test
+	public void testOlderMatches() {
+		search.search();
+		type("net");
+		assertEquals("network list", field.getText());
+		press(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK);
+		assertEquals("network create empty", field.getText());
+		// There's nothing older, so the match stays
+		search.search();
+		assertEquals("network create empty", field.getText());
+		assertEquals("failing search 'net':", label.getText());
+	}
+
+	@Test
+	public void testFailingSearch() {
+		search.search();
+		type("netx");
+		assertEquals("network list", field.getText());
+		assertEquals("failing search 'netx':", label.getText());
+		press(KeyEvent.VK_BACK_SPACE, 0);
+		assertEquals("search 'net':", label.getText());
+		assertEquals("network list", field.getText());
+	}
+
+	@Test
+	public void testBackspaceSearchesFromNewest() {
+		search.search();
+		type("net");
+		search.search();
+		assertEquals("network create empty", field.getText());
+		type("w");
+		press(KeyEvent.VK_BACK_SPACE, 0);
+		assertEquals("network list", field.getText());
+	}
+
+	@Test
+	public void testEscapeRestores() {
+		search.search();
+		type("node");
+		KeyEvent escape = press(KeyEvent.VK_ESCAPE, 0);
+		assertTrue(escape.isConsumed());
+		assertEquals("typed", field.getText());
+		assertEquals("Command:", label.getText());
+	}
+
+	@Test
+	public void testEnterKeepsMatch() {
+		search.search();
+		type("node");
+		KeyEvent enter = press(KeyEvent.VK_ENTER, 0);
+		// The field still gets Enter, to run the command
+		assertFalse(enter.isConsumed());
+		assertEquals("node select nodes=all", field.getText());
+		assertEquals("Command:", label.getText());
+		// Typing no longer searches
+		type("x");
+		assertEquals("node select nodes=all", field.getText());
+	}
+
+	@Test
+	public void testOtherKeysStop() {
+		search.search();
+		type("network c");
+		KeyEvent left = press(KeyEvent.VK_LEFT, 0);
+		assertFalse(left.isConsumed());
+		assertEquals("network create empty", field.getText());
+		assertEquals(field.getText().length(), field.getCaretPosition());
+		assertEquals("Command:", label.getText());
+	}
+}
@@ -0,0 +1,80 @@
+package org.cytoscape.commandDialog.internal.ui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+import org.junit.Test;
+
+public class ResultsDocumentTest {
+	private static final String STYLE = "margin-top:0px;margin-bottom:0px;color:blue";
+
+	private static ResultsDocument document() {
+		return (ResultsDocument) new ResultsDocument.EditorKit().createDefaultDocument();
+	}
+
+	/**
+	 * @return the elements of document, with their names, attributes and text, one per line
+	 */
+	private static String describe(ResultsDocument document) throws BadLocationException {
+		StringBuilder description = new StringBuilder();
+		describe(document.getDefaultRootElement(), "", description);
+		return description.toString();
+	}
+
+	private static void describe(Element element, String indent, StringBuilder description) throws BadLocationException {
+		description.append(indent).append(element.getName());
+		// Attributes in name order, as attribute sets don't keep theirs
+		AttributeSet attributes = element.getAttributes();
+		Map<String, Object> sorted = new TreeMap<>();
+		for (Enumeration<?> names = attributes.getAttributeNames(); names.hasMoreElements(); ) {
+			Object name = names.nextElement();
+			if (!"resolver".equals(name.toString()))
+				sorted.put(name.toString(), attributes.getAttribute(name));
+		}
+		for (Map.Entry<String, Object> attribute: sorted.entrySet())
+			description.append(' ').append(attribute.getKey()).append('=').append(attribute.getValue());
+		if (element.isLeaf()) {
+			int start = element.getStartOffset();
+			description.append(" '").append(element.getDocument().getText(start, element.getEndOffset() - start)).append('\'');
+		}
+		description.append('\n');
+		for (int i = 0; i < element.getElementCount(); i++)
+			describe(element.getElement(i), indent + "  ", description);
+	}
+
+	private static String parsed(String... texts) throws Exception {
+		ResultsDocument document = document();
+		StringBuilder html = new StringBuilder();
+		for (String text: texts)
+			html.append("<div style='" + STYLE + "'>" + text + "</div>\n");
+		document.insertBeforeEnd(document.getDefaultRootElement(), html.toString());
+		return describe(document);
+	}
+
+	private static String appended(String... texts) throws Exception {
+		ResultsDocument document = document();
+		ResultsDocument.Divs divs = document.new Divs();
+		for (String text: texts)
+			divs.add(document.getDivAttributes(STYLE), text);
+		document.append(divs);
+		return describe(document);
+	}
+
+	@Test
+	public void testSameAsParser() throws Exception {
+		assertEquals(parsed("network list", "done"), appended("network list", "done"));
+	}
+
+	@Test
+	public void testEmptyDivs() throws Exception {
+		assertEquals(parsed("first", "", "", "last"), appended("first", "", "", "last"));
+		assertEquals(parsed(""), appended(""));
+	}
+}